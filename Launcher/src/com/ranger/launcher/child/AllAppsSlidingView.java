@@ -10,6 +10,7 @@ import java.util.List;
 import android.content.Context;
 import android.content.res.TypedArray;
 import android.database.DataSetObserver;
+import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -29,7 +30,6 @@ import android.view.ViewConfiguration;
 import android.view.ViewGroup;
 import android.widget.AdapterView;
 import android.widget.LinearLayout;
-import android.widget.ListAdapter;
 import android.widget.Scroller;
 import android.widget.AdapterView.OnItemClickListener;
 import android.widget.AdapterView.OnItemLongClickListener;
@@ -161,6 +161,10 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
     private final int mScrollingBounce=50;
     //ADW:Bg color
     private int mBgColor=0xFF000000;
+    //ADW: pictures of the pages, drawn instead of building them while flinging
+    private PageSnapshots mSnapshots;
+    //ADW: labels of the icons, shared by the pages
+    private final LabelAtlas mLabels=new LabelAtlas();
 	public AllAppsSlidingView(Context context) {
 		super(context);
 		initWorkspace();
@@ -207,6 +211,7 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         mTouchSlop = configuration.getScaledTouchSlop();
         mMaximumVelocity = configuration.getScaledMaximumFlingVelocity();
         mPager=new PreviewPager(getContext());
+        mSnapshots=new PageSnapshots(getContext());
         //ADW: listener to handle holderlayouts animations
         mFadingListener=new OnFadingListener() {
 			public void onUpdate(int Status) {
@@ -264,6 +269,7 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         	mNextScreen = INVALID_SCREEN;
         	mLayoutMode=LAYOUT_NORMAL;
         	findCurrentHolder();
+        	snapshotCurrentPage();
         }
     }
 
@@ -338,6 +344,8 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         	}
         }
     	detachViewsFromParent(1, getChildCount());
+    	//Pages may have changed, snapshots are taken again as they settle
+    	mSnapshots.clear();
 		makePage(mCurrentScreen-1);
 		makePage(mCurrentScreen);
 		makePage(mCurrentScreen+1);
@@ -370,6 +378,7 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         int x=marginLeft;
         int y=marginTop;
         HolderLayout holder=new HolderLayout(getContext());
+        holder.setLabelAtlas(mLabels);
         for(int i=0;i<mNumRows;i++){
         	for(int j=0;j<mNumColumns;j++){
         		if(pos<mAdapter.getCount()){
@@ -407,6 +416,55 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         	holder.open(isAnimating, mAnimationDuration);
         }
     }
+    /**
+     * Adds a page drawn from its snapshot, without any child view.
+     * @return false if there is no snapshot of the page
+     */
+    private boolean makeSnapshotPage(int pageNum) {
+    	if(pageNum<0 || pageNum>mTotalScreens-1){
+    		return true;
+    	}
+    	if(isAnimating){
+    		return false;
+    	}
+    	final Bitmap snapshot=mSnapshots.get(pageNum, mPageWidth, getMeasuredHeight()-paginatorSpace);
+    	if(snapshot==null){
+    		return false;
+    	}
+    	final int pageSpacing = pageNum*mPageWidth;
+        HolderLayout holder=new HolderLayout(getContext());
+        holder.setSnapshot(snapshot);
+        AllAppsSlidingView.LayoutParams holderParams=new AllAppsSlidingView.LayoutParams(ViewGroup.LayoutParams.FILL_PARENT,ViewGroup.LayoutParams.FILL_PARENT);
+        holder.layout(pageSpacing, paginatorSpace, pageSpacing+mPageWidth, getMeasuredHeight());
+        holder.setTag(pageNum);
+        holder.setOnFadingListener(mFadingListener);
+        addViewInLayout(holder, getChildCount(), holderParams, true);
+        return true;
+    }
+    /**
+     * Replaces the snapshot of a page by the real page.
+     */
+    private void makeLivePage(HolderLayout h){
+    	final int pageNum=(Integer) h.getTag();
+		detachViewFromParent(h);
+		removeDetachedView(h, false);
+		makePage(pageNum);
+    }
+    /**
+     * Takes the snapshot of the current page once it settled.
+     */
+    private void snapshotCurrentPage(){
+    	if(mSnapshots.contains(mCurrentScreen) || mCurrentHolder>=getChildCount()){
+    		return;
+    	}
+    	final View v=getChildAt(mCurrentHolder);
+    	if(v instanceof HolderLayout){
+    		final HolderLayout h=(HolderLayout) v;
+    		if(!h.isSnapshot() && h.isOpen() && h.getTag().equals(mCurrentScreen)){
+    			mSnapshots.put(mCurrentScreen, h, mCurrentScreen);
+    		}
+    	}
+    }
     private void addRemovePages(int current, int next){
     	int addPage;
     	int removePage;
@@ -435,7 +493,9 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
 				removeDetachedView(h, false);
     		}
     	}
-		makePage(addPage);
+    	if(!makeSnapshotPage(addPage)){
+    		makePage(addPage);
+    	}
     }
 
     @Override
@@ -1823,6 +1883,14 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
 	public void open(boolean animate) {
 		mBgColor=AlmostNexusSettingsHelper.getDrawerColor(mLauncher);
 		mTargetAlpha=Color.alpha(mBgColor);
+		if(mSnapshots.setBackground(mBgColor)){
+			for(int i=getChildCount()-1;i>0;i--){
+				final View v=getChildAt(i);
+				if(v instanceof HolderLayout && ((HolderLayout) v).isSnapshot()){
+					makeLivePage((HolderLayout) v);
+				}
+			}
+		}
 		for(int i=0;i<getChildCount();i++){
 			if(getChildAt(i) instanceof HolderLayout){
 				((HolderLayout)getChildAt(i)).updateLabelVars(mLauncher);
@@ -1837,9 +1905,6 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
         else if(getAdapter().getCount()<=0)
         	animate=false;
         if(animate){
-            ListAdapter adapter = getAdapter();
-            if (adapter instanceof ApplicationsAdapter)
-                ((ApplicationsAdapter)adapter).setChildDrawingCacheEnabled(true);
         	mPager.setVisibility(INVISIBLE);
     		mBgAlpha=0;
     	}else{
@@ -1878,6 +1943,12 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
     		setVisibility(View.GONE);
     	}
 	}
+	@Override
+	protected void onDetachedFromWindow() {
+		super.onDetachedFromWindow();
+		mSnapshots.clear();
+		mLabels.clear();
+	}
 	public void setAnimationSpeed(int speed){
 		mAnimationDuration=speed;
 	}
@@ -1887,7 +1958,14 @@ public class AllAppsSlidingView extends AdapterView<ApplicationsAdapter> impleme
 	private void findCurrentHolder(){
     	for(int i=1;i<getChildCount();i++){
     		if(getChildAt(i).getTag().equals(mCurrentScreen)){
-    			mCurrentHolder=i;
+    			final HolderLayout h=(HolderLayout) getChildAt(i);
+    			if(h.isSnapshot()){
+    				//ADW: only the page we stopped on needs real views
+    				makeLivePage(h);
+    				mCurrentHolder=getChildCount()-1;
+    			}else{
+    				mCurrentHolder=i;
+    			}
     			break;
     		}
     	}
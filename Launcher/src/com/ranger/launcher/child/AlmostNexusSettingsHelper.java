@@ -28,6 +28,61 @@ public final class AlmostNexusSettingsHelper {
 		"highlights_color_focus","uiNewSelectors","desktopRows","desktopColumns","autosizeIcons","uiDesktopIndicatorType",
 		"screenCache","uiDesktopIndicator","themePackageName","themeIcons"};
 
+	/**
+	 * Immutable copy of the settings read while loading icons and laying out
+	 * the workspace, so those paths don't go through SharedPreferences and
+	 * resource lookups on every read. Replaced as a whole by
+	 * {@link #refreshSnapshot(Context)} when a preference changes.
+	 */
+	public static final class Snapshot {
+		public final String themePackageName;
+		public final boolean themeIcons;
+		public final boolean autosizeIcons;
+		public final boolean uiHideLabels;
+		public final int desktopRows;
+		public final int desktopColumns;
+		public final int screenCache;
+		public final boolean desktopIndicator;
+		public final int desktopIndicatorType;
+		public final boolean parallelAppsLoader;
+
+		private Snapshot(Context context) {
+			themePackageName = getThemePackageName(context, Launcher.THEME_DEFAULT);
+			themeIcons = getThemeIcons(context);
+			autosizeIcons = getAutosizeIcons(context);
+			uiHideLabels = getUIHideLabels(context);
+			desktopRows = getDesktopRows(context);
+			desktopColumns = getDesktopColumns(context);
+			screenCache = getScreenCache(context);
+			desktopIndicator = getDesktopIndicator(context);
+			desktopIndicatorType = getDesktopIndicatorType(context);
+			parallelAppsLoader = getParallelAppsLoader(context);
+		}
+	}
+
+	private static volatile Snapshot sSnapshot;
+
+	/**
+	 * @return The current settings snapshot, built on first use.
+	 */
+	public static Snapshot getSnapshot(Context context) {
+		Snapshot snapshot = sSnapshot;
+		if (snapshot == null) {
+			snapshot = new Snapshot(context);
+			sSnapshot = snapshot;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * Rebuilds the snapshot from the current preferences and publishes it.
+	 */
+	public static Snapshot refreshSnapshot(Context context) {
+		final Snapshot snapshot = new Snapshot(context);
+		sSnapshot = snapshot;
+		return snapshot;
+	}
+
 	public static boolean needsRestart(String key){
 		for(int i=0;i<restart_keys.length;i++){
 			if(restart_keys[i].equals(key))
@@ -434,6 +489,11 @@ public final class AlmostNexusSettingsHelper {
 		boolean newD = sp.getBoolean("dbg_show_mem", false);
 		return newD;
 	}
+	public static boolean getParallelAppsLoader(Context context) {
+		SharedPreferences sp = context.getSharedPreferences(ALMOSTNEXUS_PREFERENCES, Context.MODE_PRIVATE);
+		boolean newD = sp.getBoolean("dbg_parallel_loader", false);
+		return newD;
+	}
 	public static boolean getDrawerCatalogsNavigation(Context context) {
 	    SharedPreferences sp = context.getSharedPreferences(ALMOSTNEXUS_PREFERENCES, Context.MODE_PRIVATE);
 	    boolean newD = sp.getBoolean("drawer_navigate_catalogs", context.getResources().getBoolean(R.bool.config_drawer_navigate_catalogs));
@@ -50,8 +50,17 @@ public class ApplicationsAdapter extends ArrayAdapter<ApplicationInfo> {
 	// TODO: Check if allItems is used somewhere else!
 	public static ArrayList<ApplicationInfo> allItems = new ArrayList<ApplicationInfo>();
 	private static HashMap<ApplicationInfo, View> viewCache = new HashMap<ApplicationInfo, View>();
+	// allItems by package name, guarded by allItems as well
+	private static final HashMap<String, ArrayList<ApplicationInfo>> sPackages =
+			new HashMap<String, ArrayList<ApplicationInfo>>();
 	private CatalogueFilter filter;
+	// Index over allItems, rebuilt on the next filtering after allItems changed
+	private static final ApplicationsIndex sIndex = new ApplicationsIndex();
+	private static boolean sIndexValid = false;
+	// Text typed in the drawer, kept when the data set is filtered again
+	private CharSequence mTextFilter;
     private static final Collator sCollator = Collator.getInstance();
+    private static final ApplicationInfoComparator sComparator = new ApplicationInfoComparator();
     private AppCatalogueFilter mCatalogueFilter;
     private boolean mWithDrawingCache = false;
 
@@ -147,32 +156,124 @@ public class ApplicationsAdapter extends ArrayAdapter<ApplicationInfo> {
 
 	@Override
 	public void add(ApplicationInfo info) {
-		//check allItems before added. It is a fix for all of the multi-icon issue, but will 
-		//lose performance. Anyway, we do not expected to have many applications.
+		if (addItem(info)) {
+			updateDataSet();
+		}
+	}
+
+	/**
+	 * Inserts an application in allItems at its sorted position, unless an
+	 * application of the same component is there already. The data set isn't
+	 * filtered again, see {@link #updateDataSet()}.
+	 *
+	 * @return true if the application was added.
+	 */
+	boolean addItem(ApplicationInfo info) {
+		final ComponentName component = info.intent.getComponent();
+		synchronized (allItems) {
+			//check allItems before added. It is a fix for all of the multi-icon issue
+			if (component != null && findItem(component) != null) {
+				return false;
+			}
+			int index = Collections.binarySearch(allItems, info, sComparator);
+			if (index < 0) {
+				index = -index - 1;
+			}
+			allItems.add(index, info);
+			if (component != null) {
+				final String packageName = component.getPackageName();
+				ArrayList<ApplicationInfo> items = sPackages.get(packageName);
+				if (items == null) {
+					items = new ArrayList<ApplicationInfo>(1);
+					sPackages.put(packageName, items);
+				}
+				items.add(info);
+			}
+			sIndexValid = false;
+			return true;
+		}
+	}
+
+	/**
+	 * Removes the application of the same component from allItems. The data
+	 * set isn't filtered again, see {@link #updateDataSet()}.
+	 *
+	 * @return true if an application was removed.
+	 */
+	boolean removeItem(ApplicationInfo info) {
+		final ComponentName component = info.intent.getComponent();
+		if (component == null) {
+			return false;
+		}
+		synchronized (allItems) {
+			final ApplicationInfo item = findItem(component);
+			if (item == null) {
+				return false;
+			}
+			viewCache.remove(item);
+			allItems.remove(indexOf(item));
+			final String packageName = component.getPackageName();
+			final ArrayList<ApplicationInfo> items = sPackages.get(packageName);
+			items.remove(item);
+			if (items.isEmpty()) {
+				sPackages.remove(packageName);
+			}
+			sIndexValid = false;
+			return true;
+		}
+	}
+
+	/**
+	 * @return The application of a component, or null if there's none.
+	 */
+	ApplicationInfo findItem(ComponentName component) {
 		synchronized (allItems) {
-			/*if (!allItems.contains(info)) {
-				changed = true;
-				allItems.add(info);
-				Collections.sort(allItems,new ApplicationInfoComparator());
-			}*/
-			int count=allItems.size();
-			boolean found=false;
-			for(int i=0;i<count;i++){
-				ApplicationInfo athis=allItems.get(i);
-				if(info.intent.getComponent()!=null){
-					if(athis.intent.getComponent().flattenToString().equals(
-							info.intent.getComponent().flattenToString())){
-						found=true;
-						break;
+			final ArrayList<ApplicationInfo> items = sPackages.get(component.getPackageName());
+			if (items != null) {
+				final String className = component.getClassName();
+				for (int i = items.size() - 1; i >= 0; i--) {
+					final ApplicationInfo item = items.get(i);
+					if (className.equals(item.intent.getComponent().getClassName())) {
+						return item;
 					}
 				}
 			}
-			if(!found){
-				allItems.add(info);
-				Collections.sort(allItems,new ApplicationInfoComparator());
-				updateDataSet();
+			return null;
+		}
+	}
+
+	/**
+	 * @return A copy of the applications of a package, empty if there's none.
+	 */
+	ArrayList<ApplicationInfo> getPackageItems(String packageName) {
+		synchronized (allItems) {
+			final ArrayList<ApplicationInfo> items = sPackages.get(packageName);
+			return items != null ? new ArrayList<ApplicationInfo>(items) :
+					new ArrayList<ApplicationInfo>(0);
+		}
+	}
+
+	/**
+	 * Finds an application of allItems among the ones of the same title, or
+	 * anywhere if its title changed since it was inserted.
+	 */
+	private static int indexOf(ApplicationInfo item) {
+		final ArrayList<ApplicationInfo> items = allItems;
+		final int index = Collections.binarySearch(items, item, sComparator);
+		if (index >= 0) {
+			for (int i = index; i >= 0 && sComparator.compare(items.get(i), item) == 0; i--) {
+				if (items.get(i) == item) {
+					return i;
+				}
+			}
+			final int count = items.size();
+			for (int i = index + 1; i < count && sComparator.compare(items.get(i), item) == 0; i++) {
+				if (items.get(i) == item) {
+					return i;
+				}
 			}
-		} 
+		}
+		return items.indexOf(item);
 	}
 
 	//2 super functions, to make sure related add/clear do not affect allItems.
@@ -188,59 +289,15 @@ public class ApplicationsAdapter extends ArrayAdapter<ApplicationInfo> {
 
 	@Override
 	public void remove(ApplicationInfo info) {
-		synchronized (allItems) {
-			//allItems.remove(info);
-			int count=allItems.size();
-			for(int i=0;i<count;i++){
-				ApplicationInfo athis=allItems.get(i);
-				if(info.intent.getComponent()!=null){
-					if(athis.intent.getComponent().flattenToString().equals(
-							info.intent.getComponent().flattenToString())){
-						viewCache.remove(athis);
-						allItems.remove(i);
-						Collections.sort(allItems,new ApplicationInfoComparator());
-						updateDataSet();
-						break;
-					}
-				}
-			}			
+		if (removeItem(info)) {
+			updateDataSet();
 		}
 	}
 
-	private boolean appInGroup(String s) {
-		return mCatalogueFilter.checkAppInGroup(s);
-	}
-
-	private String getComponentName(ApplicationInfo info) {
-		if (info == null || info.intent == null)
-			return null;
-		ComponentName cmpName = info.intent.getComponent();
-		if (cmpName == null)
-			return null;
-		return cmpName.flattenToString();
-	}
-
-	private void filterApps(ArrayList<ApplicationInfo> theFiltered,
-			ArrayList<ApplicationInfo> theItems) {
-		theFiltered.clear();
-		//AppGrpUtils.checkAndInitGrp();
-		if (theItems != null) {
-			int length = theItems.size();
-
-			for (int i = 0; i < length; i++) {
-				ApplicationInfo info = theItems.get(i);
-				String s = getComponentName(info);
-
-				if (s != null && appInGroup(s)) {
-					theFiltered.add(info);
-				}
-			}
-		}
-	}
-	//filter,sort,update
+	//filter,update. allItems is kept sorted, so is the index built from it
     public void updateDataSet()
 	{
-        getFilter().filter(null);
+        getFilter().filter(mTextFilter);
 	}
 
 	@Override
@@ -271,7 +328,11 @@ public class ApplicationsAdapter extends ArrayAdapter<ApplicationInfo> {
                 ArrayList<ApplicationInfo> filt = new ArrayList<ApplicationInfo>();
 
                 synchronized (allItems) {
-                        filterApps(filt, allItems);
+                        if (!sIndexValid) {
+                                sIndex.rebuild(allItems);
+                                sIndexValid = true;
+                        }
+                        sIndex.select(mCatalogueFilter, constraint, filt);
                 }
 
                 result.values = filt;
@@ -285,6 +346,7 @@ public class ApplicationsAdapter extends ArrayAdapter<ApplicationInfo> {
                         FilterResults results) {
                 // NOTE: this function is *always* called from the UI thread.
                 ArrayList<ApplicationInfo> localFiltered =(ArrayList<ApplicationInfo>) results.values;
+                mTextFilter = constraint;
 
                 setNotifyOnChange(false);
                 superClear();
@@ -0,0 +1,225 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import com.ranger.launcher.child.catalogue.AppCatalogueFilter;
+import com.ranger.launcher.child.catalogue.AppCatalogueFilters;
+
+import android.content.ComponentName;
+
+/**
+ * Index over the applications of the drawer, so that switching catalogue or
+ * typing in the text filter doesn't scan and sort the whole list.
+ *
+ * Every application gets an ordinal, its position in the sorted list the
+ * index was built from, and a selection is a bitset of ordinals. Reading a
+ * selection in order gives the applications already sorted.
+ *
+ * The members of a catalogue are read from its preferences the first time
+ * it is selected and again only after it was edited. Titles are indexed by
+ * the start of each of their words.
+ *
+ * Not thread safe, {@link ApplicationsAdapter} only uses it while holding
+ * the lock of its list.
+ */
+final class ApplicationsIndex {
+    private ApplicationInfo[] mApps = new ApplicationInfo[0];
+    private final HashMap<String, Integer> mOrdinals = new HashMap<String, Integer>();
+    private final BitSet mAll = new BitSet();
+
+    private static class Members {
+        final BitSet apps = new BitSet();
+        int modificationCount;
+    }
+
+    private final WeakHashMap<AppCatalogueFilters.Catalogue, Members> mCatalogues =
+            new WeakHashMap<AppCatalogueFilters.Catalogue, Members>();
+
+    private static class Word implements Comparable<Word> {
+        final String text;
+        final int ordinal;
+
+        Word(String text, int ordinal) {
+            this.text = text;
+            this.ordinal = ordinal;
+        }
+
+        public int compareTo(Word another) {
+            return text.compareTo(another.text);
+        }
+    }
+
+    // Sorted suffixes of the titles starting at a word, built on first use
+    private Word[] mWords;
+    // Titles the words were built from, to notice a title updated in place
+    private CharSequence[] mIndexedTitles = new CharSequence[0];
+
+    /**
+     * Indexes a new list of applications, sorted in the order selections
+     * must be returned in.
+     */
+    void rebuild(List<ApplicationInfo> apps) {
+        final int count = apps.size();
+        mApps = apps.toArray(new ApplicationInfo[count]);
+        mOrdinals.clear();
+        mAll.clear();
+        for (int i = 0; i < count; i++) {
+            final String component = getComponentName(mApps[i]);
+            if (component != null) {
+                mOrdinals.put(component, i);
+                mAll.set(i);
+            }
+        }
+        mCatalogues.clear();
+        mWords = null;
+    }
+
+    /**
+     * Adds to the list the applications belonging to the catalogue of the
+     * filter whose title has a word starting with the specified text.
+     *
+     * @param text The text typed in the drawer, null or empty to ignore the titles.
+     */
+    void select(AppCatalogueFilter filter, CharSequence text, ArrayList<ApplicationInfo> out) {
+        final AppCatalogueFilters.Catalogue catalogue = filter != null ? filter.getCatalogue() : null;
+        BitSet selection = catalogue != null ? getMembers(catalogue) : mAll;
+
+        final String prefix = text != null ? normalize(text.toString()) : "";
+        if (prefix.length() > 0) {
+            final BitSet matches = matchTitles(prefix);
+            matches.and(selection);
+            selection = matches;
+        }
+
+        final ApplicationInfo[] apps = mApps;
+        out.ensureCapacity(out.size() + selection.cardinality());
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            out.add(apps[i]);
+        }
+    }
+
+    private BitSet getMembers(AppCatalogueFilters.Catalogue catalogue) {
+        final int modificationCount = catalogue.getModificationCount();
+        Members members = mCatalogues.get(catalogue);
+        if (members != null && members.modificationCount == modificationCount) {
+            return members.apps;
+        }
+
+        if (members == null) {
+            members = new Members();
+            mCatalogues.put(catalogue, members);
+        }
+        members.apps.clear();
+        members.modificationCount = modificationCount;
+
+        // Only the members are stored, see AppCatalogueFilter.checkAppInGroup()
+        for (Map.Entry<String, ?> entry : catalogue.getPreferences().getAll().entrySet()) {
+            if (!Boolean.TRUE.equals(entry.getValue())) {
+                continue;
+            }
+            final Integer ordinal = mOrdinals.get(entry.getKey());
+            if (ordinal != null) {
+                members.apps.set(ordinal);
+            }
+        }
+        return members.apps;
+    }
+
+    private BitSet matchTitles(String prefix) {
+        if (mWords == null || titlesChanged()) {
+            buildWords();
+        }
+
+        final Word[] words = mWords;
+        final BitSet matches = new BitSet(mApps.length);
+
+        // first word not sorting before the prefix
+        int low = 0;
+        int high = words.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (words[middle].text.compareTo(prefix) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        for (int i = low; i < words.length && words[i].text.startsWith(prefix); i++) {
+            matches.set(words[i].ordinal);
+        }
+        return matches;
+    }
+
+    private boolean titlesChanged() {
+        final ApplicationInfo[] apps = mApps;
+        for (int i = 0; i < apps.length; i++) {
+            if (apps[i].title != mIndexedTitles[i]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void buildWords() {
+        final ApplicationInfo[] apps = mApps;
+        final ArrayList<Word> words = new ArrayList<Word>(apps.length * 2);
+        mIndexedTitles = new CharSequence[apps.length];
+
+        for (int i = 0; i < apps.length; i++) {
+            final CharSequence title = apps[i].title;
+            mIndexedTitles[i] = title;
+            if (title == null || !mAll.get(i)) {
+                continue;
+            }
+
+            final String normalized = normalize(title.toString());
+            final int length = normalized.length();
+            boolean wordStart = true;
+            for (int c = 0; c < length; c++) {
+                final boolean letter = Character.isLetterOrDigit(normalized.charAt(c));
+                if (letter && wordStart) {
+                    words.add(new Word(normalized.substring(c), i));
+                }
+                wordStart = !letter;
+            }
+        }
+
+        mWords = words.toArray(new Word[words.size()]);
+        Arrays.sort(mWords);
+    }
+
+    private static String normalize(String text) {
+        return text.trim().toLowerCase();
+    }
+
+    private static String getComponentName(ApplicationInfo info) {
+        if (info == null || info.intent == null) {
+            return null;
+        }
+        final ComponentName component = info.intent.getComponent();
+        return component != null ? component.flattenToString() : null;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import static android.util.Log.d;
+
+import java.util.ArrayList;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+
+/**
+ * Mutable bitmaps released by the icon, preview and drag code, handed out
+ * again instead of allocating new ones.
+ *
+ * Bitmaps are kept in buckets of the same width, height and config. The
+ * bitmaps kept may use a fraction of the memory class of the device, past
+ * that the bucket released to the longest ago is emptied first. A bitmap
+ * must only be released once nothing draws it anymore.
+ *
+ * May be used from any thread.
+ */
+final class BitmapPool {
+    private static final String LOG_TAG = "BitmapPool";
+
+    // Share of the memory class the pooled bitmaps may use
+    private static final int BUDGET_FRACTION = 16;
+    // Most bitmaps kept in a single bucket
+    private static final int MAX_PER_BUCKET = 8;
+
+    private static final class Bucket {
+        final int width;
+        final int height;
+        final Bitmap.Config config;
+        final ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>(MAX_PER_BUCKET);
+        long lastUsed;
+
+        Bucket(int width, int height, Bitmap.Config config) {
+            this.width = width;
+            this.height = height;
+            this.config = config;
+        }
+    }
+
+    private static final ArrayList<Bucket> sBuckets = new ArrayList<Bucket>();
+    private static int sBudget;
+    private static long sClock;
+
+    private static int sHits;
+    private static int sMisses;
+    private static int sResidentBytes;
+
+    private BitmapPool() {
+    }
+
+    /**
+     * Sizes the pool for the device. Until then released bitmaps are
+     * recycled right away.
+     */
+    static synchronized void init(Context context) {
+        final ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        sBudget = activityManager.getMemoryClass() * 1024 * 1024 / BUDGET_FRACTION;
+        trim(sBudget);
+    }
+
+    /**
+     * Returns a mutable bitmap cleared to transparent, from the pool when one
+     * of the same size and config was released.
+     *
+     * @throws OutOfMemoryError If a new bitmap had to be created and couldn't be.
+     */
+    static Bitmap acquire(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        synchronized (BitmapPool.class) {
+            final Bucket bucket = findBucket(width, height, config);
+            if (bucket != null && !bucket.bitmaps.isEmpty()) {
+                bitmap = bucket.bitmaps.remove(bucket.bitmaps.size() - 1);
+                sResidentBytes -= getSize(bitmap);
+                sHits++;
+            } else {
+                sMisses++;
+            }
+        }
+
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Gives a bitmap back, it is pooled if it fits in the budget and
+     * recycled otherwise. Callers must drop their references to it.
+     */
+    static void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        final int size = getSize(bitmap);
+        final Bitmap.Config config = bitmap.getConfig();
+        if (!bitmap.isMutable() || config == null || size > sBudget) {
+            bitmap.recycle();
+            return;
+        }
+
+        synchronized (BitmapPool.class) {
+            trim(sBudget - size);
+            Bucket bucket = findBucket(bitmap.getWidth(), bitmap.getHeight(), config);
+            if (bucket == null) {
+                bucket = new Bucket(bitmap.getWidth(), bitmap.getHeight(), config);
+                sBuckets.add(bucket);
+            }
+            if (bucket.bitmaps.size() >= MAX_PER_BUCKET || sResidentBytes + size > sBudget) {
+                bitmap.recycle();
+                return;
+            }
+            bucket.bitmaps.add(bitmap);
+            bucket.lastUsed = ++sClock;
+            sResidentBytes += size;
+        }
+    }
+
+    /**
+     * Recycles every pooled bitmap.
+     */
+    static synchronized void clear() {
+        trim(0);
+    }
+
+    static synchronized int getHits() {
+        return sHits;
+    }
+
+    static synchronized int getMisses() {
+        return sMisses;
+    }
+
+    /**
+     * @return The size in bytes of the bitmaps waiting in the pool.
+     */
+    static synchronized int getResidentBytes() {
+        return sResidentBytes;
+    }
+
+    static synchronized void logStats() {
+        d(LOG_TAG, "hits=" + sHits + " misses=" + sMisses + " resident=" + sResidentBytes
+                + " budget=" + sBudget + " buckets=" + sBuckets.size());
+    }
+
+    private static Bucket findBucket(int width, int height, Bitmap.Config config) {
+        final ArrayList<Bucket> buckets = sBuckets;
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            final Bucket bucket = buckets.get(i);
+            if (bucket.width == width && bucket.height == height && bucket.config == config) {
+                return bucket;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Empties the least recently used buckets until the pool holds at most
+     * the specified number of bytes.
+     */
+    private static void trim(int size) {
+        final ArrayList<Bucket> buckets = sBuckets;
+        while (sResidentBytes > size) {
+            Bucket oldest = null;
+            for (int i = buckets.size() - 1; i >= 0; i--) {
+                final Bucket bucket = buckets.get(i);
+                if (!bucket.bitmaps.isEmpty() && (oldest == null || bucket.lastUsed < oldest.lastUsed)) {
+                    oldest = bucket;
+                }
+            }
+            if (oldest == null) {
+                break;
+            }
+            final ArrayList<Bitmap> bitmaps = oldest.bitmaps;
+            for (int i = bitmaps.size() - 1; i >= 0; i--) {
+                final Bitmap bitmap = bitmaps.get(i);
+                sResidentBytes -= getSize(bitmap);
+                bitmap.recycle();
+            }
+            bitmaps.clear();
+        }
+        for (int i = buckets.size() - 1; i >= 0; i--) {
+            if (buckets.get(i).bitmaps.isEmpty()) {
+                buckets.remove(i);
+            }
+        }
+    }
+
+    private static int getSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
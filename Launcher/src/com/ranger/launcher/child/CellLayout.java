@@ -30,6 +30,7 @@ import android.view.MotionEvent;
 import android.view.View;
 import android.view.ViewDebug;
 import android.view.ViewGroup;
+import android.view.ViewParent;
 
 import java.util.ArrayList;
 
@@ -64,6 +65,11 @@ public class CellLayout extends WidgetCellLayout {
     
     boolean[][] mOccupied;
 
+    private final CellOccupancy mOccupancy = new CellOccupancy();
+
+    // Incremented whenever children are added, removed, moved or resized
+    private int mContentVersion;
+
     private RectF mDragRect = new RectF();
 
     private boolean mDirtyTag;
@@ -98,8 +104,9 @@ public class CellLayout extends WidgetCellLayout {
             a.getDimensionPixelSize(R.styleable.CellLayout_shortAxisStartPadding, 10);
         mShortAxisEndPadding = 
             a.getDimensionPixelSize(R.styleable.CellLayout_shortAxisEndPadding, 10);
-        mRows=AlmostNexusSettingsHelper.getDesktopRows(context);
-        mColumns=AlmostNexusSettingsHelper.getDesktopColumns(context);
+        final AlmostNexusSettingsHelper.Snapshot settings = AlmostNexusSettingsHelper.getSnapshot(context);
+        mRows=settings.desktopRows;
+        mColumns=settings.desktopColumns;
         mLongAxisStartPaddingOrg=mLongAxisStartPadding;
         mShortAxisStartPaddingOrg=mShortAxisStartPadding;
         mPaginatorPadding=getResources().getDimensionPixelSize(R.dimen.desktop_paginator_padding);
@@ -119,7 +126,35 @@ public class CellLayout extends WidgetCellLayout {
         }*/
         
         mWallpaperManager = WallpaperManager.getInstance(getContext());
-        mDesktopCacheType=AlmostNexusSettingsHelper.getScreenCache(context);
+        mDesktopCacheType=settings.screenCache;
+
+        setOnHierarchyChangeListener(new OnHierarchyChangeListener() {
+            public void onChildViewAdded(View parent, View child) {
+                // picked up by the next updateOccupancy()
+                onContentChanged();
+            }
+
+            public void onChildViewRemoved(View parent, View child) {
+                releaseOccupancy((LayoutParams) child.getLayoutParams());
+                onContentChanged();
+            }
+        });
+    }
+
+    /**
+     * @return A number that changes whenever children are added, removed,
+     *         moved or resized.
+     */
+    int getContentVersion() {
+        return mContentVersion;
+    }
+
+    private void onContentChanged() {
+        mContentVersion++;
+        final ViewParent parent = getParent();
+        if (parent instanceof Workspace) {
+            ((Workspace) parent).onScreenChanged();
+        }
     }
 
     @Override
@@ -238,8 +273,7 @@ public class CellLayout extends WidgetCellLayout {
                 final int xCount = portrait ? mShortAxisCells : mLongAxisCells;
                 final int yCount = portrait ? mLongAxisCells : mShortAxisCells;
 
-                final boolean[][] occupied = mOccupied;
-                findOccupiedCells(xCount, yCount, occupied, null);
+                final CellOccupancy occupancy = updateOccupancy(null);
 
                 cellInfo.cell = null;
                 cellInfo.cellX = cellXY[0];
@@ -247,7 +281,7 @@ public class CellLayout extends WidgetCellLayout {
                 cellInfo.spanX = 1;
                 cellInfo.spanY = 1;
                 cellInfo.valid = cellXY[0] >= 0 && cellXY[1] >= 0 && cellXY[0] < xCount &&
-                        cellXY[1] < yCount && !occupied[cellXY[0]][cellXY[1]];
+                        cellXY[1] < yCount && !occupancy.isOccupied(cellXY[0], cellXY[1]);
 
                 // Instead of finding the interesting vacant cells here, wait until a
                 // caller invokes getTag() to retrieve the result. Finding the vacant
@@ -361,10 +395,12 @@ public class CellLayout extends WidgetCellLayout {
 
     private static void findVacantCell(Rect current, int xCount, int yCount, boolean[][] occupied,
     		 CellInfo cellInfo) {
+    		   final long[] rows = CellOccupancy.toRows(occupied, xCount, yCount);
     		   for (int l = 0; l < xCount; l++)
-    		      for (int r = l; r < xCount; r++)
+    		      for (int r = l; r < xCount; r++) {
+    		         final long mask = CellOccupancy.rowMask(l, r);
     		         for (int t = 0; t < yCount; t++)
-    		            for (int b = t; b < yCount && isRowEmpty(b, l, r, occupied); b++) {
+    		            for (int b = t; b < yCount && (rows[b] & mask) == 0; b++) {
     		               current.left = l;
     		               current.right = r;
     		               current.top = t;
@@ -372,10 +408,12 @@ public class CellLayout extends WidgetCellLayout {
 
     		               addVacantCell(current, cellInfo);
     		            }
+    		      }
     		}
 
     		// Note the row test in the last for loop. No need to test the whole area, only the
     		// newly added row since everything before it would have already been tested.
+    		// Rows are packed in bitmasks so that test is a single and.
 
 	 public static boolean isEmpty(int x0, int x1, int y0, int y1, boolean[][] occupied) {
 	    for ( int x = x0; x <= x1; x++ )
@@ -543,7 +581,9 @@ public class CellLayout extends WidgetCellLayout {
         int tmpCellH=mCellHeight;
         //ADW: add padding if using top paginator dots AND indicator is enabled
         int topExtra=0;
-        if(AlmostNexusSettingsHelper.getDesktopIndicator(getContext()) && AlmostNexusSettingsHelper.getDesktopIndicatorType(getContext())==DesktopIndicator.INDICATOR_TYPE_PAGER){
+        final AlmostNexusSettingsHelper.Snapshot settings = AlmostNexusSettingsHelper.getSnapshot(getContext());
+        final boolean autosizeIcons = settings.autosizeIcons;
+        if(settings.desktopIndicator && settings.desktopIndicatorType==DesktopIndicator.INDICATOR_TYPE_PAGER){
         	topExtra=mPaginatorPadding;
         }
         if(mPortrait){
@@ -561,7 +601,7 @@ public class CellLayout extends WidgetCellLayout {
         	tmpCellW=(widthSpecSize-mLongAxisStartPadding-mLongAxisEndPadding)/mColumns;
         	tmpCellH=(heightSpecSize-mShortAxisStartPadding-mShortAxisEndPadding)/mRows;
         }
-        if(AlmostNexusSettingsHelper.getAutosizeIcons(getContext())){
+        if(autosizeIcons){
         	mCellWidth=tmpCellW;
         	mCellHeight=tmpCellH;
         }
@@ -572,6 +612,12 @@ public class CellLayout extends WidgetCellLayout {
                 mOccupied = new boolean[mLongAxisCells][mShortAxisCells];
             }
         }
+        if (mOccupancy.setSize(getCountX(), getCountY())) {
+            // the grid was cleared, every child has to be added again
+            for (int i = getChildCount() - 1; i >= 0; i--) {
+                ((LayoutParams) getChildAt(i).getLayoutParams()).occupying = false;
+            }
+        }
         final int shortAxisCells = mShortAxisCells;
         final int longAxisCells = mLongAxisCells;
         final int longAxisStartPadding = mLongAxisStartPadding;
@@ -620,10 +666,10 @@ public class CellLayout extends WidgetCellLayout {
 
             if (mPortrait) {
                 lp.setup(cellWidth, cellHeight, mWidthGap, mHeightGap, shortAxisStartPadding,
-                        longAxisStartPadding,AlmostNexusSettingsHelper.getAutosizeIcons(getContext()));
+                        longAxisStartPadding,autosizeIcons);
             } else {
                 lp.setup(cellWidth, cellHeight, mWidthGap, mHeightGap, longAxisStartPadding,
-                        shortAxisStartPadding,AlmostNexusSettingsHelper.getAutosizeIcons(getContext()));
+                        shortAxisStartPadding,autosizeIcons);
             }
             
             if (lp.regenerateId) {
@@ -652,6 +698,10 @@ public class CellLayout extends WidgetCellLayout {
 
                 int childLeft = lp.x;
                 int childTop = lp.y;
+                if (child.getLeft() != childLeft || child.getTop() != childTop ||
+                        child.getWidth() != lp.width || child.getHeight() != lp.height) {
+                    onContentChanged();
+                }
                 child.layout(childLeft, childTop, childLeft + lp.width, childTop + lp.height);
                 
                 if (lp.dropped) {
@@ -697,43 +747,40 @@ public class CellLayout extends WidgetCellLayout {
      * @param pixelY The Y location at which you want to search for a vacant area.
      * @param spanX Horizontal span of the object.
      * @param spanY Vertical span of the object.
-     * @param vacantCells Pre-computed set of vacant cells to search.
+     * @param ignoreView Considers space occupied by this view as unoccupied
      * @param recycle Previously returned value to possibly recycle.
      * @return The X, Y cell of a vacant area that can contain this object,
      *         nearest the requested location.
      */
     int[] findNearestVacantArea(int pixelX, int pixelY, int spanX, int spanY,
-            CellInfo vacantCells, int[] recycle) {
-        
+            View ignoreView, int[] recycle) {
+        final CellOccupancy occupancy = updateOccupancy(ignoreView);
+
         // Keep track of best-scoring drop area
         final int[] bestXY = recycle != null ? recycle : new int[2];
         final int[] cellXY = mCellXY;
         double bestDistance = Double.MAX_VALUE;
-        
-        // Bail early if vacant cells aren't valid
-        if (!vacantCells.valid) {
-            return null;
-        }
 
-        // Look across all vacant cells for best fit
-        final int size = vacantCells.vacantCells.size();
-        for (int i = 0; i < size; i++) {
-            final CellInfo.VacantCell cell = vacantCells.vacantCells.get(i);
-            
-            // Reject if vacant cell isn't our exact size
-            if (cell.spanX != spanX || cell.spanY != spanY) {
-                continue;
-            }
-            
-            // Score is center distance from requested pixel
-            cellToPoint(cell.cellX, cell.cellY, cellXY);
-            
-            double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2) +
-                    Math.pow(cellXY[1] - pixelY, 2));
-            if (distance <= bestDistance) {
-                bestDistance = distance;
-                bestXY[0] = cell.cellX;
-                bestXY[1] = cell.cellY;
+        // Every origin is a constant time check, ties go to the last one like
+        // they did when walking the list of vacant cells
+        final int lastX = occupancy.getCountX() - spanX;
+        final int lastY = occupancy.getCountY() - spanY;
+        for (int x = 0; x <= lastX; x++) {
+            for (int y = 0; y <= lastY; y++) {
+                if (!occupancy.isVacant(x, y, spanX, spanY)) {
+                    continue;
+                }
+
+                // Score is center distance from requested pixel
+                cellToPoint(x, y, cellXY);
+
+                double distance = Math.sqrt(Math.pow(cellXY[0] - pixelX, 2) +
+                        Math.pow(cellXY[1] - pixelY, 2));
+                if (distance <= bestDistance) {
+                    bestDistance = distance;
+                    bestXY[0] = x;
+                    bestXY[1] = y;
+                }
             }
         }
 
@@ -744,6 +791,33 @@ public class CellLayout extends WidgetCellLayout {
             return null;
         }
     }
+
+    /**
+     * Finds the upper-left coordinate of the first area in the grid that can
+     * hold an object of the specified dimensions.
+     *
+     * @param cellXY The array that will contain the position of the area if found.
+     * @param spanX Horizontal span of the object.
+     * @param spanY Vertical span of the object.
+     * @param ignoreView Considers space occupied by this view as unoccupied
+     * @return True if a vacant area was found.
+     */
+    boolean findCellForSpan(int[] cellXY, int spanX, int spanY, View ignoreView) {
+        final CellOccupancy occupancy = updateOccupancy(ignoreView);
+
+        final int lastX = occupancy.getCountX() - spanX;
+        final int lastY = occupancy.getCountY() - spanY;
+        for (int x = 0; x <= lastX; x++) {
+            for (int y = 0; y <= lastY; y++) {
+                if (occupancy.isVacant(x, y, spanX, spanY)) {
+                    cellXY[0] = x;
+                    cellXY[1] = y;
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
     
     /**
      * Drop a child at the specified position
@@ -868,26 +942,47 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
     }
 
     private void findOccupiedCells(int xCount, int yCount, boolean[][] occupied, View ignoreView) {
-        for (int x = 0; x < xCount; x++) {
-            for (int y = 0; y < yCount; y++) {
-                occupied[x][y] = false;
-            }
-        }
+        updateOccupancy(ignoreView).copyTo(occupied, xCount, yCount);
+    }
 
-        int count = getChildCount();
+    /**
+     * Brings {@link #mOccupancy} up to date. Only children added, moved or
+     * resized since the last call touch the grid, the cells of the others are
+     * left alone.
+     *
+     * @param ignoreView Child whose cells are left out, or null.
+     */
+    private CellOccupancy updateOccupancy(View ignoreView) {
+        final int count = getChildCount();
         for (int i = 0; i < count; i++) {
-            View child = getChildAt(i);
-            if (child instanceof Folder || child.equals(ignoreView)) {
-                continue;
+            final View child = getChildAt(i);
+            final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+            final boolean occupies = !(child instanceof Folder) && child != ignoreView;
+
+            if (lp.occupying && (!occupies || lp.occupiedX != lp.cellX ||
+                    lp.occupiedY != lp.cellY || lp.occupiedHSpan != lp.cellHSpan ||
+                    lp.occupiedVSpan != lp.cellVSpan)) {
+                releaseOccupancy(lp);
             }
-            LayoutParams lp = (LayoutParams) child.getLayoutParams();
 
-            for (int x = lp.cellX; x < lp.cellX + lp.cellHSpan && x < xCount; x++) {
-                for (int y = lp.cellY; y < lp.cellY + lp.cellVSpan && y < yCount; y++) {
-                    occupied[x][y] = true;
-                }
+            if (occupies && !lp.occupying) {
+                lp.occupiedX = lp.cellX;
+                lp.occupiedY = lp.cellY;
+                lp.occupiedHSpan = lp.cellHSpan;
+                lp.occupiedVSpan = lp.cellVSpan;
+                lp.occupying = true;
+                mOccupancy.add(lp.cellX, lp.cellY, lp.cellHSpan, lp.cellVSpan);
             }
         }
+
+        return mOccupancy;
+    }
+
+    private void releaseOccupancy(LayoutParams lp) {
+        if (lp.occupying) {
+            mOccupancy.remove(lp.occupiedX, lp.occupiedY, lp.occupiedHSpan, lp.occupiedVSpan);
+            lp.occupying = false;
+        }
     }
     
     public boolean lastDownOnOccupiedCell() {
@@ -950,6 +1045,14 @@ out:            for (int i = x; i < x + spanX - 1 && x < xCount; i++) {
         
         boolean dropped;        
 
+        // Cells this item currently holds in the CellLayout occupancy, they
+        // may lag behind cellX/cellY/spans until the next occupancy update
+        boolean occupying;
+        int occupiedX;
+        int occupiedY;
+        int occupiedHSpan;
+        int occupiedVSpan;
+
         public LayoutParams(Context c, AttributeSet attrs) {
             super(c, attrs);
             cellHSpan = 1;
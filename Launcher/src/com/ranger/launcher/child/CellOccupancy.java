@@ -0,0 +1,179 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+/**
+ * Occupancy of a {@link CellLayout} grid, kept up to date one item at a time.
+ *
+ * Every row is a bitmask of its occupied cells, so a grid can be at most
+ * {@link #MAX_COUNT} cells wide. Items may overlap, each cell keeps the number
+ * of items covering it and is only freed when the last one goes away.
+ *
+ * Span queries are answered from a summed-area table of the grid, rebuilt
+ * lazily the first time it is needed after a change.
+ */
+final class CellOccupancy {
+    static final int MAX_COUNT = 64;
+
+    private int mCountX;
+    private int mCountY;
+
+    private long[] mRows = new long[0];
+    private byte[] mItems = new byte[0];
+
+    // occupied cells above and to the left of each corner, (countX + 1) * (countY + 1)
+    private int[] mSums = new int[0];
+    private boolean mSumsValid;
+
+    int getCountX() {
+        return mCountX;
+    }
+
+    int getCountY() {
+        return mCountY;
+    }
+
+    /**
+     * Resizes the grid. Any change of size clears it.
+     *
+     * @return True if the size changed.
+     */
+    boolean setSize(int countX, int countY) {
+        if (countX > MAX_COUNT) {
+            throw new IllegalArgumentException("Grid wider than " + MAX_COUNT + " cells");
+        }
+        if (countX == mCountX && countY == mCountY) {
+            return false;
+        }
+
+        mCountX = countX;
+        mCountY = countY;
+        mRows = new long[countY];
+        mItems = new byte[countX * countY];
+        mSums = new int[(countX + 1) * (countY + 1)];
+        mSumsValid = false;
+        return true;
+    }
+
+    /**
+     * Marks the cells covered by an item as occupied. The part of the item
+     * falling outside of the grid is ignored.
+     */
+    void add(int cellX, int cellY, int spanX, int spanY) {
+        final int right = Math.min(cellX + spanX, mCountX);
+        final int bottom = Math.min(cellY + spanY, mCountY);
+        final int countX = mCountX;
+        for (int y = Math.max(cellY, 0); y < bottom; y++) {
+            for (int x = Math.max(cellX, 0); x < right; x++) {
+                if (mItems[y * countX + x]++ == 0) {
+                    mRows[y] |= 1L << x;
+                    mSumsValid = false;
+                }
+            }
+        }
+    }
+
+    /**
+     * Releases the cells covered by an item previously passed to {@link #add}.
+     */
+    void remove(int cellX, int cellY, int spanX, int spanY) {
+        final int right = Math.min(cellX + spanX, mCountX);
+        final int bottom = Math.min(cellY + spanY, mCountY);
+        final int countX = mCountX;
+        for (int y = Math.max(cellY, 0); y < bottom; y++) {
+            for (int x = Math.max(cellX, 0); x < right; x++) {
+                if (--mItems[y * countX + x] == 0) {
+                    mRows[y] &= ~(1L << x);
+                    mSumsValid = false;
+                }
+            }
+        }
+    }
+
+    boolean isOccupied(int x, int y) {
+        return (mRows[y] & (1L << x)) != 0;
+    }
+
+    /**
+     * @return True if a spanX by spanY item fits at cellX, cellY.
+     */
+    boolean isVacant(int cellX, int cellY, int spanX, int spanY) {
+        if (cellX < 0 || cellY < 0 || cellX + spanX > mCountX || cellY + spanY > mCountY) {
+            return false;
+        }
+        if (!mSumsValid) {
+            buildSums();
+        }
+
+        final int[] sums = mSums;
+        final int stride = mCountX + 1;
+        final int top = cellY * stride;
+        final int bottom = (cellY + spanY) * stride;
+        return sums[bottom + cellX + spanX] - sums[top + cellX + spanX] -
+                sums[bottom + cellX] + sums[top + cellX] == 0;
+    }
+
+    /**
+     * Copies the occupancy to an array indexed [x][y], as used by the rest of
+     * the launcher.
+     */
+    void copyTo(boolean[][] occupied, int xCount, int yCount) {
+        for (int x = 0; x < xCount; x++) {
+            for (int y = 0; y < yCount; y++) {
+                occupied[x][y] = x < mCountX && y < mCountY && isOccupied(x, y);
+            }
+        }
+    }
+
+    private void buildSums() {
+        final int[] sums = mSums;
+        final int countX = mCountX;
+        final int stride = countX + 1;
+        for (int y = 0; y < mCountY; y++) {
+            final long row = mRows[y];
+            int rowSum = 0;
+            for (int x = 0; x < countX; x++) {
+                rowSum += (int) (row >>> x) & 1;
+                sums[(y + 1) * stride + x + 1] = sums[y * stride + x + 1] + rowSum;
+            }
+        }
+        mSumsValid = true;
+    }
+
+    /**
+     * @return The bits of the cells left to right of a row, both included.
+     */
+    static long rowMask(int left, int right) {
+        final int width = right - left + 1;
+        return (width >= MAX_COUNT ? -1L : (1L << width) - 1) << left;
+    }
+
+    /**
+     * Packs an array indexed [x][y] into one bitmask per row.
+     */
+    static long[] toRows(boolean[][] occupied, int xCount, int yCount) {
+        final long[] rows = new long[yCount];
+        for (int x = 0; x < xCount; x++) {
+            for (int y = 0; y < yCount; y++) {
+                if (occupied[x][y]) {
+                    rows[y] |= 1L << x;
+                }
+            }
+        }
+        return rows;
+    }
+}
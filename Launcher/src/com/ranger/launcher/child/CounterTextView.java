@@ -61,6 +61,13 @@ public class CounterTextView extends TextView {
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
+        drawCounter(canvas);
+    }
+
+    /**
+     * Draws the counter alone, for parents drawing the rest of the view themselves.
+     */
+    void drawCounter(Canvas canvas) {
         //OVERLAY COUNTERS
         if(mCounter!=null){
             canvas.save();
@@ -23,7 +23,6 @@ import com.ranger.launcher.child.R;
 import android.content.Context;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
-import android.graphics.Matrix;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.Paint;
@@ -116,6 +115,8 @@ public class DragLayer extends FrameLayout implements DragController {
 
     private final Paint mTrashPaint = new Paint();
     private Paint mDragPaint;
+    private final Canvas mDragCanvas = new Canvas();
+    private final Paint mDragBitmapPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
 
     private static final int ANIMATION_STATE_STARTING = 1;
     private static final int ANIMATION_STATE_RUNNING = 2;
@@ -134,6 +135,8 @@ public class DragLayer extends FrameLayout implements DragController {
     //ADW: Vars to use on fallback when the view bitmap cannot be generated
     private int mDrawWidth;
     private int mDrawHeight;
+    // Reused every frame to draw the fallback rectangle
+    private final RectF mDrawRect = new RectF();
     private Paint mRectPaint;
     private static final int COLOR_NORMAL=0x66FF0000;
     private static final int COLOR_TRASH=0xAAFF0000;
@@ -204,10 +207,8 @@ public class DragLayer extends FrameLayout implements DragController {
 	        int width = viewBitmap.getWidth();
 	        int height = viewBitmap.getHeight();
 	
-	        Matrix scale = new Matrix();
 	        float scaleFactor = v.getWidth();
 	        scaleFactor = (scaleFactor + DRAG_SCALE) /scaleFactor;
-	        scale.setScale(scaleFactor, scaleFactor);
 	
 	        mAnimationTo = 1.0f;
 	        mAnimationFrom = 1.0f / scaleFactor;
@@ -215,7 +216,7 @@ public class DragLayer extends FrameLayout implements DragController {
 	        mAnimationState = ANIMATION_STATE_STARTING;
 	        mAnimationType = ANIMATION_TYPE_SCALE;
             try {
-    	        mDragBitmap = Bitmap.createBitmap(viewBitmap, 0, 0, width, height, scale, true);
+    	        mDragBitmap = createDragBitmap(viewBitmap, scaleFactor);
             } catch (OutOfMemoryError e) {
                 mDrawModeBitmap=false;
                 width = v.getWidth();
@@ -284,6 +285,7 @@ public class DragLayer extends FrameLayout implements DragController {
         super.dispatchDraw(canvas);
 
         if (mDragging) {
+            if (FrameAllocations.ENABLED) FrameAllocations.begin();
             if (mAnimationState == ANIMATION_STATE_STARTING) {
                 mAnimationStartTime = SystemClock.uptimeMillis();
                 mAnimationState = ANIMATION_STATE_RUNNING;
@@ -316,7 +318,8 @@ public class DragLayer extends FrameLayout implements DragController {
                                     getScrollY() + mLastMotionY - mTouchOffsetY - mBitmapOffsetY);
                             canvas.translate((mDrawWidth * (1.0f - value)) / 2,
                                     (mDrawHeight * (1.0f - value)) / 2);
-                            canvas.drawRoundRect(new RectF(0, 0,mDrawWidth , mDrawHeight), 8.0f, 8.0f, mRectPaint);
+                            mDrawRect.set(0, 0, mDrawWidth, mDrawHeight);
+                            canvas.drawRoundRect(mDrawRect, 8.0f, 8.0f, mRectPaint);
                             canvas.restore();
                         }
                         break;
@@ -331,18 +334,40 @@ public class DragLayer extends FrameLayout implements DragController {
                     canvas.save();
                 	canvas.translate(getScrollX() + mLastMotionX - mTouchOffsetX - mBitmapOffsetX,
                             getScrollY() + mLastMotionY - mTouchOffsetY - mBitmapOffsetY);
-                	canvas.drawRoundRect(new RectF(0, 0,mDrawWidth , mDrawHeight), 8.0f, 8.0f, mRectPaint);
+                	mDrawRect.set(0, 0, mDrawWidth, mDrawHeight);
+                	canvas.drawRoundRect(mDrawRect, 8.0f, 8.0f, mRectPaint);
                 	canvas.restore();
                 }
             }
+            if (FrameAllocations.ENABLED) FrameAllocations.end("DragLayer drag");
         }
     }
 
+    /**
+     * Draws the drawing cache of the dragged view scaled up into a bitmap
+     * from the {@link BitmapPool}, given back when the drag ends.
+     */
+    private Bitmap createDragBitmap(Bitmap viewBitmap, float scaleFactor) {
+        final int width = Math.round(viewBitmap.getWidth() * scaleFactor);
+        final int height = Math.round(viewBitmap.getHeight() * scaleFactor);
+        final Bitmap.Config config = viewBitmap.getConfig() != null ?
+                viewBitmap.getConfig() : Bitmap.Config.ARGB_8888;
+        final Bitmap dragBitmap = BitmapPool.acquire(width, height, config);
+        final Canvas canvas = mDragCanvas;
+        canvas.setBitmap(dragBitmap);
+        canvas.save();
+        canvas.scale(scaleFactor, scaleFactor);
+        canvas.drawBitmap(viewBitmap, 0, 0, mDragBitmapPaint);
+        canvas.restore();
+        return dragBitmap;
+    }
+
     private void endDrag() {
         if (mDragging) {
             mDragging = false;
             if (mDragBitmap != null) {
-                mDragBitmap.recycle();
+                BitmapPool.release(mDragBitmap);
+                mDragBitmap = null;
             }
             if (mOriginator != null) {
                 mOriginator.setVisibility(VISIBLE);
@@ -53,7 +53,7 @@ public class FolderIcon extends BubbleTextView implements DropTarget {
         Drawable dclosed;
         Drawable dopen;
         final Resources resources = launcher.getResources();
-        String themePackage=AlmostNexusSettingsHelper.getThemePackageName(launcher, Launcher.THEME_DEFAULT);
+        String themePackage=AlmostNexusSettingsHelper.getSnapshot(launcher).themePackageName;
         if(themePackage.equals(Launcher.THEME_DEFAULT)){
         	dclosed = resources.getDrawable(R.drawable.ic_launcher_folder);
         	dopen = resources.getDrawable(R.drawable.ic_launcher_folder_open);
@@ -79,7 +79,7 @@ public class FolderIcon extends BubbleTextView implements DropTarget {
         icon.mCloseIcon = d;
         icon.mOpenIcon = resources.getDrawable(R.drawable.ic_launcher_folder_open);*/
         icon.setCompoundDrawablesWithIntrinsicBounds(null, dclosed, null, null);
-        if(!AlmostNexusSettingsHelper.getUIHideLabels(launcher))icon.setText(folderInfo.title);
+        if(!AlmostNexusSettingsHelper.getSnapshot(launcher).uiHideLabels)icon.setText(folderInfo.title);
         icon.setTag(folderInfo);
         icon.setOnClickListener(launcher);
         icon.mInfo = folderInfo;
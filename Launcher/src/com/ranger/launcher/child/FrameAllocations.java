@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import static android.util.Log.d;
+
+import android.os.Debug;
+
+/**
+ * Debug helper logging how many objects the UI thread allocates while
+ * drawing a frame of an animation. Allocation counting slows the whole VM
+ * down, so it is compiled out unless {@link #ENABLED} is set.
+ */
+final class FrameAllocations {
+    static final boolean ENABLED = false;
+
+    private static final String LOG_TAG = "FrameAllocations";
+
+    private FrameAllocations() {
+    }
+
+    /**
+     * Starts counting the allocations of the calling thread.
+     */
+    static void begin() {
+        Debug.startAllocCounting();
+        Debug.resetThreadAllocCount();
+    }
+
+    /**
+     * Logs the allocations made since {@link #begin()}, if any.
+     */
+    static void end(String frame) {
+        final int count = Debug.getThreadAllocCount();
+        if (count > 0) {
+            d(LOG_TAG, frame + ": " + count + " allocations");
+        }
+    }
+}
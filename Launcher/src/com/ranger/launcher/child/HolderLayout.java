@@ -48,6 +48,10 @@ public class HolderLayout extends ViewGroup {
     private float scale;
     private Rect r3=new Rect();
     private int xx;
+    //Drawn instead of the children while flinging, see PageSnapshots
+    private Bitmap mSnapshot;
+    //Labels drawn instead of the text of the children, see LabelAtlas
+    private LabelAtlas mLabelAtlas;
 	public HolderLayout(Context context) {
 		super(context);
 		// TODO Auto-generated constructor stub
@@ -217,6 +221,15 @@ public class HolderLayout extends ViewGroup {
         }
 	}
 
+	@Override
+	protected void dispatchDraw(Canvas canvas) {
+		if (mSnapshot != null) {
+			canvas.drawBitmap(mSnapshot, 0, 0, mPaint);
+		} else {
+			super.dispatchDraw(canvas);
+		}
+	}
+
 	@Override
 	protected boolean drawChild(Canvas canvas, View child, long drawingTime) {
 		int saveCount = canvas.save();
@@ -234,8 +247,14 @@ public class HolderLayout extends ViewGroup {
 			y=child.getTop()+(distV*(mScaleFactor-1))*(mScaleFactor);
 			width=child.getWidth()*mScaleFactor;
 			height=(child.getHeight()-(child.getHeight()-mIconSize))*mScaleFactor;
-			if(shouldDrawLabels)child.setDrawingCacheEnabled(true);
-			if(shouldDrawLabels && child.getDrawingCache()!=null){
+			final LabelAtlas.Label label=shouldDrawLabels?getLabel(child):null;
+			if(label!=null){
+				final int textColor=((TextView)child).getCurrentTextColor();
+				mLabelPaint.setColor(textColor);
+				mLabelPaint.setAlpha((int) (mLabelFactor*Color.alpha(textColor)));
+				mLabelAtlas.draw(canvas, (TextView)child, label, mLabelPaint);
+			}else if(shouldDrawLabels)child.setDrawingCacheEnabled(true);
+			if(label==null && shouldDrawLabels && child.getDrawingCache()!=null){
 				//ADW: try to manually draw labels
 				rl1.set(0,mIconSize,child.getDrawingCache().getWidth(),child.getDrawingCache().getHeight());
 				rl2.set(child.getLeft(),child.getTop()+mIconSize,child.getLeft()+child.getDrawingCache().getWidth(),child.getTop()+child.getDrawingCache().getHeight());
@@ -251,7 +270,19 @@ public class HolderLayout extends ViewGroup {
 			tmp[1].draw(canvas);
 			canvas.restore();
 		}else{
-			if(mDrawLabels){
+			final LabelAtlas.Label label=mDrawLabels?getLabel(child):null;
+			if(label!=null){
+				drawBackground(canvas, child);
+				drawIcon(canvas, child, tmp[1]);
+				mLabelPaint.setColor(((TextView)child).getCurrentTextColor());
+				mLabelAtlas.draw(canvas, (TextView)child, label, mLabelPaint);
+				if(child instanceof CounterTextView){
+					canvas.save();
+					canvas.translate(child.getLeft(), child.getTop());
+					((CounterTextView)child).drawCounter(canvas);
+					canvas.restore();
+				}
+			}else if(mDrawLabels){
 				child.setDrawingCacheEnabled(true);
 				if(child.getDrawingCache()!=null){
 					mPaint.setAlpha(255);
@@ -263,17 +294,64 @@ public class HolderLayout extends ViewGroup {
 					canvas.restore();
 				}
 			}else{
-				r3 = tmp[1].getBounds();
-				int xx=(child.getWidth()/2)-(r3.width()/2);
-				canvas.save();
-				canvas.translate(child.getLeft()+xx, child.getTop()+child.getPaddingTop());
-				tmp[1].draw(canvas);
-				canvas.restore();
+				drawIcon(canvas, child, tmp[1]);
 			}
 		}
 		canvas.restoreToCount(saveCount);
 		return true;
 	}
+	private LabelAtlas.Label getLabel(View child){
+		if(mLabelAtlas==null){
+			return null;
+		}
+		final LabelAtlas.Label label=mLabelAtlas.get((TextView)child);
+		if(label!=null && child.isDrawingCacheEnabled()){
+			//ADW: the label no longer needs the cache of the whole view
+			child.destroyDrawingCache();
+			child.setDrawingCacheEnabled(false);
+		}
+		return label;
+	}
+	private void drawIcon(Canvas canvas, View child, Drawable icon){
+		r3 = icon.getBounds();
+		int xx=(child.getWidth()/2)-(r3.width()/2);
+		canvas.save();
+		canvas.translate(child.getLeft()+xx, child.getTop()+child.getPaddingTop());
+		icon.draw(canvas);
+		canvas.restore();
+	}
+	private void drawBackground(Canvas canvas, View child){
+		final Drawable background=child.getBackground();
+		if(background!=null){
+			background.setBounds(0, 0, child.getWidth(), child.getHeight());
+			canvas.save();
+			canvas.translate(child.getLeft(), child.getTop());
+			background.draw(canvas);
+			canvas.restore();
+		}
+	}
+	/**
+	 * Makes this page a picture of a page, drawn without any child view.
+	 */
+	void setSnapshot(Bitmap snapshot) {
+		mSnapshot = snapshot;
+		invalidate();
+	}
+
+	void setLabelAtlas(LabelAtlas labelAtlas) {
+		mLabelAtlas = labelAtlas;
+	}
+
+	boolean isSnapshot() {
+		return mSnapshot != null;
+	}
+
+	/**
+	 * @return True if the page is fully open and not animating.
+	 */
+	boolean isOpen() {
+		return mStatus == OPEN && !isAnimating;
+	}
 	/**
 	 * Open/close public methods
 	 */
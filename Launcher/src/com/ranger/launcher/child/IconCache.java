@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import static android.util.Log.d;
+import static android.util.Log.w;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+
+import android.content.ComponentName;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.content.pm.ResolveInfo;
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Process;
+
+/**
+ * Persistent cache of application labels and icons, backed by the icons table of
+ * {@link LauncherProvider}.
+ *
+ * An entry is valid as long as the package file was not modified and the theme,
+ * icon size and locale are the same ones it was rendered with. The labels and
+ * timestamps of the matching entries are read once when the cache is opened,
+ * an icon is only read when its entry is used. New entries are written in a
+ * single transaction by {@link #flush()}.
+ *
+ * Lookups and writes may come from several loader threads at once.
+ */
+final class IconCache {
+    private static final String LOG_TAG = LauncherModel.LOG_TAG;
+
+    private static final String[] PROJECTION = new String[] {
+            LauncherSettings.Icons._ID, LauncherSettings.Icons.COMPONENT,
+            LauncherSettings.Icons.LAST_UPDATED, LauncherSettings.Icons.TITLE
+    };
+
+    private static final String[] ICON_PROJECTION = new String[] {
+            LauncherSettings.Icons.ICON
+    };
+
+    // An icon blob is as big as the bitmap, they are not kept
+    private static class Entry {
+        long id;
+        long lastUpdated;
+        String title;
+    }
+
+    private final ContentResolver mResolver;
+    private final String mTheme;
+    private final int mIconSize;
+    private final String mLocale;
+
+    private final HashMap<String, Entry> mEntries = new HashMap<String, Entry>();
+    private final ArrayList<ContentValues> mPending = new ArrayList<ContentValues>();
+
+    private int mHits;
+    private int mMisses;
+
+    private IconCache(Context context, AlmostNexusSettingsHelper.Snapshot settings) {
+        mResolver = context.getContentResolver();
+        mTheme = getThemeKey(settings);
+        mIconSize = (int) context.getResources().getDimension(android.R.dimen.app_icon_size);
+        mLocale = context.getResources().getConfiguration().locale.toString();
+    }
+
+    /**
+     * Opens the cache and reads the labels of every entry matching the current
+     * theme, icon size and locale. Must not be called on the UI thread.
+     *
+     * @param settings The settings the icons are loaded with.
+     */
+    static IconCache open(Context context, AlmostNexusSettingsHelper.Snapshot settings) {
+        final IconCache cache = new IconCache(context, settings);
+        cache.load();
+        return cache;
+    }
+
+    /**
+     * Removes every entry belonging to the specified packages, from a
+     * background thread.
+     */
+    static void removePackages(Context context, List<String> packageNames) {
+        if (packageNames.isEmpty()) {
+            return;
+        }
+
+        // LIKE would take the '_' of package names as a wildcard and ignore
+        // case, entries are matched on the exact "package/" prefix instead
+        final StringBuilder where = new StringBuilder();
+        final String[] args = new String[packageNames.size() * 2];
+        for (int i = 0; i < packageNames.size(); i++) {
+            if (i > 0) {
+                where.append(" OR ");
+            }
+            where.append("substr(").append(LauncherSettings.Icons.COMPONENT).append(", 1, ?) = ?");
+            final String prefix = packageNames.get(i) + "/";
+            args[i * 2] = Integer.toString(prefix.length());
+            args[i * 2 + 1] = prefix;
+        }
+
+        final ContentResolver resolver = context.getContentResolver();
+        new Thread(new Runnable() {
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    resolver.delete(LauncherSettings.Icons.CONTENT_URI, where.toString(), args);
+                } catch (Exception e) {
+                    w(LOG_TAG, "Could not remove icon cache entries", e);
+                }
+            }
+        }, "Icon Cache Cleaner").start();
+    }
+
+    private static String getThemeKey(AlmostNexusSettingsHelper.Snapshot settings) {
+        final String themePackage = settings.themePackageName;
+        if (themePackage.equals(Launcher.THEME_DEFAULT) || !settings.themeIcons) {
+            return Launcher.THEME_DEFAULT;
+        }
+        return themePackage;
+    }
+
+    private void load() {
+        final Cursor c = mResolver.query(LauncherSettings.Icons.CONTENT_URI, PROJECTION,
+                LauncherSettings.Icons.ICON_SIZE + "=" + mIconSize + " AND " +
+                LauncherSettings.Icons.THEME + "=? AND " + LauncherSettings.Icons.LOCALE + "=?",
+                new String[] { mTheme, mLocale }, null);
+        if (c == null) {
+            return;
+        }
+
+        try {
+            while (c.moveToNext()) {
+                final Entry entry = new Entry();
+                entry.id = c.getLong(0);
+                entry.lastUpdated = c.getLong(2);
+                entry.title = c.getString(3);
+                mEntries.put(c.getString(1), entry);
+            }
+        } finally {
+            c.close();
+        }
+
+        if (LauncherModel.DEBUG_LOADERS) d(LOG_TAG, "  ----> icon cache entries=" + mEntries.size());
+    }
+
+    /**
+     * Fills the title and icon of the application from the cache.
+     *
+     * @return true if a valid entry was found, false if the caller must resolve
+     *         them from the PackageManager and {@link #put} the result.
+     */
+    boolean fill(ResolveInfo info, ComponentName componentName, ApplicationInfo application) {
+        final Entry entry;
+        synchronized (this) {
+            entry = mEntries.get(componentName.flattenToString());
+        }
+
+        Bitmap bitmap = null;
+        if (entry != null && entry.title != null && entry.lastUpdated == getLastUpdated(info)) {
+            bitmap = readIcon(entry.id);
+        }
+
+        synchronized (this) {
+            if (bitmap == null) {
+                mMisses++;
+                return false;
+            }
+            mHits++;
+        }
+
+        application.title = entry.title;
+        application.icon = new FastBitmapDrawable(bitmap);
+        application.filtered = false;
+        return true;
+    }
+
+    /**
+     * Queues the title and icon of the application to be written by {@link #flush()}.
+     * Icons that are not plain bitmaps at their natural size are not cached.
+     */
+    void put(ResolveInfo info, ComponentName componentName, ApplicationInfo application) {
+        final Bitmap bitmap = getBitmap(application.icon);
+        if (bitmap == null || application.title == null) {
+            return;
+        }
+
+        final ContentValues values = new ContentValues(7);
+        values.put(LauncherSettings.Icons.COMPONENT, componentName.flattenToString());
+        values.put(LauncherSettings.Icons.LAST_UPDATED, getLastUpdated(info));
+        values.put(LauncherSettings.Icons.THEME, mTheme);
+        values.put(LauncherSettings.Icons.ICON_SIZE, mIconSize);
+        values.put(LauncherSettings.Icons.LOCALE, mLocale);
+        values.put(LauncherSettings.Icons.TITLE, application.title.toString());
+        values.put(LauncherSettings.Icons.ICON, ItemInfo.flattenBitmap(bitmap));
+        synchronized (this) {
+            mPending.add(values);
+        }
+    }
+
+    /**
+     * Writes the pending entries in a single transaction.
+     */
+    void flush() {
+        final ContentValues[] values;
+        synchronized (this) {
+            if (LauncherModel.DEBUG_LOADERS) {
+                d(LOG_TAG, "  ----> icon cache hits=" + mHits + " misses=" + mMisses);
+            }
+
+            final int count = mPending.size();
+            if (count == 0) {
+                return;
+            }
+
+            values = mPending.toArray(new ContentValues[count]);
+            mPending.clear();
+        }
+
+        try {
+            mResolver.bulkInsert(LauncherSettings.Icons.CONTENT_URI, values);
+        } catch (Exception e) {
+            w(LOG_TAG, "Could not write icon cache", e);
+        }
+    }
+
+    private Bitmap readIcon(long id) {
+        final Cursor c = mResolver.query(LauncherSettings.Icons.CONTENT_URI, ICON_PROJECTION,
+                LauncherSettings.Icons._ID + "=" + id, null, null);
+        if (c == null) {
+            return null;
+        }
+
+        try {
+            return c.moveToFirst() ? ItemInfo.readBitmap(c.getBlob(0)) : null;
+        } catch (Exception e) {
+            w(LOG_TAG, "Could not read cached icon", e);
+            return null;
+        } finally {
+            c.close();
+        }
+    }
+
+    private static Bitmap getBitmap(Drawable icon) {
+        Bitmap bitmap = null;
+        if (icon instanceof FastBitmapDrawable) {
+            bitmap = ((FastBitmapDrawable) icon).getBitmap();
+        } else if (icon instanceof BitmapDrawable) {
+            bitmap = ((BitmapDrawable) icon).getBitmap();
+        }
+
+        // A drawable that scales its bitmap would not be restored at the same size
+        if (bitmap == null || bitmap.getWidth() != icon.getIntrinsicWidth() ||
+                bitmap.getHeight() != icon.getIntrinsicHeight()) {
+            return null;
+        }
+        return bitmap;
+    }
+
+    /**
+     * PackageInfo.lastUpdateTime is not available before API 9, the package
+     * file is rewritten on every install or update so its mtime does the job.
+     */
+    private static long getLastUpdated(ResolveInfo info) {
+        final String sourceDir = info.activityInfo.applicationInfo.sourceDir;
+        return sourceDir != null ? new File(sourceDir).lastModified() : 0;
+    }
+}
@@ -64,67 +64,265 @@ class IconShader {
         }
     }
     
-    static class ShaderUses {
-        final boolean buffer, icon_intensity, buffer_intensity, output_intensity;
-        
-        ShaderUses(List<Shader> shaders){
-            boolean buffer = false, icon_intensity = false, buffer_intensity = false, output_intensity = false;
-            for(Shader s : shaders) {
-                if (s.mode == MODE.NONE)
+    /**
+     * A shader list compiled into a flat program. Every op is encoded as
+     * {mode, target register, input kind, input argument} and the whole program
+     * runs over each pixel in a single pass, holding the icon, buffer and output
+     * channels in a small register file. Register n is image n / 4, channel n % 4.
+     *
+     * Averages are whole-image reductions, so an average of an image written
+     * earlier in the pass splits the program in stages. Buffer and output
+     * registers are only spilled to memory between stages.
+     *
+     * Every thread running the program gets its own working arrays, which grow
+     * to the largest icon it has seen and are reused afterwards, so an instance
+     * can be shared by the loader threads.
+     */
+    static class CompiledIconShader {
+        static final int OP_SIZE = 4;
+
+        static final int IN_REGISTER = 0;
+        static final int IN_INTENSITY = 1;
+        static final int IN_CONSTANT = 2;
+
+        static final int REGISTERS = 12;
+        // buffer and output registers, carried from one stage to the next
+        static final int STATE_FIRST = 4;
+        static final int STATE_SIZE = 8;
+        static final int OUTPUT_FIRST = 8;
+
+        // no image: the constant is a literal value
+        private static final int LITERAL = -1;
+
+        final List<Shader> shaders;
+
+        final int[] code;
+        // first op of every stage, followed by the end of the program
+        final int[] stages;
+        final float[] constants;
+        // image whose average fills the constant, or LITERAL
+        final int[] constantImage;
+        final int[] constantStage;
+
+        /**
+         * Working arrays of one thread, allocated once and reused.
+         */
+        private static final class Buffers {
+            final float[] registers = new float[REGISTERS];
+            final float[] values;
+            int[] pixels = new int[0];
+            float[] state = new float[0];
+
+            Buffers(int constants) {
+                values = new float[constants];
+            }
+        }
+
+        private final ThreadLocal<Buffers> buffers = new ThreadLocal<Buffers>() {
+            @Override
+            protected Buffers initialValue() {
+                return new Buffers(constants.length);
+            }
+        };
+
+        CompiledIconShader(List<Shader> s) {
+            shaders = s;
+
+            int ops = 0;
+            for (Shader shader : s) {
+                if (shader.mode != MODE.NONE)
+                    ops++;
+            }
+
+            code = new int[ops * OP_SIZE];
+            constants = new float[ops];
+            constantImage = new int[ops];
+            constantStage = new int[ops];
+
+            final int[] stageStarts = new int[ops + 1];
+            final boolean[] written = new boolean[3];
+            int stageCount = 1;
+            int pc = 0;
+            int constantCount = 0;
+
+            for (Shader shader : s) {
+                if (shader.mode == MODE.NONE)
                     continue;
-                if (s.input == IMAGE.BUFFER || s.target == IMAGE.BUFFER)
-                    buffer = true;
-                if (s.inputMode == INPUT.INTENSITY)
-                    switch(s.input) {
-                    case IMAGE.ICON:
-                        icon_intensity = true;
+
+                if (shader.inputMode == INPUT.AVERAGE && written[shader.input]) {
+                    stageStarts[stageCount++] = pc;
+                    Arrays.fill(written, false);
+                }
+
+                code[pc] = shader.mode;
+                code[pc + 1] = shader.target * 4 + shader.targetChannel;
+                switch (shader.inputMode) {
+                case INPUT.CHANNEL:
+                    code[pc + 2] = IN_REGISTER;
+                    code[pc + 3] = shader.input * 4 + shader.inputChannel;
+                    break;
+                case INPUT.INTENSITY:
+                    code[pc + 2] = IN_INTENSITY;
+                    code[pc + 3] = shader.input * 4;
+                    break;
+                case INPUT.AVERAGE:
+                    code[pc + 2] = IN_CONSTANT;
+                    code[pc + 3] = constantCount;
+                    constantImage[constantCount] = shader.input;
+                    constantStage[constantCount] = stageCount - 1;
+                    constantCount++;
+                    break;
+                default:
+                    code[pc + 2] = IN_CONSTANT;
+                    code[pc + 3] = constantCount;
+                    constants[constantCount] = shader.inputValue;
+                    constantImage[constantCount] = LITERAL;
+                    constantStage[constantCount] = stageCount - 1;
+                    constantCount++;
+                    break;
+                }
+
+                written[shader.target] = true;
+                pc += OP_SIZE;
+            }
+
+            stageStarts[stageCount] = pc;
+            stages = new int[stageCount + 1];
+            System.arraycopy(stageStarts, 0, stages, 0, stageCount + 1);
+        }
+
+        /**
+         * Grows the working arrays of the calling thread to hold length pixels
+         * and returns its pixel array.
+         */
+        int[] ensureCapacity(int length) {
+            final Buffers b = buffers.get();
+            if (b.pixels.length < length) {
+                b.pixels = new int[length];
+            }
+            if (stages.length > 2 && b.state.length < length * STATE_SIZE) {
+                b.state = new float[length * STATE_SIZE];
+            }
+            return b.pixels;
+        }
+
+        /**
+         * Runs the program over the first length pixels, in place. Capacity
+         * must have been ensured for length by the calling thread.
+         */
+        void execute(int[] pixels, int length) {
+            final Buffers work = buffers.get();
+            final int[] code = this.code;
+            final float[] reg = work.registers;
+            final float[] values = work.values;
+            final float[] state = work.state;
+            final int stageCount = stages.length - 1;
+
+            float iconAverage = 0;
+            boolean iconAverageValid = false;
+
+            for (int stage = 0; stage < stageCount; stage++) {
+                for (int k = 0; k < values.length; k++) {
+                    if (constantStage[k] != stage)
+                        continue;
+                    switch (constantImage[k]) {
+                    case LITERAL:
+                        values[k] = constants[k];
                         break;
-                    case IMAGE.BUFFER:
-                        buffer_intensity = true;
+                    case IMAGE.ICON:
+                        if (!iconAverageValid) {
+                            iconAverage = getAverage(pixels, length);
+                            iconAverageValid = true;
+                        }
+                        values[k] = iconAverage;
                         break;
-                    case IMAGE.OUTPUT:
-                        output_intensity = true;
+                    default:
+                        // nothing written yet, the average of an empty image is 0/0
+                        values[k] = stage == 0 ? Float.NaN :
+                                getAverage(state, (constantImage[k] * 4) - STATE_FIRST, length);
                         break;
                     }
+                }
+
+                final int start = stages[stage];
+                final int end = stages[stage + 1];
+                final boolean first = stage == 0;
+                final boolean last = stage == stageCount - 1;
+
+                for (int p = 0; p < length; p++) {
+                    final int color = pixels[p];
+                    reg[CHANNEL.ALPHA] = (color >>> 24);
+                    reg[CHANNEL.RED] = (color >> 16) & 0xFF;
+                    reg[CHANNEL.GREEN] = (color >> 8) & 0xFF;
+                    reg[CHANNEL.BLUE] = color & 0xFF;
+
+                    final int offset = p * STATE_SIZE;
+                    if (first) {
+                        for (int r = STATE_FIRST; r < REGISTERS; r++)
+                            reg[r] = 0;
+                    } else {
+                        for (int r = 0; r < STATE_SIZE; r++)
+                            reg[STATE_FIRST + r] = state[offset + r];
+                    }
+
+                    for (int pc = start; pc < end; pc += OP_SIZE) {
+                        final int arg = code[pc + 3];
+                        final float in;
+                        switch (code[pc + 2]) {
+                        case IN_REGISTER:
+                            in = reg[arg];
+                            break;
+                        case IN_INTENSITY:
+                            in = (reg[arg + CHANNEL.RED] + reg[arg + CHANNEL.GREEN]
+                                    + reg[arg + CHANNEL.BLUE]) / 3;
+                            break;
+                        default:
+                            in = values[arg];
+                            break;
+                        }
+
+                        final int target = code[pc + 1];
+                        switch (code[pc]) {
+                        case MODE.WRITE:
+                            reg[target] = in;
+                            break;
+                        case MODE.MULTIPLY:
+                            reg[target] *= in;
+                            break;
+                        case MODE.DIVIDE:
+                            // constants are applied as a reciprocal, like the interpreter did
+                            if (code[pc + 2] == IN_CONSTANT)
+                                reg[target] *= 1 / in;
+                            else
+                                reg[target] /= in;
+                            break;
+                        case MODE.ADD:
+                            reg[target] += in;
+                            break;
+                        case MODE.SUBTRACT:
+                            reg[target] -= in;
+                            break;
+                        }
+                    }
+
+                    if (last) {
+                        int a = (int) reg[OUTPUT_FIRST + CHANNEL.ALPHA];
+                        int r = (int) reg[OUTPUT_FIRST + CHANNEL.RED];
+                        int g = (int) reg[OUTPUT_FIRST + CHANNEL.GREEN];
+                        int b = (int) reg[OUTPUT_FIRST + CHANNEL.BLUE];
+
+                        a = a > 255 ? 255 : a < 0 ? 0 : a;
+                        r = r > 255 ? 255 : r < 0 ? 0 : r;
+                        g = g > 255 ? 255 : g < 0 ? 0 : g;
+                        b = b > 255 ? 255 : b < 0 ? 0 : b;
+
+                        pixels[p] = (a << 24) | (r << 16) | (g << 8) | b;
+                    } else {
+                        for (int r = 0; r < STATE_SIZE; r++)
+                            state[offset + r] = reg[STATE_FIRST + r];
+                    }
+                }
             }
-            this.buffer = buffer;
-            this.icon_intensity = icon_intensity;
-            this.buffer_intensity = buffer_intensity;
-            this.output_intensity = output_intensity;
-        }
-    }
-    
-    static class CompiledIconShader {
-        static final int MAXLENGTH = 5184; // 72*72
-        
-        final List<Shader> shaders;
-        final ShaderUses uses;
-        
-        // array references held here so that they are only allocated once
-        final int[] pixels;
-        final float[][] icon, buffer, output;
-        final float[] icon_intensity, buffer_intensity, output_intensity;
-       
-        CompiledIconShader(List<Shader> s) {
-            shaders = s;
-            uses = new ShaderUses(s);
-            pixels = new int[MAXLENGTH];
-            icon = new float[4][MAXLENGTH];
-            output = new float[4][MAXLENGTH];
-            
-            if (uses.buffer)
-                buffer = new float[4][MAXLENGTH];
-            else buffer = null;
-            
-            if (uses.icon_intensity) 
-                icon_intensity = new float[MAXLENGTH];
-            else icon_intensity = null;
-            if (uses.buffer_intensity) 
-                buffer_intensity = new float[MAXLENGTH];
-            else buffer_intensity = null;
-            if (uses.output_intensity) 
-                output_intensity = new float[MAXLENGTH];
-            else output_intensity = null;
         }
     }
 
@@ -257,8 +455,13 @@ class IconShader {
                 inputChannel, inputValue);
     }
     
+    /**
+     * Applies the shader to the icon. A {@link FastBitmapDrawable} holding a
+     * mutable bitmap, like the thumbnails built by
+     * {@link Utilities#createIconThumbnail}, is overwritten with the result and
+     * returned as is, other icons get a new bitmap.
+     */
     static Drawable processIcon(Drawable icon_d, CompiledIconShader compiledShader) {
-        List<Shader> shaders = compiledShader.shaders;
         Bitmap icon_bitmap=null;
         // get bitmap
         if (icon_d instanceof BitmapDrawable) {
@@ -271,247 +474,61 @@ class IconShader {
             return null;
         if (icon_bitmap == null)
             return null;
-        
+
         int width = icon_bitmap.getWidth();
         int height = icon_bitmap.getHeight();
         int length = width * height;
-        if (length > CompiledIconShader.MAXLENGTH)
-            return null;
-        
-        int[] pixels = compiledShader.pixels;
-        float[][] icon = compiledShader.icon;
-        float[][] buffer = compiledShader.buffer;
-        float[][] output = compiledShader.output;
-        
-        float icon_average = 0;
-        float buffer_average = 0;
-        float output_average = 0;
-        boolean icon_average_valid = false;
-        boolean buffer_average_valid = false;
-        boolean output_average_valid = false;
-        
-        float[] icon_intensity = compiledShader.icon_intensity;
-        float[] buffer_intensity = compiledShader.buffer_intensity;;
-        float[] output_intensity = compiledShader.output_intensity;
-        
-        boolean icon_intensity_valid = false;
-        boolean buffer_intensity_valid = false;
-        boolean output_intensity_valid = false;
-        
-        // convert to float
+
+        int[] pixels = compiledShader.ensureCapacity(length);
         icon_bitmap.getPixels(pixels, 0, width, 0, 0, width, height);
-        for (int i = 0; i < length; i++) {
-            icon[CHANNEL.BLUE][i] = pixels[i] & 0x000000FF;
-            icon[CHANNEL.GREEN][i] = (pixels[i] >> 8) & 0x000000FF;
-            icon[CHANNEL.RED][i] = (pixels[i] >> 16) & 0x000000FF;
-            icon[CHANNEL.ALPHA][i] = (pixels[i] >> 24) & 0x000000FF;
-        }
-        
-        // temporary pointers/values
-        float inputValue = 0;
-        float[] inputArray = null;
-        float[] targetArray = null;
-        // process each shader
-        for (Shader s : shaders) {
-
-            if (s.mode == MODE.NONE)
-                continue;
-
-            // determine input
-            if (s.inputMode == INPUT.AVERAGE) {
-                switch (s.input) {
-                case IMAGE.ICON:
-                    if (!icon_average_valid) {
-                        icon_average = getAverage(icon, length);
-                        icon_average_valid = true;
-                    }
-                    inputValue = icon_average;
-                    break;
-                case IMAGE.BUFFER:
-                    if (!buffer_average_valid) {
-                        buffer_average = getAverage(buffer, length);
-                        buffer_average_valid = true;
-                    }
-                    inputValue = buffer_average;
-                    break;
-                case IMAGE.OUTPUT:
-                    if (!output_average_valid) {
-                        output_average = getAverage(output, length);
-                        output_average_valid = true;
-                    }
-                    inputValue = output_average;
-                    break;
-                }
-            }
-            if (s.inputMode == INPUT.INTENSITY) {
-                switch (s.input) {
-                case IMAGE.ICON:
-                    if (!icon_intensity_valid) {
-                        getIntensity(icon_intensity, icon, length);
-                        icon_intensity_valid = true;
-                    }
-                    inputArray = icon_intensity;
-                    break;
-                case IMAGE.BUFFER:
-                    if (!buffer_intensity_valid) {
-                        getIntensity(buffer_intensity, buffer, length);
-                        buffer_intensity_valid = true;
-                    }
-                    inputArray = buffer_intensity;
-                    break;
-                case IMAGE.OUTPUT:
-                    if (!output_intensity_valid) {
-                        getIntensity(output_intensity, output, length);
-                        output_intensity_valid = true;
-                    }
-                    inputArray = output_intensity;
-                    break;
-                }
-            }
-            if (s.inputMode == INPUT.CHANNEL) {
-                switch (s.input) {
-                case IMAGE.ICON:
-                    inputArray = icon[s.inputChannel];
-                    break;
-                case IMAGE.BUFFER:
-                    inputArray = buffer[s.inputChannel];
-                    break;
-                case IMAGE.OUTPUT:
-                    inputArray = output[s.inputChannel];
-                    break;
-                }
-            }
-            if (s.inputMode == INPUT.VALUE) {
-                inputValue = s.inputValue;
-            }
+        compiledShader.execute(pixels, length);
 
-            // determine target
-            if (s.target == IMAGE.BUFFER) {
-                targetArray = buffer[s.targetChannel];
-            }
-            if (s.target == IMAGE.OUTPUT) {
-                targetArray = output[s.targetChannel];
-                //main.text += "target output\n";
-            }
-            
-            // write to target
-            switch (s.mode) {
-            case MODE.WRITE:
-                if (s.inputMode == INPUT.AVERAGE || s.inputMode == INPUT.VALUE) {
-                    Arrays.fill(targetArray, inputValue);
-                }
-                if (s.inputMode == INPUT.INTENSITY
-                        || s.inputMode == INPUT.CHANNEL) {
-                    System.arraycopy(inputArray, 0, targetArray, 0, length);
-                }
-                break;
-            case MODE.MULTIPLY:
-                if (s.inputMode == INPUT.AVERAGE || s.inputMode == INPUT.VALUE) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] *= inputValue;
-                }
-                if (s.inputMode == INPUT.INTENSITY
-                        || s.inputMode == INPUT.CHANNEL) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] *= inputArray[i];
-                }
-                break;
-            case MODE.DIVIDE:
-                if (s.inputMode == INPUT.AVERAGE || s.inputMode == INPUT.VALUE) {
-                    // multiply by 1/value
-                    inputValue = 1 / inputValue;
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] *= inputValue;
-                }
-                if (s.inputMode == INPUT.INTENSITY
-                        || s.inputMode == INPUT.CHANNEL) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] /= inputArray[i];
-                }
-                break;
-            case MODE.ADD:
-                if (s.inputMode == INPUT.AVERAGE || s.inputMode == INPUT.VALUE) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] += inputValue;
-                }
-                if (s.inputMode == INPUT.INTENSITY
-                        || s.inputMode == INPUT.CHANNEL) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] += inputArray[i];
-                }
-                break;
-            case MODE.SUBTRACT:
-                if (s.inputMode == INPUT.AVERAGE || s.inputMode == INPUT.VALUE) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] -= inputValue;
-                }
-                if (s.inputMode == INPUT.INTENSITY
-                        || s.inputMode == INPUT.CHANNEL) {
-                    for (int i = 0; i < length; i++)
-                        targetArray[i] -= inputArray[i];
-                }
-                break;
-            }
-            
-            // invalidate average/intensity
-            switch (s.target) {
-            case IMAGE.BUFFER:
-                buffer_average_valid = false;;
-                buffer_intensity_valid = false;
-                break;
-            case IMAGE.OUTPUT:
-                output_average_valid = false;
-                output_intensity_valid = false;
-                break;
-            }
-        }
-        // finished processing
-        
-        // convert back to 32bit color
-        int a, r, g, b;
-        for (int i = 0; i < length; i++) {
-            a = (int) output[CHANNEL.ALPHA][i];
-            r = (int) output[CHANNEL.RED][i];
-            g = (int) output[CHANNEL.GREEN][i];
-            b = (int) output[CHANNEL.BLUE][i];
-
-            a = a > 255 ? 255 : a < 0 ? 0 : a;
-            r = r > 255 ? 255 : r < 0 ? 0 : r;
-            g = g > 255 ? 255 : g < 0 ? 0 : g;
-            b = b > 255 ? 255 : b < 0 ? 0 : b;
-
-            a <<= 8;
-            a |= r;
-            a <<= 8;
-            a |= g;
-            a <<= 8;
-            a |= b;
-            pixels[i] = a;
+        if (icon_d instanceof FastBitmapDrawable && icon_bitmap.isMutable()) {
+            icon_bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
+            return icon_d;
         }
-        
+
         // build drawable
         Bitmap.Config c = (icon_bitmap.getConfig()==null) ?
                 Bitmap.Config.ARGB_8888 : icon_bitmap.getConfig();
-        Bitmap output_bitmap = Bitmap.createBitmap(pixels, width, height, c);
+        Bitmap output_bitmap = BitmapPool.acquire(width, height, c);
+        output_bitmap.setPixels(pixels, 0, width, 0, 0, width, height);
         output_bitmap.setDensity(DisplayMetrics.DENSITY_DEFAULT);
         BitmapDrawable output_bd = new BitmapDrawable(output_bitmap);
         return output_bd;
     }
-    
-    private static float getAverage(float[][] array, int length) {
+
+    /**
+     * Alpha weighted average intensity of packed ARGB pixels.
+     */
+    private static float getAverage(int[] pixels, int length) {
         double average = 0;
         double total = 0;
         for (int i = 0; i < length; i++) {
-            average += array[0][i] * (array[1][i] + array[2][i] + array[3][i])
+            final int color = pixels[i];
+            final float a = color >>> 24;
+            average += a * (((color >> 16) & 0xFF) + ((color >> 8) & 0xFF) + (color & 0xFF))
                     / 3;
-            total += array[0][i];
+            total += a;
         }
         average /= total;
         return (float) average;
     }
 
-    private static void getIntensity(float[] intensity, float[][] array, int length) {
-        for (int i = 0; i < length; i++)
-            intensity[i] = (array[1][i] + array[2][i] + array[3][i]) / 3;
+    /**
+     * Alpha weighted average intensity of the image stored at offset in the
+     * interleaved stage state.
+     */
+    private static float getAverage(float[] state, int offset, int length) {
+        final int size = CompiledIconShader.STATE_SIZE;
+        double average = 0;
+        double total = 0;
+        for (int i = 0, p = offset; i < length; i++, p += size) {
+            average += state[p + CHANNEL.ALPHA] * (state[p + CHANNEL.RED]
+                    + state[p + CHANNEL.GREEN] + state[p + CHANNEL.BLUE]) / 3;
+            total += state[p + CHANNEL.ALPHA];
+        }
+        average /= total;
+        return (float) average;
     }
-}
\ No newline at end of file
+}
@@ -89,6 +89,8 @@ public class InstallShortcutReceiver extends BroadcastReceiver {
 
         boolean[][] occupied = new boolean[xCount][yCount];
 
+        LauncherModel.flushPendingUpdates();
+
         final ContentResolver cr = context.getContentResolver();
         Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI,
             new String[] { LauncherSettings.Favorites.CELLX, LauncherSettings.Favorites.CELLY,
@@ -16,12 +16,11 @@
 
 package com.ranger.launcher.child;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.nio.ByteBuffer;
 
 import android.content.ContentValues;
 import android.graphics.Bitmap;
-import android.util.Log;
+import android.graphics.BitmapFactory;
 
 /**
  * Represents an item in the launcher.
@@ -29,6 +28,13 @@ import android.util.Log;
 class ItemInfo {
     
     static final int NO_ID = -1;
+
+    /**
+     * First bytes of icons stored by {@link #flattenBitmap}, "RAW1". PNG data
+     * never starts with them.
+     */
+    static final int RAW_ICON_MAGIC = 0x52415731;
+    static final int RAW_ICON_HEADER = 12;
     
     /**
      * The id in the settings database for this item
@@ -114,20 +120,68 @@ class ItemInfo {
 
     static void writeBitmap(ContentValues values, Bitmap bitmap) {
         if (bitmap != null) {
-            // Try go guesstimate how much space the icon will take when serialized
-            // to avoid unnecessary allocations/copies during the write.
-            int size = bitmap.getWidth() * bitmap.getHeight() * 4;
-            ByteArrayOutputStream out = new ByteArrayOutputStream(size);
-            try {
-                bitmap.compress(Bitmap.CompressFormat.PNG, 100, out);
-                out.flush();
-                out.close();
-
-                values.put(LauncherSettings.Favorites.ICON, out.toByteArray());
-            } catch (IOException e) {
-                Log.w("Favorite", "Could not write icon");
-            }
+            values.put(LauncherSettings.Favorites.ICON, flattenBitmap(bitmap));
         }
     }
 
+    /**
+     * Serializes a bitmap as its raw ARGB_8888 pixels, premultiplied and laid
+     * out as in memory, behind a header holding {@link #RAW_ICON_MAGIC}, the
+     * width and the height. Reading it back is a plain copy, no decoding.
+     *
+     * The data is about four times the size of a PNG, 20 KB for a 72 px icon.
+     * Rows are only read on load, one window of the cursor at a time, and a
+     * single icon stays far below the 1 MB cursor window. The icon cache
+     * reads one blob at a time for the same reason.
+     */
+    static byte[] flattenBitmap(Bitmap bitmap) {
+        Bitmap source = bitmap;
+        if (bitmap.getConfig() != Bitmap.Config.ARGB_8888) {
+            source = bitmap.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        final int width = source.getWidth();
+        final int height = source.getHeight();
+
+        final ByteBuffer buffer = ByteBuffer.allocate(RAW_ICON_HEADER + width * height * 4);
+        buffer.putInt(RAW_ICON_MAGIC).putInt(width).putInt(height);
+        source.copyPixelsToBuffer(buffer);
+        // Only the temporary copy, the caller still owns its bitmap
+        if (source != bitmap) {
+            source.recycle();
+        }
+        return buffer.array();
+    }
+
+    /**
+     * Reads an icon written by {@link #writeBitmap}. Icons compressed by
+     * older versions are decoded as before.
+     *
+     * @return The icon, or null if the data could not be read.
+     */
+    static Bitmap readBitmap(byte[] data) {
+        if (data == null) {
+            return null;
+        }
+        if (!isRawBitmap(data)) {
+            return BitmapFactory.decodeByteArray(data, 0, data.length);
+        }
+
+        final ByteBuffer buffer = ByteBuffer.wrap(data);
+        buffer.position(4);
+        final int width = buffer.getInt();
+        final int height = buffer.getInt();
+        if (width <= 0 || height <= 0 || buffer.remaining() != width * height * 4) {
+            return null;
+        }
+
+        final Bitmap bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        bitmap.copyPixelsFromBuffer(buffer);
+        return bitmap;
+    }
+
+    static boolean isRawBitmap(byte[] data) {
+        return data != null && data.length >= RAW_ICON_HEADER &&
+                ByteBuffer.wrap(data).getInt() == RAW_ICON_MAGIC;
+    }
+
 }
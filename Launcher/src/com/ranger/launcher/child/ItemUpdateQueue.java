@@ -0,0 +1,132 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import static android.util.Log.d;
+import static android.util.Log.e;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import android.content.ContentProviderOperation;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.content.Context;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
+
+/**
+ * Write-behind queue for the updates LauncherModel makes to existing
+ * favorites. Updates are keyed by item id, a later update of an item is
+ * merged into the pending one. Shortly after the last update the queue is
+ * applied from a background thread as one provider batch, hence one
+ * transaction.
+ *
+ * Inserts are not queued, callers need the id of the new row right away.
+ */
+final class ItemUpdateQueue {
+    private static final String LOG_TAG = LauncherModel.LOG_TAG;
+
+    // Time to wait for more updates before writing them
+    private static final long FLUSH_DELAY = 500;
+
+    private final LinkedHashMap<Long, ContentValues> mPending = new LinkedHashMap<Long, ContentValues>();
+    private ContentResolver mResolver;
+    private Handler mHandler;
+
+    // Held while a batch is being written, so that flush() returns only
+    // once every update queued before it is in the database
+    private final Object mWriteLock = new Object();
+
+    private final Runnable mFlush = new Runnable() {
+        public void run() {
+            flush();
+        }
+    };
+
+    /**
+     * Queues an update of the favorite with the specified id.
+     */
+    void update(Context context, long id, ContentValues values) {
+        synchronized (mPending) {
+            final ContentValues pending = mPending.get(id);
+            if (pending != null) {
+                pending.putAll(values);
+            } else {
+                mPending.put(id, values);
+            }
+
+            if (mResolver == null) {
+                mResolver = context.getApplicationContext().getContentResolver();
+            }
+            if (mHandler == null) {
+                final HandlerThread thread = new HandlerThread("Launcher Database Writer",
+                        Process.THREAD_PRIORITY_BACKGROUND);
+                thread.start();
+                mHandler = new Handler(thread.getLooper());
+            }
+            mHandler.removeCallbacks(mFlush);
+            mHandler.postDelayed(mFlush, FLUSH_DELAY);
+        }
+    }
+
+    /**
+     * Drops the pending update of an item about to be deleted.
+     */
+    void cancel(long id) {
+        synchronized (mPending) {
+            mPending.remove(id);
+        }
+    }
+
+    /**
+     * Writes the pending updates now, on the calling thread.
+     */
+    void flush() {
+        synchronized (mWriteLock) {
+            final ArrayList<ContentProviderOperation> operations;
+            final ContentResolver resolver;
+            synchronized (mPending) {
+                if (mPending.isEmpty()) {
+                    return;
+                }
+
+                operations = new ArrayList<ContentProviderOperation>(mPending.size());
+                for (Map.Entry<Long, ContentValues> entry : mPending.entrySet()) {
+                    operations.add(ContentProviderOperation.newUpdate(
+                            LauncherSettings.Favorites.getContentUri(entry.getKey(), false))
+                            .withValues(entry.getValue()).build());
+                }
+                mPending.clear();
+                resolver = mResolver;
+                if (mHandler != null) {
+                    mHandler.removeCallbacks(mFlush);
+                }
+            }
+
+            if (LauncherModel.DEBUG_LOADERS) d(LOG_TAG, "  ----> writing " + operations.size() + " updates");
+
+            try {
+                resolver.applyBatch(LauncherProvider.AUTHORITY, operations);
+            } catch (Exception ex) {
+                e(LOG_TAG, "Could not write pending updates", ex);
+            }
+        }
+    }
+}
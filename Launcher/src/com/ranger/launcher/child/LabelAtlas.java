@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+import android.text.Layout;
+import android.text.StaticLayout;
+import android.text.TextPaint;
+import android.widget.TextView;
+
+/**
+ * Labels of the drawer icons, laid out and rasterized once and drawn by
+ * {@link HolderLayout} instead of the text of each view.
+ *
+ * Labels are kept as alpha masks packed in shelves of a few shared pages,
+ * and tinted with the text color when drawn. They depend on the typeface,
+ * text size and room of the views. When any of these changes, every label is
+ * dropped and rasterized again on its next draw, as they are when the pages
+ * are full.
+ *
+ * Must only be used from the UI thread.
+ */
+final class LabelAtlas {
+    private static final int PAGE_SIZE = 512;
+    private static final int MAX_PAGES = 4;
+    // Space left around each label so filtering doesn't bleed between them
+    private static final int GAP = 1;
+
+    static final class Label {
+        // Null for labels without any text
+        Bitmap page;
+        final Rect bounds = new Rect();
+        // Offset of the label from the origin of the text of the view
+        int left;
+    }
+
+    private static final Label EMPTY = new Label();
+
+    private final HashMap<String, Label> mLabels = new HashMap<String, Label>();
+    private final ArrayList<Bitmap> mPages = new ArrayList<Bitmap>();
+    private int mShelfX;
+    private int mShelfY;
+    private int mShelfHeight;
+
+    // Style the labels were rasterized with
+    private Typeface mTypeface;
+    private float mTextSize;
+    private int mWidth;
+    private int mHeight;
+
+    private final TextPaint mTextPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+    private final Canvas mCanvas = new Canvas();
+    private final Rect mDst = new Rect();
+
+    /**
+     * Returns the label of a view of the drawer, rasterizing it first if
+     * needed.
+     *
+     * @return The label, or null if it couldn't be rasterized. The view must
+     *         then draw its text itself.
+     */
+    Label get(TextView view) {
+        final CharSequence text = view.getText();
+        final int left = view.getCompoundPaddingLeft();
+        final int top = view.getExtendedPaddingTop();
+        final int width = view.getWidth() - left - view.getCompoundPaddingRight();
+        final int height = view.getHeight() - top - view.getExtendedPaddingBottom();
+        if (text == null || text.length() == 0 || width <= 0 || height <= 0) {
+            return EMPTY;
+        }
+        setStyle(view.getPaint(), width, height);
+
+        final String key = text.toString();
+        Label label = mLabels.get(key);
+        if (label == null) {
+            label = rasterize(key);
+            if (label != null) {
+                mLabels.put(key, label);
+            }
+        }
+        return label;
+    }
+
+    /**
+     * Draws the label of a view at the position of the view in the canvas.
+     *
+     * @param paint Paint to draw with, its color is the one of the text.
+     */
+    void draw(Canvas canvas, TextView view, Label label, Paint paint) {
+        if (label.page == null) {
+            return;
+        }
+        final Rect bounds = label.bounds;
+        final int x = view.getLeft() + view.getCompoundPaddingLeft() + label.left;
+        final int y = view.getTop() + view.getExtendedPaddingTop();
+        mDst.set(x, y, x + bounds.width(), y + bounds.height());
+        canvas.drawBitmap(label.page, bounds, mDst, paint);
+    }
+
+    /**
+     * Drops every label and gives the pages back to the {@link BitmapPool}.
+     */
+    void clear() {
+        mLabels.clear();
+        final ArrayList<Bitmap> pages = mPages;
+        for (int i = pages.size() - 1; i >= 0; i--) {
+            BitmapPool.release(pages.get(i));
+        }
+        pages.clear();
+        mShelfX = 0;
+        mShelfY = 0;
+        mShelfHeight = 0;
+    }
+
+    private void setStyle(TextPaint paint, int width, int height) {
+        final Typeface typeface = paint.getTypeface();
+        final float textSize = paint.getTextSize();
+        if (typeface == mTypeface && textSize == mTextSize && width == mWidth
+                && height == mHeight) {
+            return;
+        }
+        clear();
+        mTypeface = typeface;
+        mTextSize = textSize;
+        mWidth = width;
+        mHeight = height;
+        mTextPaint.set(paint);
+        // Only the coverage is kept, the color is given when drawing
+        mTextPaint.setColor(0xff000000);
+        mTextPaint.clearShadowLayer();
+    }
+
+    private Label rasterize(String text) {
+        // The view lays out its text the same way, and shows at most two lines
+        final StaticLayout layout = new StaticLayout(text, mTextPaint, mWidth,
+                Layout.Alignment.ALIGN_CENTER, 1.0f, 0.0f, true);
+        final int lines = Math.min(layout.getLineCount(), 2);
+        float lineLeft = mWidth;
+        float lineRight = 0;
+        for (int i = 0; i < lines; i++) {
+            lineLeft = Math.min(lineLeft, layout.getLineLeft(i));
+            lineRight = Math.max(lineRight, layout.getLineRight(i));
+        }
+        final int left = Math.max((int) Math.floor(lineLeft), 0);
+        final int right = Math.min((int) Math.ceil(lineRight), mWidth);
+        final int width = right - left;
+        final int height = Math.min(layout.getLineBottom(lines - 1), mHeight);
+        if (width <= 0 || height <= 0) {
+            return EMPTY;
+        }
+        if (width + GAP > PAGE_SIZE || height + GAP > PAGE_SIZE) {
+            return null;
+        }
+
+        if (mShelfX + width + GAP > PAGE_SIZE) {
+            mShelfX = 0;
+            mShelfY += mShelfHeight;
+            mShelfHeight = 0;
+        }
+        if (mPages.isEmpty() || mShelfY + height + GAP > PAGE_SIZE) {
+            if (mPages.size() >= MAX_PAGES) {
+                // Labels of apps gone or renamed may fill the pages
+                clear();
+            }
+            try {
+                mPages.add(BitmapPool.acquire(PAGE_SIZE, PAGE_SIZE, Bitmap.Config.ALPHA_8));
+            } catch (OutOfMemoryError e) {
+                return null;
+            }
+            mShelfX = 0;
+            mShelfY = 0;
+            mShelfHeight = 0;
+        }
+
+        final Label label = new Label();
+        label.page = mPages.get(mPages.size() - 1);
+        label.bounds.set(mShelfX, mShelfY, mShelfX + width, mShelfY + height);
+        label.left = left;
+
+        final Canvas canvas = mCanvas;
+        canvas.setBitmap(label.page);
+        canvas.save();
+        canvas.clipRect(label.bounds);
+        canvas.translate(mShelfX - left, mShelfY);
+        layout.draw(canvas);
+        canvas.restore();
+
+        mShelfX += width + GAP;
+        mShelfHeight = Math.max(mShelfHeight, height + GAP);
+        return label;
+    }
+}
@@ -36,8 +36,12 @@ import java.io.IOException;
 import java.lang.ref.WeakReference;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 
 import mobi.intuitit.android.content.LauncherIntent;
 import mobi.intuitit.android.content.LauncherMetadata;
@@ -71,7 +75,6 @@ import android.content.res.Configuration;
 import android.content.res.Resources;
 import android.database.ContentObserver;
 import android.graphics.Bitmap;
-import android.graphics.Canvas;
 import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
@@ -81,6 +84,7 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.TransitionDrawable;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
 import android.os.Looper;
 import android.os.Message;
 import android.os.MessageQueue;
@@ -124,6 +128,9 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 	private static final boolean PROFILE_STARTUP = false;
 	private static final boolean PROFILE_ROTATE = false;
 	private static final boolean DEBUG_USER_INTERFACE = false;
+	// ADW: widgets are created on screens at most this far from the current one
+	private static final int WIDGET_BIND_DISTANCE = 1;
+	private static final boolean RELEASE_FAR_WIDGETS_ON_LOW_MEMORY = true;
 
 	private static final int MENU_GROUP_ADD = 1;
 	private static final int MENU_GROUP_ALMOSTNEXUS = 2;
@@ -204,6 +211,18 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 	private static int sScreen = DEFAULT_SCREN;
 
 	private final BroadcastReceiver mApplicationsReceiver = new ApplicationsIntentReceiver();
+	// ADW: package broadcasts come in bursts, the model is updated once per burst
+	private static final int PACKAGE_UPDATE_DELAY = 300;
+	private static final int PACKAGE_UPDATE_MAX_DELAY = 2000;
+	private final Handler mPackageHandler = new Handler();
+	// Packages changed since the last update of the model, true for the removed ones
+	private final LinkedHashMap<String, Boolean> mPendingPackages = new LinkedHashMap<String, Boolean>();
+	private long mPendingPackagesSince;
+	private final Runnable mPackageUpdater = new Runnable() {
+		public void run() {
+			flushPackageUpdates();
+		}
+	};
 	private final BroadcastReceiver mCloseSystemDialogsReceiver = new CloseSystemDialogsIntentReceiver();
 	private final ContentObserver mObserver = new FavoritesChangeObserver();
 	private final ContentObserver mWidgetObserver = new AppWidgetResetObserver();
@@ -356,6 +375,9 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 			changeOrientation(AlmostNexusSettingsHelper.getDesktopOrientation(this), false);
 		}
 		super.onCreate(savedInstanceState);
+		// Preferences may have changed while no launcher was listening
+		AlmostNexusSettingsHelper.refreshSnapshot(this);
+		BitmapPool.init(this);
 		
 		mInflater = getLayoutInflater();
 
@@ -623,6 +645,8 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		// ADW: it should be done only on certain circumstances
 		// closeDrawer(false);
 		savedOrientation = getResources().getConfiguration().orientation;
+		// The process may be killed once paused, don't leave moves behind
+		LauncherModel.flushPendingUpdates();
 	}
 
 	@Override
@@ -1320,6 +1344,22 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		}
 	}
 
+	@Override
+	public void onLowMemory() {
+		super.onLowMemory();
+		if (LOGD) {
+			BitmapPool.logStats();
+		}
+		BitmapPool.clear();
+		if (mWorkspace != null) {
+			mWorkspace.releaseWallpaperTiles();
+			mWorkspace.releaseThumbnails();
+		}
+		if (RELEASE_FAR_WIDGETS_ON_LOW_MEMORY && mWorkspace != null) {
+			releaseFarWidgets();
+		}
+	}
+
 	@Override
 	public void onDestroy() {
 		mDestroyed = true;
@@ -1340,6 +1380,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		mAllAppsGrid.clearTextFilter();
 		mAllAppsGrid.setAdapter(null);
 
+		flushPackageUpdates();
 		sModel.unbind();
 		sModel.abortLoaders();
 		mWorkspace.unbindWidgetScrollableViews();
@@ -2001,6 +2042,16 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		mAppWidgetHost.startListening();
 	}
 
+	/**
+	 * Called by the model once the titles of some shortcuts were updated.
+	 */
+	void onShortcutTitlesChanged(ArrayList<ApplicationInfo> shortcuts) {
+		if (mDestroyed) {
+			return;
+		}
+		mWorkspace.updateShortcutTitles(shortcuts);
+	}
+
 	void onDesktopItemsLoaded(ArrayList<ItemInfo> shortcuts, ArrayList<LauncherAppWidgetInfo> appWidgets) {
 		if (mDestroyed) {
 			if (LauncherModel.DEBUG_LOADERS) {
@@ -2056,7 +2107,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		final Workspace workspace = mWorkspace;
 		final boolean desktopLocked = mDesktopLocked;
 		final MiniLauncher miniLauncher = (MiniLauncher) mDragLayer.findViewById(R.id.mini_content);
-		final int end = Math.min(start + DesktopBinder.ITEMS_COUNT, count);
+		final int end = binder.getBindEnd(start, count);
 		int i = start;
 
 		for (; i < end; i++) {
@@ -2120,7 +2171,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 			finishBindDesktopItems();
 			binder.startBindingDrawer();
 		} else {
-			binder.obtainMessage(DesktopBinder.MESSAGE_BIND_ITEMS, i, count).sendToTarget();
+			binder.bindItemsWhenIdle(i, count);
 		}
 	}
 
@@ -2199,23 +2250,15 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		if (!appWidgets.isEmpty()) {
 			final LauncherAppWidgetInfo item = appWidgets.removeFirst();
 
-			final int appWidgetId = item.appWidgetId;
-			final AppWidgetProviderInfo appWidgetInfo = mAppWidgetManager.getAppWidgetInfo(appWidgetId);
-			item.hostView = mAppWidgetHost.createView(this, appWidgetId, appWidgetInfo);
-
-			if (LOGD) {
-				d(LOG_TAG, String.format("about to setAppWidget for id=%d, info=%s", appWidgetId, appWidgetInfo));
+			if (Math.abs(item.screen - workspace.getCurrentScreen()) <= WIDGET_BIND_DISTANCE) {
+				bindAppWidget(item, !desktopLocked);
+			} else {
+				// ADW: created once the user gets close to its screen
+				workspace.addInScreen(new WidgetPlaceholder(this, item), item.screen, item.cellX, item.cellY, item.spanX, item.spanY,
+						!desktopLocked);
 			}
 
-			item.hostView.setAppWidget(appWidgetId, appWidgetInfo);
-			item.hostView.setTag(item);
-
-			workspace.addInScreen(item.hostView, item.screen, item.cellX, item.cellY, item.spanX, item.spanY, !desktopLocked);
-
 			workspace.requestLayout();
-			// finish load a widget, send it an intent
-			if (appWidgetInfo != null)
-				appwidgetReadyBroadcast(appWidgetId, appWidgetInfo.provider, new int[] { item.spanX, item.spanY });
 		}
 
 		if (appWidgets.isEmpty()) {
@@ -2227,6 +2270,78 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		}
 	}
 
+	private void bindAppWidget(LauncherAppWidgetInfo item, boolean insert) {
+		final int appWidgetId = item.appWidgetId;
+		final AppWidgetProviderInfo appWidgetInfo = mAppWidgetManager.getAppWidgetInfo(appWidgetId);
+		item.hostView = mAppWidgetHost.createView(this, appWidgetId, appWidgetInfo);
+
+		if (LOGD) {
+			d(LOG_TAG, String.format("about to setAppWidget for id=%d, info=%s", appWidgetId, appWidgetInfo));
+		}
+
+		item.hostView.setAppWidget(appWidgetId, appWidgetInfo);
+		item.hostView.setTag(item);
+
+		mWorkspace.addInScreen(item.hostView, item.screen, item.cellX, item.cellY, item.spanX, item.spanY, insert);
+
+		// finish load a widget, send it an intent
+		if (appWidgetInfo != null)
+			appwidgetReadyBroadcast(appWidgetId, appWidgetInfo.provider, new int[] { item.spanX, item.spanY });
+	}
+
+	/**
+	 * Creates the views of the widgets still held by placeholders on the
+	 * specified screen and the screens next to it.
+	 */
+	void bindPlaceholderWidgets(int screen) {
+		final Workspace workspace = mWorkspace;
+		final int first = Math.max(screen - WIDGET_BIND_DISTANCE, 0);
+		final int last = Math.min(screen + WIDGET_BIND_DISTANCE, workspace.getChildCount() - 1);
+		for (int i = first; i <= last; i++) {
+			final CellLayout layout = (CellLayout) workspace.getChildAt(i);
+			for (int j = layout.getChildCount() - 1; j >= 0; j--) {
+				final View child = layout.getChildAt(j);
+				if (child instanceof WidgetPlaceholder) {
+					final LauncherAppWidgetInfo item = (LauncherAppWidgetInfo) child.getTag();
+					layout.removeView(child);
+					bindAppWidget(item, false);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Replaces the views of the widgets far from the current screen by
+	 * placeholders, dropping their layouts and bitmaps. Scrollable widgets
+	 * are kept, they would have to bind their lists again.
+	 */
+	private void releaseFarWidgets() {
+		final Workspace workspace = mWorkspace;
+		final int current = workspace.getCurrentScreen();
+		final int count = workspace.getChildCount();
+		for (int i = 0; i < count; i++) {
+			if (Math.abs(i - current) <= WIDGET_BIND_DISTANCE) {
+				continue;
+			}
+			final CellLayout layout = (CellLayout) workspace.getChildAt(i);
+			for (int j = layout.getChildCount() - 1; j >= 0; j--) {
+				final View child = layout.getChildAt(j);
+				if (child instanceof LauncherAppWidgetHostView && child.getTag() instanceof LauncherAppWidgetInfo) {
+					final LauncherAppWidgetHostView hostView = (LauncherAppWidgetHostView) child;
+					if (workspace.isWidgetScrollable(hostView.getAppWidgetId())) {
+						continue;
+					}
+					final LauncherAppWidgetInfo item = (LauncherAppWidgetInfo) child.getTag();
+					layout.removeView(hostView);
+					hostView.release();
+					item.hostView = null;
+					workspace.addInScreen(new WidgetPlaceholder(this, item), item.screen, item.cellX, item.cellY, item.spanX, item.spanY,
+							false);
+				}
+			}
+		}
+	}
+
 	/**
 	 * Launches the intent referred by the clicked shortcut.
 	 * 
@@ -2829,6 +2944,47 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		}
 	}
 
+	/**
+	 * Queues the change of a package, applied to the model once no other
+	 * package changed for a short while.
+	 */
+	private void queuePackageUpdate(String packageName, boolean removed) {
+		final long now = SystemClock.uptimeMillis();
+		if (mPendingPackages.isEmpty()) {
+			mPendingPackagesSince = now;
+		}
+		// The last change of a package wins
+		mPendingPackages.remove(packageName);
+		mPendingPackages.put(packageName, removed);
+		mPackageHandler.removeCallbacks(mPackageUpdater);
+		mPackageHandler.postAtTime(mPackageUpdater,
+				Math.min(now + PACKAGE_UPDATE_DELAY, mPendingPackagesSince + PACKAGE_UPDATE_MAX_DELAY));
+	}
+
+	/**
+	 * Applies the queued package changes to the model.
+	 */
+	private void flushPackageUpdates() {
+		mPackageHandler.removeCallbacks(mPackageUpdater);
+		if (mPendingPackages.isEmpty()) {
+			return;
+		}
+		final ArrayList<String> removed = new ArrayList<String>();
+		final ArrayList<String> changed = new ArrayList<String>();
+		for (Map.Entry<String, Boolean> entry : mPendingPackages.entrySet()) {
+			if (entry.getValue()) {
+				removed.add(entry.getKey());
+			} else {
+				changed.add(entry.getKey());
+			}
+		}
+		mPendingPackages.clear();
+		if (LauncherModel.DEBUG_LOADERS) {
+			d(LauncherModel.LOG_TAG, "updating packages, removed=" + removed + ", changed=" + changed);
+		}
+		sModel.updatePackages(this, removed, changed);
+	}
+
 	/**
 	 * Receives notifications when applications are added/removed.
 	 */
@@ -2853,7 +3009,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 							if (LauncherModel.DEBUG_LOADERS) {
 								d(LauncherModel.LOG_TAG, "  --> remove package");
 							}
-							sModel.removePackage(Launcher.this, packageName);
+							queuePackageUpdate(packageName, true);
 						}
 						// else, we are replacing the package, so a
 						// PACKAGE_ADDED will be sent
@@ -2863,12 +3019,12 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 							if (LauncherModel.DEBUG_LOADERS) {
 								d(LauncherModel.LOG_TAG, "  --> add package");
 							}
-							sModel.addPackage(Launcher.this, packageName);
+							queuePackageUpdate(packageName, false);
 						} else {
 							if (LauncherModel.DEBUG_LOADERS) {
 								d(LauncherModel.LOG_TAG, "  --> update package " + packageName);
 							}
-							sModel.updatePackage(Launcher.this, packageName);
+							queuePackageUpdate(packageName, false);
 							updateShortcutsForPackage(packageName);
 						}
 					}
@@ -2877,7 +3033,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 					if (LauncherModel.DEBUG_LOADERS) {
 						d(LauncherModel.LOG_TAG, "  --> sync package " + packageName);
 					}
-					sModel.syncPackage(Launcher.this, packageName);
+					queuePackageUpdate(packageName, false);
 				}
 			} else {
 				// ADW: Damn, this should be only for froyo!!!
@@ -2951,20 +3107,39 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		static final int ITEMS_COUNT = 6;
 
 		private final ArrayList<ItemInfo> mShortcuts;
+		// Shortcuts at the head of mShortcuts that are visible right away
+		private final int mVisibleCount;
 		private final LinkedList<LauncherAppWidgetInfo> mAppWidgets;
 		private final ApplicationsAdapter mDrawerAdapter;
 		private final WeakReference<Launcher> mLauncher;
 
+		// Message sent the next time the queue becomes idle
+		private Message mIdleMessage;
+
 		public boolean mTerminate = false;
 
 		DesktopBinder(Launcher launcher, ArrayList<ItemInfo> shortcuts, ArrayList<LauncherAppWidgetInfo> appWidgets, ApplicationsAdapter drawerAdapter) {
 
 			mLauncher = new WeakReference<Launcher>(launcher);
-			mShortcuts = shortcuts;
 			mDrawerAdapter = drawerAdapter;
 
-			// Sort widgets so active workspace is bound first
+			// Sort shortcuts so the dock and active workspace are bound first,
+			// then the other screens by distance from it
 			final int currentScreen = launcher.mWorkspace.getCurrentScreen();
+			mShortcuts = new ArrayList<ItemInfo>(shortcuts);
+			Collections.sort(mShortcuts, new Comparator<ItemInfo>() {
+				public int compare(ItemInfo a, ItemInfo b) {
+					return getDistance(a, currentScreen) - getDistance(b, currentScreen);
+				}
+			});
+
+			int visibleCount = 0;
+			while (visibleCount < mShortcuts.size() && getDistance(mShortcuts.get(visibleCount), currentScreen) == 0) {
+				visibleCount++;
+			}
+			mVisibleCount = visibleCount;
+
+			// Sort widgets so active workspace is bound first
 			final int size = appWidgets.size();
 			mAppWidgets = new LinkedList<LauncherAppWidgetInfo>();
 
@@ -2978,15 +3153,46 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 			}
 
 			if (LauncherModel.DEBUG_LOADERS) {
-				d(Launcher.LOG_TAG, "------> binding " + shortcuts.size() + " items");
+				d(Launcher.LOG_TAG, "------> binding " + shortcuts.size() + " items, " + mVisibleCount + " visible");
 				d(Launcher.LOG_TAG, "------> binding " + appWidgets.size() + " widgets");
 			}
 		}
 
+		/**
+		 * Screens away from the current one, 0 for items outside of the
+		 * workspace (dock, action buttons).
+		 */
+		static int getDistance(ItemInfo item, int currentScreen) {
+			if (item.container != LauncherSettings.Favorites.CONTAINER_DESKTOP) {
+				return 0;
+			}
+			return Math.abs(item.screen - currentScreen);
+		}
+
+		/**
+		 * End of the pass starting at the specified item: all the visible
+		 * items at once, {@link #ITEMS_COUNT} items at a time after that.
+		 */
+		int getBindEnd(int start, int count) {
+			if (start < mVisibleCount) {
+				return Math.min(mVisibleCount, count);
+			}
+			return Math.min(start + ITEMS_COUNT, count);
+		}
+
 		public void startBindingItems() {
 			if (LauncherModel.DEBUG_LOADERS)
 				d(Launcher.LOG_TAG, "------> start binding items");
-			obtainMessage(MESSAGE_BIND_ITEMS, 0, mShortcuts.size()).sendToTarget();
+			// The visible items are bound right away so they make it into the
+			// first frame, the others follow while the queue is idle
+			final Launcher launcher = mLauncher.get();
+			if (launcher != null) {
+				launcher.bindItems(this, mShortcuts, 0, mShortcuts.size());
+			}
+		}
+
+		public void bindItemsWhenIdle(int start, int count) {
+			whenIdle(obtainMessage(MESSAGE_BIND_ITEMS, start, count));
 		}
 
 		public void startBindingDrawer() {
@@ -2994,14 +3200,23 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 		}
 
 		public void startBindingAppWidgetsWhenIdle() {
+			whenIdle(obtainMessage(MESSAGE_BIND_APPWIDGETS));
+		}
+
+		private void whenIdle(Message message) {
+			mIdleMessage = message;
 			// Ask for notification when message queue becomes idle
 			final MessageQueue messageQueue = Looper.myQueue();
 			messageQueue.addIdleHandler(this);
 		}
 
 		public boolean queueIdle() {
-			// Queue is idle, so start binding items
-			startBindingAppWidgets();
+			// Queue is idle, so send the pending pass
+			final Message message = mIdleMessage;
+			mIdleMessage = null;
+			if (message != null) {
+				sendMessage(message);
+			}
 			return false;
 		}
 
@@ -3372,12 +3587,9 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 					for (int i = 0; i < count; i++) {
 						((ImageView) group.getChildAt(i)).setImageDrawable(null);
 					}
-					ArrayList<Bitmap> bitmaps = (ArrayList<Bitmap>) v.getTag(R.id.icon);
-					for (Bitmap bitmap : bitmaps)
-						bitmap.recycle();
+					// The thumbnails are kept by the workspace for the next time
 
 					v.setTag(R.id.workspace, null);
-					v.setTag(R.id.icon, null);
 					window.setOnDismissListener(null);
 				}
 			});
@@ -3461,17 +3673,11 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 				float sHeight = height * scale;
 
 				PreviewTouchHandler handler = new PreviewTouchHandler(anchor);
-				ArrayList<Bitmap> bitmaps = new ArrayList<Bitmap>(count);
+				final ScreenThumbnails thumbnails = workspace.getThumbnails();
 
 				for (int i = start; i < end; i++) {
 					ImageView image = new ImageView(this);
-					cell = (CellLayout) workspace.getChildAt(i);
-					Bitmap bitmap = Bitmap.createBitmap((int) sWidth, (int) sHeight, Bitmap.Config.ARGB_8888);
-					cell.setDrawingCacheEnabled(false);
-					Canvas c = new Canvas(bitmap);
-					c.scale(scale, scale);
-					c.translate(-cell.getLeftPadding(), -cell.getTopPadding());
-					cell.dispatchDraw(c);
+					Bitmap bitmap = thumbnails.get(i, (int) sWidth, (int) sHeight, scale);
 
 					image.setBackgroundDrawable(resources.getDrawable(R.drawable.preview_background));
 					image.setImageBitmap(bitmap);
@@ -3483,8 +3689,6 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 						image.requestFocus();
 
 					preview.addView(image, LinearLayout.LayoutParams.WRAP_CONTENT, LinearLayout.LayoutParams.WRAP_CONTENT);
-
-					bitmaps.add(bitmap);
 				}
 
 				PopupWindow p = new PopupWindow(this);
@@ -3503,7 +3707,6 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 				});
 				anchor.setTag(p);
 				anchor.setTag(R.id.workspace, preview);
-				anchor.setTag(R.id.icon, bitmaps);
 				if (fullScreenPreviews) {
 					hideDesktop(true);
 					mWorkspace.lock();
@@ -3701,6 +3904,7 @@ public final class Launcher extends Activity implements View.OnClickListener, On
 	}
 
 	public void onSharedPreferenceChanged(SharedPreferences sp, String key) {
+		AlmostNexusSettingsHelper.refreshSnapshot(this);
 		// ADW: Try to add the restart flag here instead on preferences activity
 		if (AlmostNexusSettingsHelper.needsRestart(key)) {
 			setPersistent(false);
@@ -25,6 +25,7 @@ import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.MotionEvent;
 import android.view.View;
+import android.widget.RemoteViews;
 
 /**
  * {@inheritDoc}
@@ -41,11 +42,31 @@ public class LauncherAppWidgetHostView extends AppWidgetHostView {
 
     private LayoutInflater mInflater;
 
+    // Set once the view was replaced by a placeholder, see release()
+    private boolean mReleased;
+
     public LauncherAppWidgetHostView(Context context) {
         super(context);
         mInflater = (LayoutInflater) context.getSystemService(Context.LAYOUT_INFLATER_SERVICE);
     }
 
+    /**
+     * Drops the content of a view removed from the workspace. The host keeps
+     * sending it the updates of its widget until a new view is created for
+     * the widget, they are ignored.
+     */
+    void release() {
+        mReleased = true;
+        removeAllViews();
+    }
+
+    @Override
+    public void updateAppWidget(RemoteViews remoteViews) {
+        if (!mReleased) {
+            super.updateAppWidget(remoteViews);
+        }
+    }
+
     @Override
     protected View getErrorView() {
         return mInflater.inflate(R.layout.appwidget_error, this, false);
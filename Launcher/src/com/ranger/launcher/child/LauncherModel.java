@@ -21,12 +21,19 @@ import static android.util.Log.e;
 import static android.util.Log.w;
 
 import java.lang.ref.WeakReference;
-import java.net.URISyntaxException;
 import java.text.Collator;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 import com.ranger.launcher.child.R;
@@ -34,6 +41,7 @@ import com.ranger.launcher.child.IconShader.CompiledIconShader;
 import com.ranger.launcher.child.catalogue.AppCatalogueFilters;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
 import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.Context;
@@ -46,11 +54,11 @@ import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Process;
+import android.os.SystemClock;
 
 /**
  * Maintains in-memory state of the Launcher. It is expected that there should be only one
@@ -64,6 +72,8 @@ public class LauncherModel {
     private static final int UI_NOTIFICATION_RATE = 4;
     private static final int DEFAULT_APPLICATIONS_NUMBER = 42;
     private static final int INITIAL_ICON_CACHE_CAPACITY = 50;
+    // How long a stopped parallel loader waits for its workers to finish their current item
+    private static final int LOADER_WORKERS_TIMEOUT = 2000;
 
     private static final Collator sCollator = Collator.getInstance();
 
@@ -86,9 +96,14 @@ public class LauncherModel {
     private final HashMap<ComponentName, ApplicationInfo> mAppInfoCache =
             new HashMap<ComponentName, ApplicationInfo>(INITIAL_ICON_CACHE_CAPACITY);
 
+    // Guards the compiled shader, its pixel arrays are shared by every caller
+    private static final Object sIconShaderLock = new Object();
     private static String compiledIconShaderName;
     private static CompiledIconShader compiledIconShader;
 
+    // Updates of existing favorites, written behind in batches
+    private static final ItemUpdateQueue sItemUpdates = new ItemUpdateQueue();
+
     synchronized void abortLoaders() {
         if (DEBUG_LOADERS) d(LOG_TAG, "aborting loaders");
 
@@ -185,169 +200,113 @@ public class LauncherModel {
         mApplicationsLoaderThread.start();
     }
 
-    synchronized void addPackage(Launcher launcher, String packageName) {
+    /**
+     * Applies the changes of several packages at once, the applications list
+     * is filtered again a single time.
+     *
+     * @param removed Packages uninstalled, their applications are removed.
+     * @param changed Packages installed, replaced or whose components changed,
+     *        their applications are added, updated or removed to match the
+     *        package manager.
+     */
+    synchronized void updatePackages(Launcher launcher, List<String> removed,
+            List<String> changed) {
         if (mApplicationsLoader != null && mApplicationsLoader.isRunning()) {
+            if (!removed.isEmpty()) {
+                dropApplicationCache(); // TODO: this could be optimized
+            }
             startApplicationsLoaderLocked(launcher, false);
             return;
         }
 
-        if (packageName != null && packageName.length() > 0 && mApplicationsAdapter!=null) {
-            final PackageManager packageManager = launcher.getPackageManager();
-            final List<ResolveInfo> matches = findActivitiesForPackage(packageManager, packageName);
-
-            if (matches.size() > 0) {
-                final ApplicationsAdapter adapter = mApplicationsAdapter;
-                final HashMap<ComponentName, ApplicationInfo> cache = mAppInfoCache;
-
-                for (ResolveInfo info : matches) {
-                    adapter.setNotifyOnChange(false);
-                    adapter.add(makeAndCacheApplicationInfo(packageManager, cache, info, launcher));
-                }
-				adapter.updateDataSet();
-
-                //adapter.sort(new ApplicationInfoComparator());
-                //adapter.notifyDataSetChanged();
-            }
-        }
-    }
+        IconCache.removePackages(launcher, removed);
 
-    synchronized void removePackage(Launcher launcher, String packageName) {
-    	// for add/remove Package, we need use applications adapter's "full" list.
-
-        if (mApplicationsLoader != null && mApplicationsLoader.isRunning()) {
-            dropApplicationCache(); // TODO: this could be optimized
-            startApplicationsLoaderLocked(launcher, false);
+        if (mApplicationsAdapter == null) {
             return;
         }
+        final ApplicationsAdapter adapter = mApplicationsAdapter;
+        boolean dirty = false;
 
-        if (packageName != null && packageName.length() > 0 && mApplicationsAdapter!=null) {
-            final ApplicationsAdapter adapter = mApplicationsAdapter;
-
-            final List<ApplicationInfo> toRemove = new ArrayList<ApplicationInfo>();
-            final ArrayList<ApplicationInfo> allItems = adapter.allItems;
-            final int count = allItems.size();
+        for (String packageName : removed) {
+            if (removePackageLocked(adapter, packageName)) dirty = true;
+        }
 
-            for (int i = 0; i < count; i++) {
-                final ApplicationInfo applicationInfo = allItems.get(i);
-                final Intent intent = applicationInfo.intent;
-                final ComponentName component = intent.getComponent();
-                if (packageName.equals(component.getPackageName())) {
-                    toRemove.add(applicationInfo);
+        if (!changed.isEmpty()) {
+            final HashMap<String, List<ResolveInfo>> matches =
+                    findActivitiesForPackages(launcher.getPackageManager(), changed);
+            for (String packageName : changed) {
+                final List<ResolveInfo> packageMatches = matches.get(packageName);
+                if (packageMatches != null) {
+                    // Find disabled activities and remove them from the adapter
+                    if (removeDisabledActivities(packageName, packageMatches, adapter)) {
+                        dirty = true;
+                    }
+                    // Find enable activities and add them to the adapter
+                    // Also updates existing activities with new labels/icons
+                    if (addEnabledAndUpdateActivities(packageMatches, adapter, launcher)) {
+                        dirty = true;
+                    }
                 }
             }
-
-            final HashMap<ComponentName, ApplicationInfo> cache = mAppInfoCache;
-            for (ApplicationInfo info : toRemove) {
-                adapter.setNotifyOnChange(false);
-                adapter.remove(info);
-                cache.remove(info.intent.getComponent());
-            }
-
-            if (toRemove.size() > 0) {
-				adapter.updateDataSet();
-                //adapter.sort(new ApplicationInfoComparator());
-                //adapter.notifyDataSetChanged();
-            }
         }
-    }
 
-    synchronized void updatePackage(Launcher launcher, String packageName) {
-        if (mApplicationsLoader != null && mApplicationsLoader.isRunning()) {
-            startApplicationsLoaderLocked(launcher, false);
-            return;
+        if (dirty) {
+            adapter.updateDataSet();
         }
+    }
 
-        if (packageName != null && packageName.length() > 0 && mApplicationsAdapter!=null) {
-            final PackageManager packageManager = launcher.getPackageManager();
-            final ApplicationsAdapter adapter = mApplicationsAdapter;
-
-            final List<ResolveInfo> matches = findActivitiesForPackage(packageManager, packageName);
-            final int count = matches.size();
-
-            boolean changed = false;
-
-            for (int i = 0; i < count; i++) {
-                final ResolveInfo info = matches.get(i);
-                final ApplicationInfo applicationInfo = findIntent(adapter,
-                        info.activityInfo.applicationInfo.packageName, info.activityInfo.name);
-                if (applicationInfo != null) {
-                    updateAndCacheApplicationInfo(packageManager, info, applicationInfo, launcher);
-                    changed = true;
-                }
-            }
-
-            if (syncLocked(launcher, packageName)) changed = true;
-
-            if (changed) {
-				adapter.updateDataSet();
-                //adapter.sort(new ApplicationInfoComparator());
-                //adapter.notifyDataSetChanged();
-            }
+    private boolean removePackageLocked(ApplicationsAdapter adapter, String packageName) {
+        final ArrayList<ApplicationInfo> toRemove = adapter.getPackageItems(packageName);
+        final HashMap<ComponentName, ApplicationInfo> cache = mAppInfoCache;
+        final int count = toRemove.size();
+        for (int i = 0; i < count; i++) {
+            final ApplicationInfo info = toRemove.get(i);
+            adapter.removeItem(info);
+            cache.remove(info.intent.getComponent());
         }
+        return count > 0;
     }
 
     private void updateAndCacheApplicationInfo(PackageManager packageManager, ResolveInfo info,
-            ApplicationInfo applicationInfo, Context context) {
+            ApplicationInfo applicationInfo, ApplicationsAdapter adapter, Context context) {
 
+        // The title may change, the application is inserted again at its new position
+        final boolean listed = adapter.removeItem(applicationInfo);
         updateApplicationInfoTitleAndIcon(packageManager, info, applicationInfo, context);
+        if (listed) {
+            adapter.addItem(applicationInfo);
+        }
 
         ComponentName componentName = new ComponentName(
                 info.activityInfo.applicationInfo.packageName, info.activityInfo.name);
         mAppInfoCache.put(componentName, applicationInfo);
     }
 
-    synchronized void syncPackage(Launcher launcher, String packageName) {
-        if (mApplicationsLoader != null && mApplicationsLoader.isRunning()) {
-            startApplicationsLoaderLocked(launcher, false);
-            return;
-        }
-
-        if (packageName != null && packageName.length() > 0 && mApplicationsAdapter!=null) {
-            if (syncLocked(launcher, packageName)) {
-                final ApplicationsAdapter adapter = mApplicationsAdapter;
-				adapter.updateDataSet();
-                //adapter.sort(new ApplicationInfoComparator());
-                //adapter.notifyDataSetChanged();
-            }
-        }
-    }
-
-    private boolean syncLocked(Launcher launcher, String packageName) {
-        final PackageManager packageManager = launcher.getPackageManager();
-        final List<ResolveInfo> matches = findActivitiesForPackage(packageManager, packageName);
-
-        if (matches.size() > 0 && mApplicationsAdapter!=null) {
-            final ApplicationsAdapter adapter = mApplicationsAdapter;
-
-            // Find disabled activities and remove them from the adapter
-            boolean removed = removeDisabledActivities(packageName, matches, adapter);
-            // Find enable activities and add them to the adapter
-            // Also updates existing activities with new labels/icons
-            boolean added = addEnabledAndUpdateActivities(matches, adapter, launcher);
-
-            return added || removed;
-        }
-
-        return false;
-    }
-
-    private static List<ResolveInfo> findActivitiesForPackage(PackageManager packageManager,
-            String packageName) {
+    /**
+     * @return The launcher activities of each of the packages that has some.
+     */
+    private static HashMap<String, List<ResolveInfo>> findActivitiesForPackages(
+            PackageManager packageManager, List<String> packageNames) {
 
         final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
         mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
 
         final List<ResolveInfo> apps = packageManager.queryIntentActivities(mainIntent, 0);
-        final List<ResolveInfo> matches = new ArrayList<ResolveInfo>();
+        final HashMap<String, List<ResolveInfo>> matches = new HashMap<String, List<ResolveInfo>>();
 
         if (apps != null) {
-            // Find all activities that match the packageName
+            // Find all activities that match one of the packages
             int count = apps.size();
             for (int i = 0; i < count; i++) {
                 final ResolveInfo info = apps.get(i);
-                final ActivityInfo activityInfo = info.activityInfo;
-                if (packageName.equals(activityInfo.packageName)) {
-                    matches.add(info);
+                final String packageName = info.activityInfo.packageName;
+                if (packageNames.contains(packageName)) {
+                    List<ResolveInfo> packageMatches = matches.get(packageName);
+                    if (packageMatches == null) {
+                        packageMatches = new ArrayList<ResolveInfo>();
+                        matches.put(packageName, packageMatches);
+                    }
+                    packageMatches.add(info);
                 }
             }
         }
@@ -358,81 +317,50 @@ public class LauncherModel {
     private boolean addEnabledAndUpdateActivities(List<ResolveInfo> matches,
             ApplicationsAdapter adapter, Launcher launcher) {
 
-        final List<ApplicationInfo> toAdd = new ArrayList<ApplicationInfo>();
         final int count = matches.size();
 
         boolean changed = false;
 
         for (int i = 0; i < count; i++) {
             final ResolveInfo info = matches.get(i);
-            final ApplicationInfo applicationInfo = findIntent(adapter,
-                    info.activityInfo.applicationInfo.packageName, info.activityInfo.name);
+            final ApplicationInfo applicationInfo = adapter.findItem(new ComponentName(
+                    info.activityInfo.applicationInfo.packageName, info.activityInfo.name));
             if (applicationInfo == null) {
-                toAdd.add(makeAndCacheApplicationInfo(launcher.getPackageManager(),
-                        mAppInfoCache, info, launcher));
+                adapter.addItem(makeAndCacheApplicationInfo(launcher.getPackageManager(),
+                        mAppInfoCache, null, info, launcher));
                 changed = true;
             } else {
                 updateAndCacheApplicationInfo(
-                        launcher.getPackageManager(), info, applicationInfo, launcher);
+                        launcher.getPackageManager(), info, applicationInfo, adapter, launcher);
                 changed = true;
             }
         }
 
-        for (ApplicationInfo info : toAdd) {
-            adapter.setNotifyOnChange(false);
-            adapter.add(info);
-        }
-
         return changed;
     }
 
     private boolean removeDisabledActivities(String packageName, List<ResolveInfo> matches,
             ApplicationsAdapter adapter) {
 
-        final List<ApplicationInfo> toRemove = new ArrayList<ApplicationInfo>();
-        final int count = adapter.getCount();
+        final ArrayList<ApplicationInfo> items = adapter.getPackageItems(packageName);
+        final int count = items.size();
+        final HashMap<ComponentName, ApplicationInfo> cache = mAppInfoCache;
 
         boolean changed = false;
 
         for (int i = 0; i < count; i++) {
-            final ApplicationInfo applicationInfo = adapter.getItem(i);
-            final Intent intent = applicationInfo.intent;
-            final ComponentName component = intent.getComponent();
-            if (packageName.equals(component.getPackageName())) {
-                if (!findIntent(matches, component)) {
-                    toRemove.add(applicationInfo);
-                    changed = true;
-                }
+            final ApplicationInfo applicationInfo = items.get(i);
+            final ComponentName component = applicationInfo.intent.getComponent();
+            if (!findIntent(matches, component)) {
+                adapter.removeItem(applicationInfo);
+                cache.remove(component);
+                changed = true;
             }
         }
 
-        final HashMap<ComponentName, ApplicationInfo> cache = mAppInfoCache;
-        for (ApplicationInfo info : toRemove) {
-            adapter.setNotifyOnChange(false);
-            adapter.remove(info);
-            cache.remove(info.intent.getComponent());
-        }
-
         return changed;
     }
 
-    private static ApplicationInfo findIntent(ApplicationsAdapter adapter, String packageName,
-            String name) {
-
-        final int count = adapter.getCount();
-        for (int i = 0; i < count; i++) {
-            final ApplicationInfo applicationInfo = adapter.getItem(i);
-            final Intent intent = applicationInfo.intent;
-            final ComponentName component = intent.getComponent();
-            if (packageName.equals(component.getPackageName()) &&
-                    name.equals(component.getClassName())) {
-                return applicationInfo;
-            }
-        }
-
-        return null;
-    }
-
     private static boolean findIntent(List<ResolveInfo> apps, ComponentName component) {
         final String className = component.getClassName();
         for (ResolveInfo info : apps) {
@@ -462,25 +390,38 @@ public class LauncherModel {
         return application.icon;
     }
 
+    /**
+     * @param iconCache The persistent cache to read from and write to, may be null.
+     */
     private static ApplicationInfo makeAndCacheApplicationInfo(PackageManager manager,
-            HashMap<ComponentName, ApplicationInfo> appInfoCache, ResolveInfo info,
-            Context context) {
+            HashMap<ComponentName, ApplicationInfo> appInfoCache, IconCache iconCache,
+            ResolveInfo info, Context context) {
 
         ComponentName componentName = new ComponentName(
                 info.activityInfo.applicationInfo.packageName,
                 info.activityInfo.name);
-        ApplicationInfo application = appInfoCache.get(componentName);
+        ApplicationInfo application;
+        synchronized (appInfoCache) {
+            application = appInfoCache.get(componentName);
+        }
 
         if (application == null) {
             application = new ApplicationInfo();
             application.container = ItemInfo.NO_ID;
 
-            updateApplicationInfoTitleAndIcon(manager, info, application, context);
+            if (iconCache == null || !iconCache.fill(info, componentName, application)) {
+                updateApplicationInfoTitleAndIcon(manager, info, application, context);
+                if (iconCache != null) {
+                    iconCache.put(info, componentName, application);
+                }
+            }
 
             application.setActivity(componentName,
                     Intent.FLAG_ACTIVITY_NEW_TASK | Intent.FLAG_ACTIVITY_RESET_TASK_IF_NEEDED);
 
-            appInfoCache.put(componentName, application);
+            synchronized (appInfoCache) {
+                appInfoCache.put(componentName, application);
+            }
         }
 
         return application;
@@ -533,45 +474,151 @@ public class LauncherModel {
             android.os.Process.setThreadPriority(mIsLaunching ? Process.THREAD_PRIORITY_DEFAULT :
                     Process.THREAD_PRIORITY_BACKGROUND);
 
+            final long start = SystemClock.uptimeMillis();
+
             final Intent mainIntent = new Intent(Intent.ACTION_MAIN, null);
             mainIntent.addCategory(Intent.CATEGORY_LAUNCHER);
 
             final Launcher launcher = mLauncher.get();
             final PackageManager manager = launcher.getPackageManager();
             final List<ResolveInfo> apps = manager.queryIntentActivities(mainIntent, 0);
+            final AlmostNexusSettingsHelper.Snapshot settings = AlmostNexusSettingsHelper.getSnapshot(launcher);
+            final boolean parallel = settings.parallelAppsLoader;
 
             if (apps != null && !mStopped) {
-                final int count = apps.size();
                 // Can be set to null on the UI thread by the unbind() method
                 // Do not access without checking for null first
                 final ApplicationsAdapter applicationList = mApplicationsAdapter;
+                final IconCache iconCache = IconCache.open(launcher, settings);
 
-                ChangeNotifier action = new ChangeNotifier(applicationList, true);
-                final HashMap<ComponentName, ApplicationInfo> appInfoCache = mAppInfoCache;
-
-                for (int i = 0; i < count && !mStopped; i++) {
-                    ResolveInfo info = apps.get(i);
-                    ApplicationInfo application =
-                        makeAndCacheApplicationInfo(manager, appInfoCache, info, launcher);
-
-                    if (action.add(application) && !mStopped) {
-                        launcher.runOnUiThread(action);
-                        action = new ChangeNotifier(applicationList, false);
-                    }
+                if (parallel) {
+                    loadParallel(launcher, manager, apps, applicationList, iconCache);
+                } else {
+                    loadSerial(launcher, manager, apps, applicationList, iconCache);
                 }
 
-                launcher.runOnUiThread(action);
+                iconCache.flush();
             }
 
             /* If we've made it this far and mStopped isn't set, we've successfully loaded
              * applications.  Otherwise, applications aren't loaded. */
             mApplicationsLoaded = !mStopped;
 
+            if (DEBUG_LOADERS) {
+                d(LOG_TAG, "  ----> applications loader (" + mId + ") " +
+                        (parallel ? "parallel" : "serial") + " load of " +
+                        (apps != null ? apps.size() : 0) + " apps took " +
+                        (SystemClock.uptimeMillis() - start) + "ms");
+            }
+
             if (mStopped) {
                 if (DEBUG_LOADERS) d(LOG_TAG, "  ----> applications loader stopped (" + mId + ")");
             }
             mRunning = false;
         }
+
+        private void loadSerial(Launcher launcher, PackageManager manager, List<ResolveInfo> apps,
+                ApplicationsAdapter applicationList, IconCache iconCache) {
+
+            final int count = apps.size();
+            ChangeNotifier action = new ChangeNotifier(applicationList, true);
+            final HashMap<ComponentName, ApplicationInfo> appInfoCache = mAppInfoCache;
+
+            for (int i = 0; i < count && !mStopped; i++) {
+                ResolveInfo info = apps.get(i);
+                ApplicationInfo application = makeAndCacheApplicationInfo(manager,
+                        appInfoCache, iconCache, info, launcher);
+
+                if (action.add(application) && !mStopped) {
+                    launcher.runOnUiThread(action);
+                    action = new ChangeNotifier(applicationList, false);
+                }
+            }
+
+            launcher.runOnUiThread(action);
+        }
+
+        /**
+         * Resolves the applications on a pool sized to the number of cores. Results
+         * are collected on this thread, in completion order, and handed to the UI in
+         * batches exactly like {@link #loadSerial}.
+         */
+        private void loadParallel(final Launcher launcher, final PackageManager manager,
+                List<ResolveInfo> apps, ApplicationsAdapter applicationList,
+                final IconCache iconCache) {
+
+            final int count = apps.size();
+            final int workers = Math.max(1,
+                    Math.min(Runtime.getRuntime().availableProcessors(), count));
+            final ExecutorService pool = Executors.newFixedThreadPool(workers,
+                    new LoaderThreadFactory(mIsLaunching ? Process.THREAD_PRIORITY_DEFAULT :
+                            Process.THREAD_PRIORITY_BACKGROUND));
+            final CompletionService<ApplicationInfo> completion =
+                    new ExecutorCompletionService<ApplicationInfo>(pool);
+            final HashMap<ComponentName, ApplicationInfo> appInfoCache = mAppInfoCache;
+
+            if (DEBUG_LOADERS) d(LOG_TAG, "  ----> loading on " + workers + " workers");
+
+            for (int i = 0; i < count; i++) {
+                final ResolveInfo info = apps.get(i);
+                completion.submit(new Callable<ApplicationInfo>() {
+                    public ApplicationInfo call() {
+                        if (mStopped) return null;
+                        return makeAndCacheApplicationInfo(manager, appInfoCache, iconCache,
+                                info, launcher);
+                    }
+                });
+            }
+
+            ChangeNotifier action = new ChangeNotifier(applicationList, true);
+            try {
+                for (int i = 0; i < count && !mStopped; i++) {
+                    final ApplicationInfo application;
+                    try {
+                        application = completion.take().get();
+                    } catch (ExecutionException e) {
+                        w(LOG_TAG, "Could not load application", e.getCause());
+                        continue;
+                    }
+
+                    if (application != null && action.add(application) && !mStopped) {
+                        launcher.runOnUiThread(action);
+                        action = new ChangeNotifier(applicationList, false);
+                    }
+                }
+            } catch (InterruptedException e) {
+                mStopped = true;
+            } finally {
+                pool.shutdownNow();
+            }
+
+            launcher.runOnUiThread(action);
+
+            // Don't let workers touch the caches once the loader is reported as finished
+            try {
+                pool.awaitTermination(LOADER_WORKERS_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private static class LoaderThreadFactory implements ThreadFactory {
+        private final AtomicInteger mCount = new AtomicInteger(1);
+        private final int mPriority;
+
+        LoaderThreadFactory(int priority) {
+            mPriority = priority;
+        }
+
+        public Thread newThread(final Runnable r) {
+            return new Thread(new Runnable() {
+                public void run() {
+                    Process.setThreadPriority(mPriority);
+                    r.run();
+                }
+            }, "Applications Loader #" + mCount.getAndIncrement());
+        }
     }
 
     private static class ChangeNotifier implements Runnable {
@@ -602,8 +649,7 @@ public class LauncherModel {
             final int count = buffer.size();
 
             for (int i = 0; i < count; i++) {
-                applicationList.setNotifyOnChange(false);
-                applicationList.add(buffer.get(i));
+                applicationList.addItem(buffer.get(i));
             }
 
             buffer.clear();
@@ -638,8 +684,9 @@ public class LauncherModel {
             boolean loadApplications) {
         if (DEBUG_LOADERS) d(LOG_TAG, "loading user items in " + Thread.currentThread().toString());
         //ADW: load columns/rows settings
-        mDesktopRows=AlmostNexusSettingsHelper.getDesktopRows(launcher);
-        mDesktopColumns=AlmostNexusSettingsHelper.getDesktopColumns(launcher);
+        final AlmostNexusSettingsHelper.Snapshot settings = AlmostNexusSettingsHelper.getSnapshot(launcher);
+        mDesktopRows=settings.desktopRows;
+        mDesktopColumns=settings.desktopColumns;
         if (isLaunching && isDesktopLoaded()) {
             if (DEBUG_LOADERS) d(LOG_TAG, "  --> items loaded, return");
             if (loadApplications) startApplicationsLoader(launcher, true);
@@ -737,9 +784,7 @@ public class LauncherModel {
             final ContentResolver contentResolver = launcher.getContentResolver();
             final PackageManager manager = launcher.getPackageManager();
 
-            if (mLocaleChanged) {
-                updateShortcutLabels(contentResolver, manager);
-            }
+            flushPendingUpdates();
 
             final ArrayList<ItemInfo> desktopItems = new ArrayList<ItemInfo>();
             final ArrayList<LauncherAppWidgetInfo> desktopAppWidgets = new ArrayList<LauncherAppWidgetInfo>();
@@ -983,68 +1028,115 @@ public class LauncherModel {
                     mDesktopAppWidgets = desktopAppWidgets;
                     mFolders = folders;
                     mDesktopItemsLoaded = true;
+
+                    if (mLocaleChanged) {
+                        // The titles were stored in the previous locale, fix them
+                        // once the desktop is shown
+                        startShortcutLabelsUpdater(launcher, desktopItems, folders);
+                    }
                 } else {
                     if (DEBUG_LOADERS) d(LOG_TAG, "  ----> worskpace loader was stopped");
                 }
             }
         }
+    }
 
-        private void updateShortcutLabels(ContentResolver resolver, PackageManager manager) {
-            final Cursor c = resolver.query(LauncherSettings.Favorites.CONTENT_URI,
-                    new String[] { LauncherSettings.Favorites._ID, LauncherSettings.Favorites.TITLE,
-                            LauncherSettings.Favorites.INTENT, LauncherSettings.Favorites.ITEM_TYPE },
-                    null, null, null);
+    private static void startShortcutLabelsUpdater(Launcher launcher,
+            ArrayList<ItemInfo> desktopItems, HashMap<Long, FolderInfo> folders) {
+        final ArrayList<ApplicationInfo> items = new ArrayList<ApplicationInfo>();
+        for (ItemInfo item : desktopItems) {
+            if (item instanceof ApplicationInfo) {
+                items.add((ApplicationInfo) item);
+            }
+        }
+        for (FolderInfo folder : folders.values()) {
+            if (folder instanceof UserFolderInfo) {
+                items.addAll(((UserFolderInfo) folder).contents);
+            }
+        }
 
-            final int idIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites._ID);
-            final int intentIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.INTENT);
-            final int itemTypeIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.ITEM_TYPE);
-            final int titleIndex = c.getColumnIndexOrThrow(LauncherSettings.Favorites.TITLE);
+        final Thread thread = new Thread(new ShortcutLabelsUpdater(launcher, items),
+                "Shortcut Labels Updater");
+        thread.start();
+    }
 
-            // boolean changed = false;
+    /**
+     * Sets the titles of the applications on the desktop and in folders to
+     * the labels of their activities, after a locale change. The titles are
+     * written in one provider batch, then pushed to the views already bound.
+     */
+    private static class ShortcutLabelsUpdater implements Runnable {
+        private final WeakReference<Launcher> mLauncher;
+        private final ArrayList<ApplicationInfo> mItems;
 
-            try {
-                while (!mStopped && c.moveToNext()) {
-                    try {
-                        if (c.getInt(itemTypeIndex) !=
-                                LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
-                            continue;
-                        }
+        ShortcutLabelsUpdater(Launcher launcher, ArrayList<ApplicationInfo> items) {
+            mLauncher = new WeakReference<Launcher>(launcher);
+            mItems = items;
+        }
 
-                        final String intentUri = c.getString(intentIndex);
-                        if (intentUri != null) {
-                            final Intent shortcut = Intent.parseUri(intentUri, 0);
-                            if (Intent.ACTION_MAIN.equals(shortcut.getAction())) {
-                                final ComponentName name = shortcut.getComponent();
-                                if (name != null) {
-                                    final ActivityInfo activityInfo = manager.getActivityInfo(name, 0);
-                                    final String title = c.getString(titleIndex);
-                                    String label = getLabel(manager, activityInfo);
-
-                                    if (title == null || !title.equals(label)) {
-                                        final ContentValues values = new ContentValues();
-                                        values.put(LauncherSettings.Favorites.TITLE, label);
-
-                                        resolver.update(
-                                                LauncherSettings.Favorites.CONTENT_URI_NO_NOTIFICATION,
-                                                values, "_id=?",
-                                                new String[] { String.valueOf(c.getLong(idIndex)) });
-
-                                        // changed = true;
-                                    }
-                                }
-                            }
-                        }
-                    } catch (URISyntaxException e) {
-                        // Ignore
-                    } catch (PackageManager.NameNotFoundException e) {
-                        // Ignore
-                    }
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+
+            final Launcher launcher = mLauncher.get();
+            if (launcher == null) return;
+            final PackageManager manager = launcher.getPackageManager();
+
+            final ArrayList<ApplicationInfo> changed = new ArrayList<ApplicationInfo>();
+            final ArrayList<String> labels = new ArrayList<String>();
+            final ArrayList<ContentProviderOperation> operations =
+                    new ArrayList<ContentProviderOperation>();
+
+            final ArrayList<ApplicationInfo> items = mItems;
+            final int count = items.size();
+            for (int i = 0; i < count; i++) {
+                final ApplicationInfo item = items.get(i);
+                if (item.itemType != LauncherSettings.Favorites.ITEM_TYPE_APPLICATION) {
+                    continue;
+                }
+
+                final Intent intent = item.intent;
+                final ComponentName name = intent != null ? intent.getComponent() : null;
+                if (name == null || !Intent.ACTION_MAIN.equals(intent.getAction())) {
+                    continue;
+                }
+
+                final ActivityInfo activityInfo;
+                try {
+                    activityInfo = manager.getActivityInfo(name, 0);
+                } catch (PackageManager.NameNotFoundException e) {
+                    continue;
+                }
+                final String label = getLabel(manager, activityInfo);
+                final CharSequence title = item.title;
+
+                if (title == null || !label.equals(title.toString())) {
+                    operations.add(ContentProviderOperation.newUpdate(
+                            LauncherSettings.Favorites.getContentUri(item.id, false))
+                            .withValue(LauncherSettings.Favorites.TITLE, label).build());
+                    changed.add(item);
+                    labels.add(label);
                 }
-            } finally {
-                c.close();
             }
 
-            // if (changed) resolver.notifyChange(Settings.Favorites.CONTENT_URI, null);
+            if (DEBUG_LOADERS) d(LOG_TAG, "  ----> " + changed.size() + " shortcut labels changed");
+            if (operations.isEmpty()) return;
+
+            try {
+                launcher.getContentResolver().applyBatch(LauncherProvider.AUTHORITY, operations);
+            } catch (Exception ex) {
+                e(LOG_TAG, "Could not write shortcut labels", ex);
+                return;
+            }
+
+            launcher.runOnUiThread(new Runnable() {
+                public void run() {
+                    final int count = changed.size();
+                    for (int i = 0; i < count; i++) {
+                        changed.get(i).title = labels.get(i);
+                    }
+                    launcher.onShortcutTitlesChanged(changed);
+                }
+            });
         }
     }
 
@@ -1322,7 +1414,7 @@ public class LauncherModel {
             case LauncherSettings.Favorites.ICON_TYPE_BITMAP:
                 byte[] data = c.getBlob(iconIndex);
                 try {
-                    Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+                    Bitmap bitmap = ItemInfo.readBitmap(data);
                     info.icon = new FastBitmapDrawable(
                             Utilities.createBitmapThumbnail(bitmap, context));
                 } catch (Exception e) {
@@ -1382,14 +1474,21 @@ public class LauncherModel {
         item.cellY = cellY;
 
         final ContentValues values = new ContentValues();
-        final ContentResolver cr = context.getContentResolver();
 
         values.put(LauncherSettings.Favorites.CONTAINER, item.container);
         values.put(LauncherSettings.Favorites.CELLX, item.cellX);
         values.put(LauncherSettings.Favorites.CELLY, item.cellY);
         values.put(LauncherSettings.Favorites.SCREEN, item.screen);
 
-        cr.update(LauncherSettings.Favorites.getContentUri(item.id, false), values, null, null);
+        sItemUpdates.update(context, item.id, values);
+    }
+
+    /**
+     * Writes the pending updates of existing items now. Must be called
+     * before reading positions back from the database.
+     */
+    static void flushPendingUpdates() {
+        sItemUpdates.flush();
     }
 
     /**
@@ -1411,6 +1510,8 @@ public class LauncherModel {
     }
 
     FolderInfo getFolderById(Context context, long id) {
+        flushPendingUpdates();
+
         final ContentResolver cr = context.getContentResolver();
         Cursor c = cr.query(LauncherSettings.Favorites.CONTENT_URI, null,
                 "_id=? and (itemType=? or itemType=?)",
@@ -1482,11 +1583,10 @@ public class LauncherModel {
      */
     static void updateItemInDatabase(Context context, ItemInfo item) {
         final ContentValues values = new ContentValues();
-        final ContentResolver cr = context.getContentResolver();
 
         item.onAddToDatabase(values);
 
-        cr.update(LauncherSettings.Favorites.getContentUri(item.id, false), values, null, null);
+        sItemUpdates.update(context, item.id, values);
     }
 
     /**
@@ -1497,6 +1597,8 @@ public class LauncherModel {
     static void deleteItemFromDatabase(Context context, ItemInfo item) {
         final ContentResolver cr = context.getContentResolver();
 
+        sItemUpdates.cancel(item.id);
+
         cr.delete(LauncherSettings.Favorites.getContentUri(item.id, false), null, null);
     }
 
@@ -1507,6 +1609,8 @@ public class LauncherModel {
     static void deleteUserFolderContentsFromDatabase(Context context, UserFolderInfo info) {
         final ContentResolver cr = context.getContentResolver();
 
+        sItemUpdates.cancel(info.id);
+
         cr.delete(LauncherSettings.Favorites.getContentUri(info.id, false), null, null);
         cr.delete(LauncherSettings.Favorites.CONTENT_URI,
                 LauncherSettings.Favorites.CONTAINER + "=" + info.id, null);
@@ -1517,14 +1621,15 @@ public class LauncherModel {
      * Accounts for theme and icon shading
      */
     static Drawable getIcon(PackageManager manager, Context context, ActivityInfo activityInfo) {
-        String themePackage=AlmostNexusSettingsHelper.getThemePackageName(context, Launcher.THEME_DEFAULT);
+        final AlmostNexusSettingsHelper.Snapshot settings = AlmostNexusSettingsHelper.getSnapshot(context);
+        String themePackage=settings.themePackageName;
         Drawable icon = null;
         if(themePackage.equals(Launcher.THEME_DEFAULT)){
             icon = Utilities.createIconThumbnail(activityInfo.loadIcon(manager), context);
         }else{
             // get from theme
             Resources themeResources = null;
-            if(AlmostNexusSettingsHelper.getThemeIcons(context)){
+            if(settings.themeIcons){
                 activityInfo.name=activityInfo.name.toLowerCase().replace(".", "_");
                 try {
                     themeResources = manager.getResourcesForApplication(themePackage);
@@ -1539,20 +1644,27 @@ public class LauncherModel {
 
                     // use IconShader
                     if(icon==null){
-                        if (compiledIconShaderName==null ||
-                            compiledIconShaderName.compareTo(themePackage)!=0){
-                            compiledIconShader = null;
-                            resource_id = themeResources.getIdentifier("shader", "xml", themePackage);
-                            if(resource_id!=0){
-                                XmlResourceParser xpp = themeResources.getXml(resource_id);
-                                compiledIconShader = IconShader.parseXml(xpp);
+                        // only the lazy parse is locked, the shader runs on
+                        // per thread buffers so the loader workers share it
+                        final CompiledIconShader shader;
+                        synchronized (sIconShaderLock) {
+                            if (compiledIconShaderName==null ||
+                                compiledIconShaderName.compareTo(themePackage)!=0){
+                                compiledIconShader = null;
+                                resource_id = themeResources.getIdentifier("shader", "xml", themePackage);
+                                if(resource_id!=0){
+                                    XmlResourceParser xpp = themeResources.getXml(resource_id);
+                                    compiledIconShader = IconShader.parseXml(xpp);
+                                }
+                                compiledIconShaderName = themePackage;
                             }
+                            shader = compiledIconShader;
                         }
 
-                        if(compiledIconShader!=null){
+                        if(shader!=null){
                             icon = Utilities.createIconThumbnail(activityInfo.loadIcon(manager), context);
                             try {
-                                icon = IconShader.processIcon(icon, compiledIconShader);
+                                icon = IconShader.processIcon(icon, shader);
                             } catch (Exception e) {}
                         }
                     }
@@ -1580,7 +1692,6 @@ public class LauncherModel {
         item.spanY = spanY;
 
         final ContentValues values = new ContentValues();
-        final ContentResolver cr = context.getContentResolver();
 
         values.put(LauncherSettings.Favorites.CONTAINER, item.container);
         values.put(LauncherSettings.Favorites.CELLX, item.cellX);
@@ -1589,7 +1700,7 @@ public class LauncherModel {
         values.put(LauncherSettings.Favorites.SPANY, item.spanY);
         values.put(LauncherSettings.Favorites.SCREEN, item.screen);
 
-        cr.update(LauncherSettings.Favorites.getContentUri(item.id, false), values, null, null);
+        sItemUpdates.update(context, item.id, values);
     }
     boolean ocuppiedArea(int screen,int id,Rect rect){
         final ArrayList<ItemInfo>desktopItems=mDesktopItems;
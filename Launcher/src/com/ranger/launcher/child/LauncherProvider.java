@@ -19,12 +19,15 @@ package com.ranger.launcher.child;
 import android.appwidget.AppWidgetHost;
 import android.appwidget.AppWidgetManager;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.Context;
 import android.content.ContentValues;
 import android.content.Intent;
 import android.content.ComponentName;
 import android.content.ContentUris;
 import android.content.ContentResolver;
+import android.content.OperationApplicationException;
 import android.content.res.Resources;
 import android.content.res.XmlResourceParser;
 import android.content.res.TypedArray;
@@ -35,6 +38,8 @@ import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.database.Cursor;
 import android.database.SQLException;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
 import android.util.Log;
 import android.util.Xml;
 import android.util.AttributeSet;
@@ -60,7 +65,7 @@ public class LauncherProvider extends ContentProvider {
 
     private static final String DATABASE_NAME = "launcher.db";
     
-    private static final int DATABASE_VERSION = 4;
+    private static final int DATABASE_VERSION = 6;
 
     static final String AUTHORITY = "com.ranger.launcher.child.settings";
     
@@ -69,6 +74,7 @@ public class LauncherProvider extends ContentProvider {
 
     static final String TABLE_FAVORITES = "favorites";
     static final String TABLE_GESTURES = "gestures";
+    static final String TABLE_ICONS = "icons";
     static final String PARAMETER_NOTIFY = "notify";
 
     /**
@@ -81,6 +87,10 @@ public class LauncherProvider extends ContentProvider {
     
     private SQLiteOpenHelper mOpenHelper;
 
+    // Tables changed by the batch running on the current thread, notified
+    // once it is committed
+    private final ThreadLocal<ArrayList<Uri>> mBatchNotifications = new ThreadLocal<ArrayList<Uri>>();
+
     @Override
     public boolean onCreate() {
         mOpenHelper = new DatabaseHelper(getContext());
@@ -168,10 +178,45 @@ public class LauncherProvider extends ContentProvider {
         return count;
     }
 
+    /**
+     * Applies the operations in a single transaction. Change notifications are
+     * held back and sent once per table after the commit.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        final ArrayList<Uri> notifications = new ArrayList<Uri>();
+        final ContentProviderResult[] results;
+
+        SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        mBatchNotifications.set(notifications);
+        db.beginTransaction();
+        try {
+            results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+            mBatchNotifications.set(null);
+        }
+
+        final ContentResolver resolver = getContext().getContentResolver();
+        for (Uri uri : notifications) {
+            resolver.notifyChange(uri, null);
+        }
+        return results;
+    }
+
     private void sendNotify(Uri uri) {
         String notify = uri.getQueryParameter(PARAMETER_NOTIFY);
         if (notify == null || "true".equals(notify)) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            final ArrayList<Uri> batch = mBatchNotifications.get();
+            if (batch != null) {
+                final Uri table = Uri.parse("content://" + AUTHORITY + "/" +
+                        uri.getPathSegments().get(0));
+                if (!batch.contains(table)) batch.add(table);
+            } else {
+                getContext().getContentResolver().notifyChange(uri, null);
+            }
         }
     }
 
@@ -239,6 +284,8 @@ public class LauncherProvider extends ContentProvider {
                     "icon BLOB" +
                     ");");
 
+            createIconsTable(db);
+
             // Database was just created, so wipe any previous widgets
             if (mAppWidgetHost != null) {
                 mAppWidgetHost.deleteHost();
@@ -395,13 +442,97 @@ public class LauncherProvider extends ContentProvider {
                 }
             }
             
+            if (version < 5) {
+                // upgrade 4 -> 5 added the persistent icon cache
+                db.beginTransaction();
+                try {
+                    createIconsTable(db);
+                    db.setTransactionSuccessful();
+                    version = 5;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(LOG_TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
+            if (version < 6) {
+                // upgrade 5 -> 6 stores custom icons as raw pixels instead of PNG
+                db.beginTransaction();
+                try {
+                    convertIcons(db, TABLE_FAVORITES);
+                    convertIcons(db, TABLE_GESTURES);
+                    db.setTransactionSuccessful();
+                    version = 6;
+                } catch (SQLException ex) {
+                    // Old version remains, which means we wipe old data
+                    Log.e(LOG_TAG, ex.getMessage(), ex);
+                } finally {
+                    db.endTransaction();
+                }
+            }
+
             if (version != DATABASE_VERSION) {
                 Log.w(LOG_TAG, "Destroying all old data.");
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_FAVORITES);
                 db.execSQL("DROP TABLE IF EXISTS " + TABLE_GESTURES);
+                db.execSQL("DROP TABLE IF EXISTS " + TABLE_ICONS);
                 onCreate(db);
             }
         }
+
+        /**
+         * Rewrites the PNG compressed custom icons of a table in the format of
+         * {@link ItemInfo#writeBitmap}. Icons that can't be decoded are left
+         * as they are.
+         */
+        private void convertIcons(SQLiteDatabase db, String table) {
+            final Cursor c = db.query(table,
+                    new String[] { Favorites._ID, Favorites.ICON },
+                    Favorites.ICON_TYPE + "=" + Favorites.ICON_TYPE_BITMAP + " AND " +
+                    Favorites.ICON + " IS NOT NULL", null, null, null, null);
+            if (c == null) return;
+
+            final ContentValues values = new ContentValues(1);
+            int converted = 0;
+            try {
+                while (c.moveToNext()) {
+                    final byte[] data = c.getBlob(1);
+                    if (ItemInfo.isRawBitmap(data)) continue;
+
+                    final Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length);
+                    if (bitmap == null) continue;
+
+                    values.clear();
+                    ItemInfo.writeBitmap(values, bitmap);
+                    bitmap.recycle();
+                    db.update(table, values, Favorites._ID + "=" + c.getLong(0), null);
+                    converted++;
+                }
+            } finally {
+                c.close();
+            }
+
+            if (LOGD) Log.d(LOG_TAG, "converted " + converted + " icons in " + table);
+        }
+
+        /**
+         * The icons table holds one row per launchable activity, replaced whenever
+         * the activity is cached again.
+         */
+        private void createIconsTable(SQLiteDatabase db) {
+            db.execSQL("CREATE TABLE icons (" +
+                    "_id INTEGER PRIMARY KEY," +
+                    "component TEXT UNIQUE ON CONFLICT REPLACE," +
+                    "lastUpdated INTEGER," +
+                    "theme TEXT," +
+                    "iconSize INTEGER," +
+                    "locale TEXT," +
+                    "title TEXT," +
+                    "icon BLOB" +
+                    ");");
+        }
         
         /**
          * Upgrade existing clock and photo frame widgets into their new widget
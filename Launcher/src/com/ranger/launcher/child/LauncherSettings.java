@@ -237,4 +237,60 @@ class LauncherSettings {
          */
         static final String DISPLAY_MODE = "displayMode";
     }
+
+    /**
+     * Persistent cache of application labels and icons, used by the applications
+     * loader to avoid hitting the PackageManager for unchanged packages.
+     */
+    static final class Icons implements BaseColumns {
+        /**
+         * The content:// style URL for this table. No notification is sent when
+         * the content changes, nobody observes it.
+         */
+        static final Uri CONTENT_URI = Uri.parse("content://" +
+                LauncherProvider.AUTHORITY + "/" + LauncherProvider.TABLE_ICONS +
+                "?" + LauncherProvider.PARAMETER_NOTIFY + "=false");
+
+        /**
+         * The flattened ComponentName of the activity.
+         * <P>Type: TEXT</P>
+         */
+        static final String COMPONENT = "component";
+
+        /**
+         * Last modification time of the package's source file when the entry was built.
+         * <P>Type: INTEGER</P>
+         */
+        static final String LAST_UPDATED = "lastUpdated";
+
+        /**
+         * The theme package the icon was rendered with.
+         * <P>Type: TEXT</P>
+         */
+        static final String THEME = "theme";
+
+        /**
+         * The size in pixels of the cached icon.
+         * <P>Type: INTEGER</P>
+         */
+        static final String ICON_SIZE = "iconSize";
+
+        /**
+         * The locale the label was resolved in.
+         * <P>Type: TEXT</P>
+         */
+        static final String LOCALE = "locale";
+
+        /**
+         * The activity label.
+         * <P>Type: TEXT</P>
+         */
+        static final String TITLE = "title";
+
+        /**
+         * The rendered icon.
+         * <P>Type: BLOB</P>
+         */
+        static final String ICON = "icon";
+    }
 }
@@ -0,0 +1,169 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.util.SparseArray;
+import android.view.View;
+
+/**
+ * Bitmaps of the pages of {@link AllAppsSlidingView}, drawn in place of the
+ * pages built while flinging through the drawer.
+ *
+ * A page is rendered once it settled. The cache is limited to a fraction of
+ * the memory class of the device, when it goes over the pages farthest from
+ * the current one are dropped first. The current page and its neighbours
+ * are always kept since they may be on screen.
+ *
+ * With an opaque drawer background the background is drawn into the
+ * snapshots, which then only need 16 bits per pixel.
+ */
+final class PageSnapshots {
+    // Share of the memory class the snapshots may use
+    private static final int BUDGET_FRACTION = 8;
+
+    private final SparseArray<Bitmap> mPages = new SparseArray<Bitmap>();
+    private final int mBudget;
+    private int mSize;
+
+    private int mBackground;
+    private boolean mHasBackground;
+
+    // A dropped snapshot kept to render the next one into
+    private Bitmap mSpare;
+    private final Canvas mCanvas = new Canvas();
+
+    PageSnapshots(Context context) {
+        final ActivityManager activityManager =
+                (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mBudget = activityManager.getMemoryClass() * 1024 * 1024 / BUDGET_FRACTION;
+    }
+
+    /**
+     * Sets the color of the drawer background, dropping every snapshot if
+     * it changed.
+     *
+     * @return True if the snapshots were dropped.
+     */
+    boolean setBackground(int color) {
+        if (mHasBackground && color == mBackground) {
+            return false;
+        }
+        clear();
+        mBackground = color;
+        mHasBackground = true;
+        return true;
+    }
+
+    /**
+     * @return The snapshot of a page if there is one of the specified size, null otherwise.
+     */
+    Bitmap get(int page, int width, int height) {
+        final Bitmap snapshot = mPages.get(page);
+        if (snapshot != null && snapshot.getWidth() == width && snapshot.getHeight() == height) {
+            return snapshot;
+        }
+        return null;
+    }
+
+    boolean contains(int page) {
+        return mPages.get(page) != null;
+    }
+
+    /**
+     * Renders the view of a page, then drops snapshots until the cache
+     * fits in its budget again.
+     */
+    void put(int page, View view, int currentPage) {
+        final int width = view.getWidth();
+        final int height = view.getHeight();
+        if (width <= 0 || height <= 0 || !mHasBackground) {
+            return;
+        }
+
+        final boolean opaque = Color.alpha(mBackground) == 255;
+        final Bitmap.Config config = opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888;
+
+        Bitmap snapshot = mSpare;
+        mSpare = null;
+        if (snapshot == null || snapshot.getWidth() != width || snapshot.getHeight() != height
+                || snapshot.getConfig() != config) {
+            try {
+                snapshot = Bitmap.createBitmap(width, height, config);
+            } catch (OutOfMemoryError e) {
+                return;
+            }
+        }
+        snapshot.eraseColor(opaque ? mBackground : 0);
+
+        final Canvas canvas = mCanvas;
+        canvas.setBitmap(snapshot);
+        view.draw(canvas);
+
+        remove(page);
+        mPages.put(page, snapshot);
+        mSize += getSize(snapshot);
+        trim(currentPage);
+    }
+
+    /**
+     * Drops every snapshot. They are not recycled, views may still be drawing them.
+     */
+    void clear() {
+        mPages.clear();
+        mSize = 0;
+        mSpare = null;
+    }
+
+    private void trim(int currentPage) {
+        while (mSize > mBudget) {
+            int farthest = -1;
+            int distance = 1;
+            for (int i = mPages.size() - 1; i >= 0; i--) {
+                final int d = Math.abs(mPages.keyAt(i) - currentPage);
+                if (d > distance) {
+                    distance = d;
+                    farthest = mPages.keyAt(i);
+                }
+            }
+            if (farthest < 0) {
+                break;
+            }
+            final Bitmap dropped = remove(farthest);
+            if (mSpare == null) {
+                mSpare = dropped;
+            }
+        }
+    }
+
+    private Bitmap remove(int page) {
+        final Bitmap snapshot = mPages.get(page);
+        if (snapshot != null) {
+            mPages.remove(page);
+            mSize -= getSize(snapshot);
+        }
+        return snapshot;
+    }
+
+    private static int getSize(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.ArrayList;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.MessageQueue;
+
+/**
+ * Thumbnails of the screens of the {@link Workspace}, shown by the preview
+ * popup.
+ *
+ * Thumbnails are kept between two openings of the popup. A screen whose
+ * content changed since its thumbnail was drawn, see
+ * {@link CellLayout#getContentVersion()}, is drawn again while the UI thread
+ * is idle, one screen per idle pass. Bitmaps are reused as long as the
+ * thumbnail size doesn't change. Thumbnails dropped by {@link #trim(int)}
+ * are only drawn again when the popup asks for them.
+ *
+ * Must only be used from the UI thread.
+ */
+final class ScreenThumbnails implements MessageQueue.IdleHandler {
+    // Time to wait after a change before drawing thumbnails again
+    private static final long UPDATE_DELAY = 1000;
+
+    private final Workspace mWorkspace;
+    private final Handler mHandler = new Handler();
+
+    private int mWidth;
+    private int mHeight;
+    private float mScale;
+
+    private final ArrayList<Bitmap> mThumbnails = new ArrayList<Bitmap>();
+    // Screen and content version each thumbnail was drawn from
+    private final ArrayList<CellLayout> mScreens = new ArrayList<CellLayout>();
+    private int[] mVersions = new int[0];
+    // Bitmaps of the right size not used by any screen
+    private final ArrayList<Bitmap> mSpares = new ArrayList<Bitmap>();
+
+    private final Canvas mCanvas = new Canvas();
+    private boolean mIdleHandlerAdded;
+
+    private final Runnable mUpdate = new Runnable() {
+        public void run() {
+            if (!mIdleHandlerAdded) {
+                mIdleHandlerAdded = true;
+                Looper.myQueue().addIdleHandler(ScreenThumbnails.this);
+            }
+        }
+    };
+
+    ScreenThumbnails(Workspace workspace) {
+        mWorkspace = workspace;
+    }
+
+    /**
+     * Returns the thumbnail of a screen, drawing it first if it is missing or
+     * out of date. The bitmap belongs to this object, callers must not
+     * recycle it.
+     *
+     * @param scale Scale of the thumbnail relative to the screen.
+     */
+    Bitmap get(int screen, int width, int height, float scale) {
+        if (width != mWidth || height != mHeight || scale != mScale) {
+            mWidth = width;
+            mHeight = height;
+            mScale = scale;
+            // Displayed bitmaps may still be drawn, let the GC take them
+            mThumbnails.clear();
+            mScreens.clear();
+            releaseSpares();
+        }
+
+        final int count = mWorkspace.getChildCount();
+        ensureScreens(count);
+        if (screen >= count) {
+            return null;
+        }
+        if (isDirty(screen)) {
+            draw(screen);
+        }
+        return mThumbnails.get(screen);
+    }
+
+    /**
+     * Called when the content of a screen changed, draws the out of date
+     * thumbnails once the workspace is left alone for a while.
+     */
+    void onScreenChanged() {
+        if (mWidth == 0) {
+            // Nothing was shown yet, thumbnails are drawn on demand
+            return;
+        }
+        mHandler.removeCallbacks(mUpdate);
+        mHandler.postDelayed(mUpdate, UPDATE_DELAY);
+    }
+
+    /**
+     * Drops every thumbnail but the one of the specified screen, to give
+     * memory back when the system runs low.
+     */
+    void trim(int keepScreen) {
+        // Displayed bitmaps may still be drawn, let the GC take them
+        for (int i = 0; i < mThumbnails.size(); i++) {
+            if (i != keepScreen) {
+                mThumbnails.set(i, null);
+                mScreens.set(i, null);
+            }
+        }
+        mSpares.clear();
+    }
+
+    public boolean queueIdle() {
+        if (!mWorkspace.isIdle()) {
+            // Keep waiting, the next idle pass may come after the animation
+            return true;
+        }
+
+        final int count = mWorkspace.getChildCount();
+        ensureScreens(count);
+        for (int i = 0; i < count; i++) {
+            // Screens without a thumbnail wait for the popup to ask for it
+            if (mThumbnails.get(i) != null && isDirty(i)) {
+                draw(i);
+                return true;
+            }
+        }
+
+        mIdleHandlerAdded = false;
+        releaseSpares();
+        return false;
+    }
+
+    private void ensureScreens(int count) {
+        while (mThumbnails.size() < count) {
+            mThumbnails.add(null);
+            mScreens.add(null);
+        }
+        while (mThumbnails.size() > count) {
+            final Bitmap removed = mThumbnails.remove(mThumbnails.size() - 1);
+            mScreens.remove(mScreens.size() - 1);
+            if (removed != null) {
+                mSpares.add(removed);
+            }
+        }
+        if (mVersions.length < count) {
+            final int[] versions = new int[count];
+            System.arraycopy(mVersions, 0, versions, 0, mVersions.length);
+            mVersions = versions;
+        }
+    }
+
+    /**
+     * Gives the bitmaps no screen uses back to the {@link BitmapPool}. They
+     * were never shown, or only by previews that were dismissed since.
+     */
+    private void releaseSpares() {
+        final ArrayList<Bitmap> spares = mSpares;
+        for (int i = spares.size() - 1; i >= 0; i--) {
+            BitmapPool.release(spares.get(i));
+        }
+        spares.clear();
+    }
+
+    private boolean isDirty(int screen) {
+        final CellLayout cell = (CellLayout) mWorkspace.getChildAt(screen);
+        return mThumbnails.get(screen) == null || mScreens.get(screen) != cell
+                || mVersions[screen] != cell.getContentVersion();
+    }
+
+    private void draw(int screen) {
+        final CellLayout cell = (CellLayout) mWorkspace.getChildAt(screen);
+
+        Bitmap bitmap = mThumbnails.get(screen);
+        if (bitmap == null) {
+            final int spares = mSpares.size();
+            bitmap = spares > 0 ? mSpares.remove(spares - 1) :
+                    BitmapPool.acquire(mWidth, mHeight, Bitmap.Config.ARGB_8888);
+            mThumbnails.set(screen, bitmap);
+        }
+        bitmap.eraseColor(0);
+
+        cell.setDrawingCacheEnabled(false);
+        final Canvas c = mCanvas;
+        c.setBitmap(bitmap);
+        final int saveCount = c.save();
+        c.scale(mScale, mScale);
+        c.translate(-cell.getLeftPadding(), -cell.getTopPadding());
+        cell.dispatchDraw(c);
+        c.restoreToCount(saveCount);
+
+        mScreens.set(screen, cell);
+        mVersions[screen] = cell.getContentVersion();
+    }
+}
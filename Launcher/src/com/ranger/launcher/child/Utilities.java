@@ -26,7 +26,6 @@ import android.graphics.drawable.Drawable;
 import android.graphics.drawable.PaintDrawable;
 import android.graphics.Bitmap;
 import android.graphics.LinearGradient;
-import android.graphics.Matrix;
 import android.graphics.PixelFormat;
 import android.graphics.Canvas;
 import android.graphics.PaintFlagsDrawFilter;
@@ -43,22 +42,35 @@ final class Utilities {
     private static int sIconWidth = -1;
     private static int sIconHeight = -1;
 
-    private static final Paint sPaint = new Paint();
-    private static final Rect sBounds = new Rect();
-    private static final Rect sOldBounds = new Rect();
-    private static Canvas sCanvas = new Canvas();
+    /**
+     * Scratch objects used to render thumbnails. Each thread gets its own set so
+     * icons can be rendered by several loader threads at once.
+     */
+    private static final class RenderState {
+        final Paint paint = new Paint();
+        final Rect bounds = new Rect();
+        final Rect oldBounds = new Rect();
+        final Canvas canvas = new Canvas();
 
-    static {
-        sCanvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
-                Paint.FILTER_BITMAP_FLAG));
+        RenderState() {
+            canvas.setDrawFilter(new PaintFlagsDrawFilter(Paint.DITHER_FLAG,
+                    Paint.FILTER_BITMAP_FLAG));
+        }
     }
 
+    private static final ThreadLocal<RenderState> sRenderState = new ThreadLocal<RenderState>() {
+        @Override
+        protected RenderState initialValue() {
+            return new RenderState();
+        }
+    };
+
     /**
      * Returns a Drawable representing the thumbnail of the specified Drawable.
      * The size of the thumbnail is defined by the dimension
      * android.R.dimen.launcher_application_icon_size.
      *
-     * This method is not thread-safe and should be invoked on the UI thread only.
+     * The icon itself must not be drawn concurrently from another thread.
      *
      * @param icon The icon to get a thumbnail of.
      * @param context The application's context.
@@ -92,6 +104,8 @@ final class Utilities {
         int iconHeight = icon.getIntrinsicHeight();
 
         if (width > 0 && height > 0) {
+            final RenderState state = sRenderState.get();
+            final Rect oldBounds = state.oldBounds;
             if (width < iconWidth || height < iconHeight || scale != 1.0f) {
                 final float ratio = (float) iconWidth / iconHeight;
 
@@ -103,32 +117,32 @@ final class Utilities {
 
                 final Bitmap.Config c = icon.getOpacity() != PixelFormat.OPAQUE ?
                             Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
-                final Bitmap thumb = Bitmap.createBitmap(sIconWidth, sIconHeight, c);
-                final Canvas canvas = sCanvas;
+                final Bitmap thumb = BitmapPool.acquire(sIconWidth, sIconHeight, c);
+                final Canvas canvas = state.canvas;
                 canvas.setBitmap(thumb);
                 // Copy the old bounds to restore them later
                 // If we were to do oldBounds = icon.getBounds(),
                 // the call to setBounds() that follows would
                 // change the same instance and we would lose the
                 // old bounds
-                sOldBounds.set(icon.getBounds());
+                oldBounds.set(icon.getBounds());
                 final int x = (sIconWidth - width) / 2;
                 final int y = (sIconHeight - height) / 2;
                 icon.setBounds(x, y, x + width, y + height);
                 icon.draw(canvas);
-                icon.setBounds(sOldBounds);
+                icon.setBounds(oldBounds);
                 icon = new FastBitmapDrawable(thumb);
             } else if (iconWidth < width && iconHeight < height) {
                 final Bitmap.Config c = Bitmap.Config.ARGB_8888;
-                final Bitmap thumb = Bitmap.createBitmap(sIconWidth, sIconHeight, c);
-                final Canvas canvas = sCanvas;
+                final Bitmap thumb = BitmapPool.acquire(sIconWidth, sIconHeight, c);
+                final Canvas canvas = state.canvas;
                 canvas.setBitmap(thumb);
-                sOldBounds.set(icon.getBounds());
+                oldBounds.set(icon.getBounds());
                 final int x = (width - iconWidth) / 2;
                 final int y = (height - iconHeight) / 2;
                 icon.setBounds(x, y, x + iconWidth, y + iconHeight);
                 icon.draw(canvas);
-                icon.setBounds(sOldBounds);
+                icon.setBounds(oldBounds);
                 icon = new FastBitmapDrawable(thumb);
             }
         }
@@ -141,7 +155,7 @@ final class Utilities {
      * The size of the thumbnail is defined by the dimension
      * android.R.dimen.launcher_application_icon_size.
      *
-     * This method is not thread-safe and should be invoked on the UI thread only.
+     * The bitmap itself must not be drawn concurrently from another thread.
      *
      * @param bitmap The bitmap to get a thumbnail of.
      * @param context The application's context.
@@ -163,6 +177,7 @@ final class Utilities {
         final int bitmapHeight = bitmap.getHeight();
 
         if (width > 0 && height > 0) {
+            final RenderState state = sRenderState.get();
             if (width < bitmapWidth || height < bitmapHeight) {
                 final float ratio = (float) bitmapWidth / bitmapHeight;
     
@@ -174,21 +189,21 @@ final class Utilities {
     
                 final Bitmap.Config c = (width == sIconWidth && height == sIconHeight) ?
                         bitmap.getConfig() : Bitmap.Config.ARGB_8888;
-                final Bitmap thumb = Bitmap.createBitmap(sIconWidth, sIconHeight, c);
-                final Canvas canvas = sCanvas;
-                final Paint paint = sPaint;
+                final Bitmap thumb = BitmapPool.acquire(sIconWidth, sIconHeight, c);
+                final Canvas canvas = state.canvas;
+                final Paint paint = state.paint;
                 canvas.setBitmap(thumb);
                 paint.setDither(false);
                 paint.setFilterBitmap(true);
-                sBounds.set((sIconWidth - width) / 2, (sIconHeight - height) / 2, width, height);
-                sOldBounds.set(0, 0, bitmapWidth, bitmapHeight);
-                canvas.drawBitmap(bitmap, sOldBounds, sBounds, paint);
+                state.bounds.set((sIconWidth - width) / 2, (sIconHeight - height) / 2, width, height);
+                state.oldBounds.set(0, 0, bitmapWidth, bitmapHeight);
+                canvas.drawBitmap(bitmap, state.oldBounds, state.bounds, paint);
                 return thumb;
             } else if (bitmapWidth < width || bitmapHeight < height) {
                 final Bitmap.Config c = Bitmap.Config.ARGB_8888;
-                final Bitmap thumb = Bitmap.createBitmap(sIconWidth, sIconHeight, c);
-                final Canvas canvas = sCanvas;
-                final Paint paint = sPaint;
+                final Bitmap thumb = BitmapPool.acquire(sIconWidth, sIconHeight, c);
+                final Canvas canvas = state.canvas;
+                final Paint paint = state.paint;
                 canvas.setBitmap(thumb);
                 paint.setDither(false);
                 paint.setFilterBitmap(true);
@@ -218,7 +233,7 @@ final class Utilities {
         float ratio=sIconHeight/(sIconHeight*scale);
         Bitmap original;
         try{
-            original= Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+            original= BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
         } catch (OutOfMemoryError e) {
             return icon;
         }
@@ -226,23 +241,11 @@ final class Utilities {
         cv.setBitmap(original);
         icon.setBounds(0,0, width, height);
         icon.draw(cv);
-        //This will not scale but will flip on the Y axis
-        Matrix matrix = new Matrix();
-        matrix.preScale(1, -1);
-        
-        //Create a Bitmap with the flip matix applied to it.
-        //We only want the bottom half of the image
-        Bitmap reflectionImage;
-        try{
-            reflectionImage= Bitmap.createBitmap(original, 0, height/2, width, height/2, matrix, false);
-        } catch (OutOfMemoryError e) {
-            return new FastBitmapDrawable(original);
-        }
 
         //Create a new bitmap with same width but taller to fit reflection
         Bitmap bitmapWithReflection;
         try{
-            bitmapWithReflection= Bitmap.createBitmap(width 
+            bitmapWithReflection= BitmapPool.acquire(width 
           , (int) (height*scale), Config.ARGB_8888);
         } catch (OutOfMemoryError e) {
             return new FastBitmapDrawable(original);
@@ -254,8 +257,16 @@ final class Utilities {
        //Draw in the gap
        //Paint deafaultPaint = new Paint();
        //canvas.drawRect(0, height, width, height + reflectionGap, deafaultPaint);
-       //Draw in the reflection
-       canvas.drawBitmap(reflectionImage,0, height-6, null);
+       //Draw in the reflection, the bottom half of the image flipped on the
+       //Y axis, straight from the original instead of through a copy
+       final int half = height/2;
+       final Rect src = new Rect(0, height-half, width, height);
+       final Rect dst = new Rect(0, 0, width, half);
+       canvas.save();
+       canvas.translate(0, height-6+half);
+       canvas.scale(1, -1);
+       canvas.drawBitmap(original, src, dst, null);
+       canvas.restore();
        
        //Create a shader that is a linear gradient that covers the reflection
        Paint paint = new Paint(); 
@@ -271,11 +282,14 @@ final class Utilities {
          bitmapWithReflection.getHeight(), paint); 
        //Draw in the original image
        canvas.drawBitmap(original, 0, 0, null);
-       original.recycle();
-       reflectionImage.recycle();
+       BitmapPool.release(original);
        try{
-           return new FastBitmapDrawable(Bitmap.createScaledBitmap(bitmapWithReflection,Math.round((float)sIconWidth*ratio),sIconHeight,true));
+           final Bitmap result = scaleBitmap(bitmapWithReflection,
+                   Math.round((float)sIconWidth*ratio), sIconHeight);
+           BitmapPool.release(bitmapWithReflection);
+           return new FastBitmapDrawable(result);
        }catch(OutOfMemoryError e){
+           BitmapPool.release(bitmapWithReflection);
            return icon;
        }
     }
@@ -295,7 +309,7 @@ final class Utilities {
         int height = sIconHeight;
         Bitmap original;
         try{
-             original= Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+             original= BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
         } catch (OutOfMemoryError e) {
             return icon;
         }
@@ -314,13 +328,33 @@ final class Utilities {
 	                height, paint);
         }
         try{
-        	Bitmap endImage=Bitmap.createScaledBitmap(original, (int)(width*scale), (int)(height*scale), true);
-        	original.recycle();
+        	Bitmap endImage=scaleBitmap(original, (int)(width*scale), (int)(height*scale));
+        	BitmapPool.release(original);
         	return new FastBitmapDrawable(endImage);
         } catch (OutOfMemoryError e) {
+            BitmapPool.release(original);
             return icon;
         }
     }
+
+    /**
+     * Draws a bitmap filtered into a pooled bitmap of the specified size.
+     * Unlike {@link Bitmap#createScaledBitmap} the result never is the
+     * source, which can then always be given back to the {@link BitmapPool}.
+     */
+    private static Bitmap scaleBitmap(Bitmap bitmap, int width, int height) {
+        final Bitmap scaled = BitmapPool.acquire(width, height, Bitmap.Config.ARGB_8888);
+        final RenderState state = sRenderState.get();
+        final Canvas canvas = state.canvas;
+        final Paint paint = state.paint;
+        canvas.setBitmap(scaled);
+        paint.setDither(false);
+        paint.setFilterBitmap(true);
+        state.oldBounds.set(0, 0, bitmap.getWidth(), bitmap.getHeight());
+        state.bounds.set(0, 0, width, height);
+        canvas.drawBitmap(bitmap, state.oldBounds, state.bounds, paint);
+        return scaled;
+    }
     /**
      * ADW: Use donut syule wallpaper rendering, we need this method to fit wallpaper bitmap
      */
@@ -0,0 +1,182 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/**
+ * Draws the wallpaper for the legacy rendering of {@link Workspace} as
+ * vertical tiles as wide as the workspace, instead of the whole wallpaper
+ * bitmap on every frame.
+ *
+ * Tiles are cut from the wallpaper when they first become visible, in
+ * RGB_565 when the wallpaper is opaque so they are copied straight to the
+ * window. Tiles more than one tile away from the visible ones are released.
+ * The wallpaper itself is not kept between draws, it is loaded through the
+ * {@link Source} whenever a tile has to be cut.
+ */
+final class WallpaperTiles {
+    /**
+     * Loads the wallpaper to cut tiles from.
+     */
+    interface Source {
+        Bitmap load();
+    }
+
+    private final Source mSource;
+    private boolean mHasWallpaper;
+    private Bitmap.Config mConfig;
+    private int mWidth;
+    private int mHeight;
+    private int mTileWidth;
+    private Bitmap[] mTiles = new Bitmap[0];
+
+    // A released tile kept to cut the next one into
+    private Bitmap mSpare;
+    private final Canvas mCanvas = new Canvas();
+
+    WallpaperTiles(Source source) {
+        mSource = source;
+    }
+
+    /**
+     * Sets the wallpaper to draw, null to release every tile. Only its size
+     * and opacity are kept.
+     */
+    void setWallpaper(Bitmap wallpaper) {
+        release();
+        mTiles = new Bitmap[0];
+        mTileWidth = 0;
+        mHasWallpaper = wallpaper != null;
+        if (wallpaper != null) {
+            mConfig = wallpaper.hasAlpha() ? Bitmap.Config.ARGB_8888 : Bitmap.Config.RGB_565;
+            mWidth = wallpaper.getWidth();
+            mHeight = wallpaper.getHeight();
+        }
+    }
+
+    boolean hasWallpaper() {
+        return mHasWallpaper;
+    }
+
+    boolean isOpaque() {
+        return mHasWallpaper && mConfig == Bitmap.Config.RGB_565;
+    }
+
+    /**
+     * Draws the part of the wallpaper visible in the viewport.
+     *
+     * @param left Position of the left edge of the wallpaper, in the canvas coordinates.
+     * @param top Position of the top edge of the wallpaper.
+     * @param viewportLeft Left edge of the visible part of the canvas.
+     * @param viewportWidth Width of the visible part of the canvas, also the width of a tile.
+     */
+    void draw(Canvas canvas, float left, float top, int viewportLeft, int viewportWidth,
+            Paint paint) {
+        if (!mHasWallpaper || viewportWidth <= 0) {
+            return;
+        }
+
+        final int width = mWidth;
+        if (viewportWidth != mTileWidth) {
+            release();
+            mTileWidth = viewportWidth;
+            mTiles = new Bitmap[(width + viewportWidth - 1) / viewportWidth];
+        }
+
+        final int tileWidth = mTileWidth;
+        final int start = Math.max((int) Math.floor(viewportLeft - left), 0);
+        final int end = Math.min((int) Math.ceil(viewportLeft + viewportWidth - left), width);
+        if (start >= end) {
+            return;
+        }
+        final int first = start / tileWidth;
+        final int last = (end - 1) / tileWidth;
+
+        final Bitmap[] tiles = mTiles;
+        for (int i = 0; i < tiles.length; i++) {
+            if ((i < first - 1 || i > last + 1) && tiles[i] != null) {
+                recycleTile(tiles[i]);
+                tiles[i] = null;
+            }
+        }
+
+        Bitmap wallpaper = null;
+        for (int i = first; i <= last; i++) {
+            if (tiles[i] == null) {
+                if (wallpaper == null) {
+                    wallpaper = mSource.load();
+                    if (wallpaper == null) {
+                        return;
+                    }
+                }
+                tiles[i] = createTile(wallpaper, i);
+            }
+            canvas.drawBitmap(tiles[i], left + i * tileWidth, top, paint);
+        }
+    }
+
+    /**
+     * Releases every tile. They are cut again on the next draw.
+     */
+    void release() {
+        final Bitmap[] tiles = mTiles;
+        for (int i = 0; i < tiles.length; i++) {
+            if (tiles[i] != null) {
+                tiles[i].recycle();
+                tiles[i] = null;
+            }
+        }
+        if (mSpare != null) {
+            mSpare.recycle();
+            mSpare = null;
+        }
+    }
+
+    private Bitmap createTile(Bitmap wallpaper, int index) {
+        final int x = index * mTileWidth;
+        final int width = Math.min(mTileWidth, mWidth - x);
+        final int height = mHeight;
+
+        Bitmap tile = mSpare;
+        mSpare = null;
+        if (tile == null || tile.getWidth() != width || tile.getHeight() != height) {
+            if (tile != null) {
+                tile.recycle();
+            }
+            tile = Bitmap.createBitmap(width, height, mConfig);
+        } else if (tile.hasAlpha()) {
+            tile.eraseColor(0);
+        }
+
+        // Not recycled, the wallpaper manager keeps it cached
+        final Canvas canvas = mCanvas;
+        canvas.setBitmap(tile);
+        canvas.drawBitmap(wallpaper, -x, 0, null);
+        return tile;
+    }
+
+    private void recycleTile(Bitmap tile) {
+        if (mSpare == null) {
+            mSpare = tile;
+        } else {
+            tile.recycle();
+        }
+    }
+}
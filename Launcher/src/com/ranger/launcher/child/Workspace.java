@@ -39,7 +39,6 @@ import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Paint;
-import android.graphics.PixelFormat;
 import android.graphics.Rect;
 import android.graphics.RectF;
 import android.graphics.drawable.BitmapDrawable;
@@ -109,11 +108,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 
 	private Launcher mLauncher;
 	private DragController mDragger;
-	/**
-	 * Cache of vacant cells, used during drag events and invalidated as needed.
-	 */
-	private CellLayout.CellInfo mVacantCache = null;
-
 	private final int[] mTempCell = new int[2];
 	private final int[] mTempEstimate = new int[2];
 
@@ -142,7 +136,15 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	private boolean mWallpaperLoaded;
 	private boolean lwpSupport = true;
 	private boolean wallpaperHack = true;
-	private BitmapDrawable mWallpaperDrawable;
+	// The wallpaper bitmap itself is not kept, only the tiles cut from it
+	private final WallpaperTiles mWallpaperTiles = new WallpaperTiles(new WallpaperTiles.Source() {
+		public Bitmap load() {
+			final Drawable drawable = mWallpaperManager.getDrawable();
+			return drawable instanceof BitmapDrawable ? ((BitmapDrawable) drawable).getBitmap() : null;
+		}
+	});
+	// Screen thumbnails for the preview popup
+	private final ScreenThumbnails mThumbnails = new ScreenThumbnails(this);
 	// ADW: speed for desktop transitions
 	private int mScrollingSpeed = 600;
 	// ADW: bounce scroll
@@ -160,6 +162,15 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	private final int mAnimationDuration = 400;
 	private final int[][] distro = { { 1 }, { 2 }, { 1, 2 }, { 2, 2 }, { 2, 1, 2 }, { 2, 2, 2 }, { 2, 3, 2 }, { 3, 2, 3 }, { 3, 3, 3 } };
 	private float previewScale = 1;
+	// ADW: sense preview of each screen, not counting the scroll position.
+	// Only recomputed when the size, the screen count or the scale changes
+	private RectF[] mPreviewRects = new RectF[0];
+	private int mPreviewRectsWidth;
+	private int mPreviewRectsHeight;
+	private float mPreviewRectsScale;
+	// Scratch rectangles for the sense animation frames
+	private final RectF mPreviewRect = new RectF();
+	private final RectF mPreviewFrame = new RectF();
 	// Wysie: Multitouch controller
 	private MultiTouchController<Object> multiTouchController;
 	// Wysie: Values taken from CyanogenMod (Donut era) Browser
@@ -351,8 +362,8 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	 * @param currentScreen
 	 */
 	void setCurrentScreen(int currentScreen) {
-		clearVacantCache();
 		mCurrentScreen = Math.max(0, Math.min(currentScreen, getChildCount() - 1));
+		mLauncher.bindPlaceholderWidgets(mCurrentScreen);
 		scrollTo(mCurrentScreen * getWidth(), 0);
 		// ADW: dots
 		indicatorLevels(mCurrentScreen);
@@ -462,7 +473,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		if (x >= mDesktopColumns || y >= mDesktopRows) {
 			return;
 		}
-		clearVacantCache();
 
 		final CellLayout group = (CellLayout) getChildAt(screen);
 		CellLayout.LayoutParams lp = (CellLayout.LayoutParams) child.getLayoutParams();
@@ -504,13 +514,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		return null;
 	}
 
-	private void clearVacantCache() {
-		if (mVacantCache != null) {
-			mVacantCache.clearVacantCells();
-			mVacantCache = null;
-		}
-	}
-
 	/**
 	 * Registers the specified listener on each screen contained in this
 	 * workspace.
@@ -591,7 +594,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		// ADW: hack to use old rendering
 		if (!lwpSupport && mWallpaperLoaded) {
 			// return !mWallpaper.hasAlpha();
-			return mWallpaperDrawable.getOpacity() == PixelFormat.OPAQUE;
+			return mWallpaperTiles.isOpaque();
 		} else {
 			return false;
 		}
@@ -601,7 +604,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	protected void dispatchDraw(Canvas canvas) {
 		boolean restore = false;
 		// ADW: If using old wallpaper rendering method...
-		if (!lwpSupport && mWallpaperDrawable != null) {
+		if (!lwpSupport && mWallpaperTiles.hasWallpaper()) {
 			float x = getScrollX() * mWallpaperOffset;
 			if (x + mWallpaperWidth < getRight() - getLeft()) {
 				x = getRight() - getLeft() - mWallpaperWidth;
@@ -616,7 +619,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 			// ADW lets center the wallpaper when there's only one screen...
 			if (!mWallpaperScroll || getChildCount() == 1)
 				x = (getScrollX() - (mWallpaperWidth / 2) + (getRight() / 2));
-			canvas.drawBitmap(mWallpaperDrawable.getBitmap(), x, (getBottom() - mWallpaperHeight) / 2, mPaint);
+			mWallpaperTiles.draw(canvas, x, (getBottom() - mWallpaperHeight) / 2, getScrollX(), getWidth(), mPaint);
 		}
 		if (!mSensemode) {
 			// If the all apps drawer is open and the drawing region for the
@@ -655,6 +658,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 				}
 			}
 		} else {
+			if (FrameAllocations.ENABLED) FrameAllocations.begin();
 			long currentTime;
 			if (startTime == 0) {
 				startTime = SystemClock.uptimeMillis();
@@ -680,6 +684,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 			for (int i = 0; i < count; i++) {
 				drawChild(canvas, getChildAt(i), getDrawingTime());
 			}
+			if (FrameAllocations.ENABLED) FrameAllocations.end("Workspace previews");
 		}
 		float x = getScrollX();
 		if (pids.length > 0 && AlmostNexusSettingsHelper.getDebugShowMemUsage(mLauncher)) {
@@ -723,12 +728,7 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		}
 		// ADW: measure wallpaper when using old rendering
 		if (!lwpSupport) {
-			if (mWallpaperLoaded) {
-				mWallpaperLoaded = false;
-
-				mWallpaperWidth = mWallpaperDrawable.getIntrinsicWidth();
-				mWallpaperHeight = mWallpaperDrawable.getIntrinsicHeight();
-			}
+			mWallpaperLoaded = false;
 
 			final int wallpaperWidth = mWallpaperWidth;
 			mWallpaperOffset = wallpaperWidth > width ? (count * width - wallpaperWidth) / ((count - 1) * (float) width) : 1.0f;
@@ -1105,10 +1105,11 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 
 	void snapToScreen(int whichScreen) {
 		// if (!mScroller.isFinished()) return;
-		clearVacantCache();
+		whichScreen = Math.max(0, Math.min(whichScreen, getChildCount() - 1));
+		// ADW: create the widgets around the target before they show up
+		mLauncher.bindPlaceholderWidgets(whichScreen);
 		enableChildrenCache();
 
-		whichScreen = Math.max(0, Math.min(whichScreen, getChildCount() - 1));
 		boolean changingScreens = whichScreen != mCurrentScreen;
 
 		mNextScreen = whichScreen;
@@ -1161,7 +1162,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		current.onDragChild(child);
 		mDragger.startDrag(child, this, child.getTag(), DragController.DRAG_ACTION_MOVE);
 		invalidate();
-		clearVacantCache();
 	}
 
 	@Override
@@ -1232,14 +1232,12 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	}
 
 	public void onDragEnter(DragSource source, int x, int y, int xOffset, int yOffset, Object dragInfo) {
-		clearVacantCache();
 	}
 
 	public void onDragOver(DragSource source, int x, int y, int xOffset, int yOffset, Object dragInfo) {
 	}
 
 	public void onDragExit(DragSource source, int x, int y, int xOffset, int yOffset, Object dragInfo) {
-		clearVacantCache();
 	}
 
 	private void onDropExternal(int x, int y, Object dragInfo, CellLayout cellLayout) {
@@ -1303,13 +1301,9 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		final CellLayout.CellInfo cellInfo = mDragInfo;
 		final int spanX = cellInfo == null ? 1 : cellInfo.spanX;
 		final int spanY = cellInfo == null ? 1 : cellInfo.spanY;
+		final View ignoreView = cellInfo == null ? null : cellInfo.cell;
 
-		if (mVacantCache == null) {
-			final View ignoreView = cellInfo == null ? null : cellInfo.cell;
-			mVacantCache = layout.findAllVacantCells(null, ignoreView);
-		}
-
-		return mVacantCache.findCellForSpan(mTempEstimate, spanX, spanY, false);
+		return layout.findCellForSpan(mTempEstimate, spanX, spanY, ignoreView);
 	}
 
 	/**
@@ -1347,13 +1341,8 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	 * Calculate the nearest cell where the given object would be dropped.
 	 */
 	private int[] estimateDropCell(int pixelX, int pixelY, int spanX, int spanY, View ignoreView, CellLayout layout, int[] recycle) {
-		// Create vacant cell cache if none exists
-		if (mVacantCache == null) {
-			mVacantCache = layout.findAllVacantCells(null, ignoreView);
-		}
-
 		// Find the best target drop location
-		return layout.findNearestVacantArea(pixelX, pixelY, spanX, spanY, mVacantCache, recycle);
+		return layout.findNearestVacantArea(pixelX, pixelY, spanX, spanY, ignoreView, recycle);
 	}
 
 	void setLauncher(Launcher launcher) {
@@ -1375,8 +1364,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	}
 
 	public void onDropCompleted(View target, boolean success) {
-		// This is a bit expensive but safe
-		clearVacantCache();
 		if (success) {
 			if (target != this && mDragInfo != null) {
 				final CellLayout cellLayout = (CellLayout) getChildAt(mDragInfo.screen);
@@ -1395,7 +1382,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	}
 
 	public void scrollLeft() {
-		clearVacantCache();
 		if (mNextScreen != INVALID_SCREEN) {
 			mCurrentScreen = mNextScreen;
 			mNextScreen = INVALID_SCREEN;
@@ -1406,7 +1392,6 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	}
 
 	public void scrollRight() {
-		clearVacantCache();
 		if (mNextScreen != INVALID_SCREEN) {
 			mCurrentScreen = mNextScreen;
 			mNextScreen = INVALID_SCREEN;
@@ -1487,6 +1472,36 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		return null;
 	}
 
+	/**
+	 * @return the thumbnails of the screens, kept up to date while idle
+	 */
+	ScreenThumbnails getThumbnails() {
+		return mThumbnails;
+	}
+
+	/**
+	 * Drops the thumbnails of every screen but the current one, the others
+	 * are drawn again when the preview asks for them.
+	 */
+	void releaseThumbnails() {
+		mThumbnails.trim(mCurrentScreen);
+	}
+
+	/**
+	 * Called by a screen when its children changed
+	 */
+	void onScreenChanged() {
+		mThumbnails.onScreenChanged();
+	}
+
+	/**
+	 * @return true if the workspace is neither scrolling nor animating
+	 */
+	boolean isIdle() {
+		return mTouchState == TOUCH_STATE_REST && mScroller.isFinished() && mNextScreen == INVALID_SCREEN
+				&& !mSensemode;
+	}
+
 	/**
 	 * Unlocks the SlidingDrawer so that touch events are processed.
 	 * 
@@ -1623,6 +1638,24 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		}
 	}
 
+	/**
+	 * Shows the current titles of the specified shortcuts.
+	 */
+	void updateShortcutTitles(ArrayList<ApplicationInfo> shortcuts) {
+		final int count = getChildCount();
+		for (int i = 0; i < count; i++) {
+			final CellLayout layout = (CellLayout) getChildAt(i);
+			int childCount = layout.getChildCount();
+			for (int j = 0; j < childCount; j++) {
+				final View view = layout.getChildAt(j);
+				final Object tag = view.getTag();
+				if (view instanceof TextView && tag instanceof ApplicationInfo && shortcuts.contains(tag)) {
+					((TextView) view).setText(((ApplicationInfo) tag).title);
+				}
+			}
+		}
+	}
+
 	void moveToDefaultScreen() {
 		snapToScreen(mDefaultScreen);
 		getChildAt(mDefaultScreen).requestFocus();
@@ -1682,13 +1715,16 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 	 */
 	public void setWallpaper(boolean fromIntentReceiver) {
 		if (mWallpaperManager.getWallpaperInfo() != null || !wallpaperHack) {
-			mWallpaperDrawable = null;
+			mWallpaperTiles.setWallpaper(null);
 			mWallpaperLoaded = false;
 			lwpSupport = true;
 		} else {
-			if (fromIntentReceiver || mWallpaperDrawable == null) {
+			if (fromIntentReceiver || !mWallpaperTiles.hasWallpaper()) {
 				final Drawable drawable = mWallpaperManager.getDrawable();
-				mWallpaperDrawable = (BitmapDrawable) drawable;
+				final Bitmap wallpaper = ((BitmapDrawable) drawable).getBitmap();
+				mWallpaperWidth = drawable.getIntrinsicWidth();
+				mWallpaperHeight = drawable.getIntrinsicHeight();
+				mWallpaperTiles.setWallpaper(wallpaper);
 				mWallpaperLoaded = true;
 			}
 			lwpSupport = false;
@@ -1698,6 +1734,14 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		requestLayout();
 	}
 
+	/**
+	 * Releases the wallpaper tiles, they are cut again from the wallpaper
+	 * manager on the next draw.
+	 */
+	void releaseWallpaperTiles() {
+		mWallpaperTiles.release();
+	}
+
 	public void setWallpaperHack(boolean hack) {
 		wallpaperHack = hack;
 		if (wallpaperHack && mWallpaperManager.getWallpaperInfo() == null) {
@@ -1769,8 +1813,11 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		if (mSensemode) {
 			if (isAnimating || mStatus == SENSE_OPEN) {
 				long currentTime = SystemClock.uptimeMillis() - startTime;
-				Rect r1 = new Rect(0, 0, child.getWidth(), child.getHeight());
-				RectF r2 = getScaledChild(child);
+				final int childWidth = child.getWidth();
+				final int childHeight = child.getHeight();
+				final RectF r2 = mPreviewRect;
+				r2.set(getScaledChild(indexOfChild(child)));
+				r2.offset(getScrollX(), 0);
 				float x = 0;
 				float y = 0;
 				float width = 0;
@@ -1795,12 +1842,13 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 					height = r2.bottom;
 					alpha = 100;
 				}
-				float scale = ((width - x) / r1.width());
+				float scale = ((width - x) / childWidth);
 				canvas.save();
 				canvas.translate(x, y);
 				canvas.scale(scale, scale);
 				mPaint.setAlpha((int) alpha);
-				canvas.drawRoundRect(new RectF(r1.left + 5, r1.top + 5, r1.right - 5, r1.bottom - 5), 15f, 15f, mPaint);
+				mPreviewFrame.set(5, 5, childWidth - 5, childHeight - 5);
+				canvas.drawRoundRect(mPreviewFrame, 15f, 15f, mPaint);
 				mPaint.setAlpha(255);
 				child.draw(canvas);
 				canvas.restore();
@@ -1844,11 +1892,33 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		return change / 2.0f * ((time -= 2.0f) * time * time + 2.0f) + begin;
 	}
 
-	private RectF getScaledChild(View child) {
+	/**
+	 * @return The sense preview of a screen, without the scroll offset. Do
+	 *         not modify, it is reused.
+	 */
+	private RectF getScaledChild(int index) {
 		final int count = getChildCount();
 		final int width = getWidth();// r - l;
 		final int height = getHeight();// b-t;
-		int xpos = getScrollX();
+		if (mPreviewRects.length != count || mPreviewRectsWidth != width || mPreviewRectsHeight != height
+				|| mPreviewRectsScale != previewScale) {
+			computePreviewRects(count, width, height);
+		}
+		return mPreviewRects[index];
+	}
+
+	private void computePreviewRects(int count, int width, int height) {
+		if (mPreviewRects.length != count) {
+			mPreviewRects = new RectF[count];
+			for (int i = 0; i < count; i++) {
+				mPreviewRects[i] = new RectF();
+			}
+		}
+		mPreviewRectsWidth = width;
+		mPreviewRectsHeight = height;
+		mPreviewRectsScale = previewScale;
+
+		int xpos = 0;
 		int ypos = 0;
 
 		int distro_set = count - 1;
@@ -1861,26 +1931,24 @@ public class Workspace extends WidgetSpace implements DropTarget, DragSource, Dr
 		for (int rows = 0; rows < distro[distro_set].length; rows++) {
 			final int leftMargin = (width / 2) - ((childWidth * distro[distro_set][rows]) / 2);
 			for (int columns = 0; columns < distro[distro_set][rows]; columns++) {
-				if (childPos > getChildCount() - 1)
+				if (childPos > count - 1)
 					break;
-				final View c = getChildAt(childPos);
-				if (child == c) {
-					return new RectF(leftMargin + xpos, topMargin + ypos, leftMargin + xpos + childWidth, topMargin + ypos + childHeight);
-				} else {
-					xpos += childWidth;
-				}
+				mPreviewRects[childPos].set(leftMargin + xpos, topMargin + ypos, leftMargin + xpos + childWidth, topMargin + ypos + childHeight);
+				xpos += childWidth;
 				childPos++;
 			}
-			xpos = getScrollX();
+			xpos = 0;
 			ypos += childHeight;
 		}
-		return new RectF();
+		for (; childPos < count; childPos++) {
+			mPreviewRects[childPos].setEmpty();
+		}
 	}
 
 	private void findClickedPreview(float x, float y) {
 		for (int i = 0; i < getChildCount(); i++) {
-			RectF tmp = getScaledChild(getChildAt(i));
-			if (tmp.contains(x + getScrollX(), y + getScrollY())) {
+			RectF tmp = getScaledChild(i);
+			if (tmp.contains(x, y + getScrollY())) {
 				if (mCurrentScreen != i) {
 					mLauncher.dismissPreviews();
 					mScroller.setInterpolator(new ElasticInterpolator(0));
@@ -24,6 +24,13 @@ public class AppCatalogueFilter {
 		return result;
 	}
 
+	/**
+	 * @return The catalogue applications must belong to, null for all of them.
+	 */
+	public AppCatalogueFilters.Catalogue getCatalogue() {
+		return mCatalogue;
+	}
+
 	public boolean isUserGroup() {
 		return mCatalogue != null;
 	}
@@ -44,11 +44,29 @@ public final class AppCatalogueFilters {
 		private final int mIndex;
 		private final SharedPreferences mPreferences;
 		private final String mTitle;
+		private volatile int mModificationCount;
+
+		// SharedPreferences only keeps a weak reference to its listeners
+		private final SharedPreferences.OnSharedPreferenceChangeListener mListener =
+				new SharedPreferences.OnSharedPreferenceChangeListener() {
+			public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+				mModificationCount++;
+			}
+		};
 
 		public Catalogue(String title, int index) {
 			mIndex = index;
 			mTitle = title;
 			mPreferences = mContext.getSharedPreferences(APP_GROUP_PREFS_PREFIX + index, 0);
+			mPreferences.registerOnSharedPreferenceChangeListener(mListener);
+		}
+
+		/**
+		 * @return A number changing every time an application is added to or
+		 *         removed from this catalogue.
+		 */
+		public int getModificationCount() {
+			return mModificationCount;
 		}
 
 		public String getTitle() {
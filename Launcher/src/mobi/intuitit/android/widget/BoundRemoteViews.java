@@ -1,7 +1,7 @@
 package mobi.intuitit.android.widget;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
 
 import android.app.PendingIntent;
 import android.content.Context;
@@ -13,76 +13,434 @@ import android.graphics.Rect;
 import android.net.Uri;
 import android.os.Parcel;
 import android.os.Parcelable;
+import android.text.TextUtils;
 import android.view.View;
 import android.view.View.OnClickListener;
 
 public class BoundRemoteViews extends SimpleRemoteViews {
 
+	/**
+	 * Values of the bindings for every row of the cursor, one column per
+	 * binding, addressed by the column of the action and the row.
+	 */
 	class CursorCache {
 
-		final ArrayList<HashMap<Action, Object>> mCache;
-		final HashMap<Action, Object> mDefaults;
-
-		public Object getValueOrDefault(int index, Action target) {
-			HashMap<Action, Object> row = mCache.get(index);
-			Object result = null;
-			if (row.containsKey(target))
-				 result = row.get(target);
-			if (result == null)
-				result = mDefaults.get(target);
-			return result;
-		}
+		private final Column[] mColumns;
+		private final Object[] mDefaults;
+		private int mCount;
 
 		public CursorCache(Cursor cursor, Context context) {
-			mCache = new ArrayList<HashMap<Action,Object>>(cursor.getCount());
-			mDefaults = new HashMap<Action, Object>();
-
 			final ArrayList<Action> actions = BoundRemoteViews.this.mActions;
+			final int capacity = cursor.getCount();
+			final ArrayList<Column> columns = new ArrayList<Column>();
+			final ArrayList<Object> defaults = new ArrayList<Object>();
 
 			for (int i = 0; i < actions.size(); i++) {
 				Action act = actions.get(i);
-				if (act instanceof BindingAction)
-					mDefaults.put(act, ((BindingAction)act).getDefault(context));
-				else if (act instanceof SetBoundOnClickIntent)
-					mDefaults.put(act, null);
+				if (act instanceof BindingAction) {
+					final BindingAction binding = (BindingAction) act;
+					binding.mColumn = columns.size();
+					columns.add(binding.createColumn(capacity));
+					defaults.add(binding.getDefault(context));
+				} else if (act instanceof SetBoundOnClickIntent) {
+					final SetBoundOnClickIntent click = (SetBoundOnClickIntent) act;
+					click.mColumn = columns.size();
+					columns.add(new ObjectColumn(ReflectionAction.STRING, click.mExtraCursorIndex, capacity));
+					defaults.add(null);
+				}
 			}
+			mColumns = columns.toArray(new Column[columns.size()]);
+			mDefaults = defaults.toArray();
 
-			cursor.moveToFirst();
-
-			while(!cursor.isAfterLast()) {
-
-				HashMap<Action, Object> row = new HashMap<Action, Object>();
+			append(cursor);
+		}
 
+		public Object getValueOrDefault(int index, int column) {
+			final Object result = mColumns[column].get(index);
+			return result != null ? result : mDefaults[column];
+		}
 
-				for (int i = 0; i < actions.size(); i++) {
-					Action act = actions.get(i);
-					if (act instanceof BindingAction)
-						row.put(act, ((BindingAction)act).readValue(cursor, context));
-					else if (act instanceof SetBoundOnClickIntent)
-						row.put(act, ((SetBoundOnClickIntent)act).readValue(cursor));
-				}
+		public int getCount() {
+			return mCount;
+		}
 
-				mCache.add(row);
+		/**
+		 * Reads the rows of the cursor past the ones already cached.
+		 */
+		public void append(Cursor cursor) {
+			final Column[] columns = mColumns;
+			final int count = cursor.getCount();
+			for (int i = columns.length - 1; i >= 0; i--)
+				columns[i].ensureCapacity(count);
+
+			if (!cursor.moveToPosition(mCount))
+				return;
+			while (!cursor.isAfterLast()) {
+				for (int i = columns.length - 1; i >= 0; i--)
+					columns[i].read(cursor, mCount);
+				mCount++;
 				cursor.moveToNext();
 			}
 		}
 
-		private void dropCacheRow(HashMap<Action,Object> row) {
-			for(Action key : row.keySet()) {
-				Object value = row.get(key);
-				if (value instanceof Bitmap) {
-					((Bitmap)value).recycle();
+		/**
+		 * Reads again every cached row whose values changed in the cursor,
+		 * then the rows past the ones already cached.
+		 *
+		 * @return False if the cursor has less rows than the cache, which is
+		 *         left untouched.
+		 */
+		public boolean refresh(Cursor cursor) {
+			if (cursor.getCount() < mCount)
+				return false;
+			final Column[] columns = mColumns;
+			for (int row = 0; row < mCount; row++) {
+				if (!cursor.moveToPosition(row))
+					return false;
+				if (!matches(cursor, row)) {
+					for (int i = columns.length - 1; i >= 0; i--)
+						columns[i].read(cursor, row);
 				}
 			}
-			row.clear();
+			append(cursor);
+			return true;
+		}
+
+		private boolean matches(Cursor cursor, int row) {
+			final Column[] columns = mColumns;
+			for (int i = columns.length - 1; i >= 0; i--) {
+				if (!columns[i].matches(cursor, row))
+					return false;
+			}
+			return true;
 		}
 
 		public void clear() {
-			for(HashMap<Action, Object> row : mCache) {
-				dropCacheRow(row);
+			for (int i = mColumns.length - 1; i >= 0; i--) {
+				mColumns[i].clear();
+				if (mDefaults[i] instanceof Bitmap)
+					((Bitmap) mDefaults[i]).recycle();
+				mDefaults[i] = null;
+			}
+			mCount = 0;
+		}
+	}
+
+	/**
+	 * Values of one binding, kept in an array of its type. Rows whose value
+	 * couldn't be read use the default of the binding.
+	 */
+	static abstract class Column {
+		final int mType;
+		final int mCursorIndex;
+		private boolean[] mMissing = new boolean[0];
+
+		Column(int type, int cursorIndex) {
+			mType = type;
+			mCursorIndex = cursorIndex;
+		}
+
+		final void read(Cursor cursor, int row) {
+			try {
+				mMissing[row] = !readValue(cursor, row);
+			} catch (Exception e) {
+				mMissing[row] = true;
+			}
+		}
+
+		final Object get(int row) {
+			return mMissing[row] ? null : getValue(row);
+		}
+
+		final boolean matches(Cursor cursor, int row) {
+			try {
+				return !mMissing[row] && matchesValue(cursor, row);
+			} catch (Exception e) {
+				return mMissing[row];
+			}
+		}
+
+		final void ensureCapacity(int capacity) {
+			if (capacity > mMissing.length) {
+				final boolean[] missing = new boolean[capacity];
+				System.arraycopy(mMissing, 0, missing, 0, mMissing.length);
+				mMissing = missing;
+				resize(capacity);
+			}
+		}
+
+		void clear() {
+		}
+
+		/**
+		 * @return False if the value is missing.
+		 */
+		abstract boolean readValue(Cursor cursor, int row);
+
+		abstract Object getValue(int row);
+
+		abstract boolean matchesValue(Cursor cursor, int row);
+
+		abstract void resize(int capacity);
+	}
+
+	static final class IntColumn extends Column {
+		private int[] mValues = new int[0];
+
+		IntColumn(int type, int cursorIndex, int capacity) {
+			super(type, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			mValues[row] = readInt(cursor);
+			return true;
+		}
+
+		private int readInt(Cursor cursor) {
+			if (mType == ReflectionAction.CHAR)
+				return cursor.getString(mCursorIndex).charAt(0);
+			return cursor.getInt(mCursorIndex);
+		}
+
+		@Override
+		Object getValue(int row) {
+			final int value = mValues[row];
+			switch (mType) {
+				case ReflectionAction.BYTE:
+					return (byte) value;
+				case ReflectionAction.SHORT:
+					return (short) value;
+				case ReflectionAction.CHAR:
+					return (char) value;
+				default:
+					return value;
+			}
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return mValues[row] == readInt(cursor);
+		}
+
+		@Override
+		void resize(int capacity) {
+			final int[] values = new int[capacity];
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mValues = values;
+		}
+	}
+
+	static final class LongColumn extends Column {
+		private long[] mValues = new long[0];
+
+		LongColumn(int cursorIndex, int capacity) {
+			super(ReflectionAction.LONG, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			mValues[row] = cursor.getLong(mCursorIndex);
+			return true;
+		}
+
+		@Override
+		Object getValue(int row) {
+			return mValues[row];
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return mValues[row] == cursor.getLong(mCursorIndex);
+		}
+
+		@Override
+		void resize(int capacity) {
+			final long[] values = new long[capacity];
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mValues = values;
+		}
+	}
+
+	static final class FloatColumn extends Column {
+		private float[] mValues = new float[0];
+
+		FloatColumn(int cursorIndex, int capacity) {
+			super(ReflectionAction.FLOAT, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			mValues[row] = cursor.getFloat(mCursorIndex);
+			return true;
+		}
+
+		@Override
+		Object getValue(int row) {
+			return mValues[row];
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return mValues[row] == cursor.getFloat(mCursorIndex);
+		}
+
+		@Override
+		void resize(int capacity) {
+			final float[] values = new float[capacity];
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mValues = values;
+		}
+	}
+
+	static final class DoubleColumn extends Column {
+		private double[] mValues = new double[0];
+
+		DoubleColumn(int cursorIndex, int capacity) {
+			super(ReflectionAction.DOUBLE, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			mValues[row] = cursor.getDouble(mCursorIndex);
+			return true;
+		}
+
+		@Override
+		Object getValue(int row) {
+			return mValues[row];
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return mValues[row] == cursor.getDouble(mCursorIndex);
+		}
+
+		@Override
+		void resize(int capacity) {
+			final double[] values = new double[capacity];
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mValues = values;
+		}
+	}
+
+	/**
+	 * Strings, and URIs parsed from them.
+	 */
+	static final class ObjectColumn extends Column {
+		private String[] mStrings = new String[0];
+		private Object[] mValues = new Object[0];
+
+		ObjectColumn(int type, int cursorIndex, int capacity) {
+			super(type, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			final String string = cursor.getString(mCursorIndex);
+			mStrings[row] = string;
+			switch (mType) {
+				case ReflectionAction.STRING:
+				case ReflectionAction.CHAR_SEQUENCE:
+					mValues[row] = string;
+					break;
+				case ReflectionAction.URI:
+				case ReflectionAction.BITMAP_URI:
+					mValues[row] = Uri.parse(string);
+					break;
+				default:
+					mValues[row] = null;
+					break;
+			}
+			return mValues[row] != null;
+		}
+
+		@Override
+		Object getValue(int row) {
+			return mValues[row];
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return TextUtils.equals(mStrings[row], cursor.getString(mCursorIndex));
+		}
+
+		@Override
+		void resize(int capacity) {
+			final String[] strings = new String[capacity];
+			System.arraycopy(mStrings, 0, strings, 0, mStrings.length);
+			mStrings = strings;
+			final Object[] values = new Object[capacity];
+			System.arraycopy(mValues, 0, values, 0, mValues.length);
+			mValues = values;
+		}
+	}
+
+	/**
+	 * Blobs, decoded on first use. The blobs are kept to tell whether a row
+	 * changed.
+	 */
+	static final class BitmapColumn extends Column {
+		private byte[][] mBlobs = new byte[0][];
+		private Bitmap[] mBitmaps = new Bitmap[0];
+
+		BitmapColumn(int cursorIndex, int capacity) {
+			super(ReflectionAction.BITMAP, cursorIndex);
+			ensureCapacity(capacity);
+		}
+
+		@Override
+		boolean readValue(Cursor cursor, int row) {
+			final byte[] blob = cursor.getBlob(mCursorIndex);
+			mBlobs[row] = blob;
+			// may still be shown, let the GC take it
+			mBitmaps[row] = null;
+			return blob != null;
+		}
+
+		@Override
+		Object getValue(int row) {
+			Bitmap bitmap = mBitmaps[row];
+			if (bitmap == null) {
+				final byte[] blob = mBlobs[row];
+				if (blob == null)
+					return null;
+				bitmap = BitmapFactory.decodeByteArray(blob, 0, blob.length);
+				mBitmaps[row] = bitmap;
+			}
+			return bitmap;
+		}
+
+		@Override
+		boolean matchesValue(Cursor cursor, int row) {
+			return Arrays.equals(mBlobs[row], cursor.getBlob(mCursorIndex));
+		}
+
+		@Override
+		void resize(int capacity) {
+			final byte[][] blobs = new byte[capacity][];
+			System.arraycopy(mBlobs, 0, blobs, 0, mBlobs.length);
+			mBlobs = blobs;
+			final Bitmap[] bitmaps = new Bitmap[capacity];
+			System.arraycopy(mBitmaps, 0, bitmaps, 0, mBitmaps.length);
+			mBitmaps = bitmaps;
+		}
+
+		@Override
+		void clear() {
+			final Bitmap[] bitmaps = mBitmaps;
+			for (int i = bitmaps.length - 1; i >= 0; i--) {
+				if (bitmaps[i] != null) {
+					bitmaps[i].recycle();
+					bitmaps[i] = null;
+				}
+				mBlobs[i] = null;
 			}
-			mCache.clear();
-			dropCacheRow(mDefaults);
 		}
 	}
 
@@ -93,6 +451,8 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 
 		private int mCursorIndex;
 		private int mDefaultResource;
+		// Column of the values in the cursor cache
+		int mColumn;
 
 		public BindingAction(int viewId, String methodName, int type, int cursorIndex, int defaultResource) {
 			super(viewId, methodName, type);
@@ -123,41 +483,27 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 
 		@Override
 		protected Object getValue(Context context) {
-			return mCursor.getValueOrDefault(mCursorPos, this);
+			return mCursor.getValueOrDefault(mCursorPos, mColumn);
 		}
 
-		public Object readValue(Cursor cursor, Context context) {
-			try
-			{
-				switch(this.type) {
-					case STRING:
-					case CHAR_SEQUENCE:
-						return cursor.getString(mCursorIndex);
-					case BYTE:
-						return (byte)cursor.getInt(mCursorIndex);
-					case SHORT:
-						return (short)cursor.getInt(mCursorIndex);
-					case INT:
-						return cursor.getInt(mCursorIndex);
-					case LONG:
-						return cursor.getLong(mCursorIndex);
-					case FLOAT:
-						return cursor.getFloat(mCursorIndex);
-					case DOUBLE:
-						return cursor.getDouble(mCursorIndex);
-					case CHAR:
-						return cursor.getString(mCursorIndex).charAt(0);
-					case URI:
-						return Uri.parse(cursor.getString(mCursorIndex));
-					case BITMAP:
-						byte[] blob = cursor.getBlob(mCursorIndex);
-		                return BitmapFactory.decodeByteArray(blob, 0, blob.length);
-				}
-			}
-			catch(Exception e) {
-				return null;
+		Column createColumn(int capacity) {
+			switch(this.type) {
+				case BYTE:
+				case SHORT:
+				case INT:
+				case CHAR:
+					return new IntColumn(this.type, mCursorIndex, capacity);
+				case LONG:
+					return new LongColumn(mCursorIndex, capacity);
+				case FLOAT:
+					return new FloatColumn(mCursorIndex, capacity);
+				case DOUBLE:
+					return new DoubleColumn(mCursorIndex, capacity);
+				case BITMAP:
+					return new BitmapColumn(mCursorIndex, capacity);
+				default:
+					return new ObjectColumn(this.type, mCursorIndex, capacity);
 			}
-			return null;
 		}
 
 		public Object getDefault(Context context) {
@@ -168,6 +514,7 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 					case CHAR_SEQUENCE:
 						return context.getString(mDefaultResource);
 					case BITMAP:
+					case BITMAP_URI:
 						return BitmapFactory.decodeResource(context.getResources(), mDefaultResource);
 				}
 			}
@@ -190,6 +537,8 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 		private final int mExtraCursorIndex;
 		private final int mViewId;
 		private final PendingIntent mIntent;
+		// Column of the extras in the cursor cache
+		int mColumn;
 
         public SetBoundOnClickIntent(int id, PendingIntent intent,
         		String extraName, int extraCursorIndex) {
@@ -251,14 +600,10 @@ public class BoundRemoteViews extends SimpleRemoteViews {
             }
 
             protected void prepareIntent(Intent intent) {
-            	String value = (String)mCursor.getValueOrDefault(myCursorPos, SetBoundOnClickIntent.this);
+            	String value = (String)mCursor.getValueOrDefault(myCursorPos, mColumn);
             	intent.putExtra(mExtraName, value);
             }
         }
-
-        public String readValue(Cursor cursor) {
-        	return cursor.getString(mExtraCursorIndex);
-        }
 	}
 
 	private CursorCache mCursor;
@@ -276,6 +621,22 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 		mCursor = new CursorCache(cursor,context);
 	}
 
+	/**
+	 * Updates the cache from a new query of the same data. Every cached row
+	 * is compared with the cursor and read again if it changed, then the
+	 * rows added after them are read. The cache is rebuilt when the cursor
+	 * has less rows.
+	 *
+	 * @return True if the cache was updated in place.
+	 */
+	public boolean updateBindingCursor(Cursor cursor, Context context) {
+		if (mCursor != null && mCursor.refresh(cursor)) {
+			return true;
+		}
+		setBindingCursor(cursor, context);
+		return false;
+	}
+
 	public void dropCache() {
 		if (mCursor != null) {
 			mCursor.clear();
@@ -285,7 +646,7 @@ public class BoundRemoteViews extends SimpleRemoteViews {
 
 	public int getCursorCacheSize() {
 		if (mCursor != null)
-			return mCursor.mCache.size();
+			return mCursor.getCount();
 		else
 			return 0;
 	}
@@ -375,6 +736,11 @@ public class BoundRemoteViews extends SimpleRemoteViews {
     								cursorIndex, defaultResource));
     }
 
+    public void setBoundBitmapUri(int viewId, String methodName, int cursorIndex, int defaultResource) {
+    	addAction(new BindingAction(viewId, methodName, ReflectionAction.BITMAP_URI,
+    								cursorIndex, defaultResource));
+    }
+
     public void SetBoundOnClickIntent(int viewId, PendingIntent intent,
     		String extraName, int extraCursorIndex) {
         addAction(new SetBoundOnClickIntent(viewId, intent, extraName, extraCursorIndex));
@@ -1,22 +1,51 @@
 package mobi.intuitit.android.widget;
 
-import java.lang.ref.SoftReference;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Map.Entry;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
 
+import android.appwidget.AppWidgetManager;
 import android.content.ContentResolver;
 import android.content.Context;
+import android.content.pm.ProviderInfo;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Process;
 import android.util.Log;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
 
+/**
+ * Images shown by the scrollable widget lists, keyed by URI or resource id.
+ *
+ * Images are kept in a LRU cache bounded by the size of their bitmaps, and
+ * remember the widgets using them so they can be dropped with the last one.
+ * Images asked for {@link AppWidgetManager#INVALID_APPWIDGET_ID} aren't cached.
+ * Images from URIs can be decoded on a background thread, at the size of the
+ * view showing them, see {@link #loadImageFromUri(Context, int, String, View, Target)}.
+ *
+ * Must only be used from the UI thread.
+ */
 public class ListViewImageManager {
 
 	private static final String TAG = "ListViewImageManager";
 
 	private static final boolean LOGD = false;
 
+	// Share of the heap the cached images may use
+	private static final int BUDGET_FRACTION = 16;
+
 	private static ListViewImageManager instance;
 
 	public static ListViewImageManager getInstance() {
@@ -25,20 +54,65 @@ public class ListViewImageManager {
 		return instance;
 	}
 
-	private final HashMap<String, SoftReference<Drawable>> mCacheForImageByUri = new HashMap<String, SoftReference<Drawable>>();
-	private final HashMap<Integer, ArrayList<String>> mWidgetCacheUsageByUri = new HashMap<Integer, ArrayList<String>>();
+	/**
+	 * Receives the image of an URI loaded for a view, null if it could not
+	 * be decoded.
+	 */
+	public interface Target {
+		void onImageLoaded(View view, Drawable d);
+	}
+
+	private static final Target SET_IMAGE_DRAWABLE = new Target() {
+		public void onImageLoaded(View view, Drawable d) {
+			((ImageView) view).setImageDrawable(d);
+		}
+	};
 
-	private final HashMap<Integer, SoftReference<Drawable>> mCacheForImageById = new HashMap<Integer, SoftReference<Drawable>>();
-	private final HashMap<Integer, ArrayList<Integer>> mWidgetCacheUsageById = new HashMap<Integer, ArrayList<Integer>>();
+	private static final class Pending {
+		final String uri;
+		final Target target;
 
-	public Drawable getImageFromUri(Context mContext, int widgetId, String imgUri) {
-		Drawable d = null;
-		if (mCacheForImageByUri.containsKey(imgUri) && mCacheForImageByUri.get(imgUri) != null) {
-			SoftReference<Drawable> ref = mCacheForImageByUri.get(imgUri);
-			if (ref != null) {
-				d = ref.get();
-			}
+		Pending(String uri, Target target) {
+			this.uri = uri;
+			this.target = target;
 		}
+	}
+
+	private static final class CacheEntry {
+		final Drawable drawable;
+		final int size;
+		// Widgets that showed the image
+		final HashSet<Integer> widgets = new HashSet<Integer>();
+
+		CacheEntry(Drawable d) {
+			drawable = d;
+			size = getSize(d);
+		}
+	}
+
+	private final LinkedHashMap<Object, CacheEntry> mCache = new LinkedHashMap<Object, CacheEntry>(32, 0.75f, true);
+	private final HashMap<Integer, HashSet<Object>> mWidgetKeys = new HashMap<Integer, HashSet<Object>>();
+	private final int mBudget = (int) Math.min(Runtime.getRuntime().maxMemory() / BUDGET_FRACTION, Integer.MAX_VALUE);
+	private int mSize;
+
+	// Views waiting for a decode, and the URI they wait for
+	private final WeakHashMap<View, Pending> mPendingViews = new WeakHashMap<View, Pending>();
+	// URIs being decoded, and the widget that asked for each
+	private final HashMap<String, Integer> mPendingUris = new HashMap<String, Integer>();
+	private final Handler mHandler = new Handler();
+	private Handler mDecodeHandler;
+
+	// Package of the provider of each content authority
+	private final HashMap<String, String> mAuthorityPackages = new HashMap<String, String>();
+
+	private int mHits;
+	private int mMisses;
+
+	/**
+	 * Returns the image of an URI, decoding it first if it isn't cached.
+	 */
+	public Drawable getImageFromUri(Context mContext, int widgetId, String imgUri) {
+		Drawable d = get(widgetId, imgUri);
 
 		if (LOGD)
 			if (d != null)
@@ -46,56 +120,81 @@ public class ListViewImageManager {
 						+ ")");
 
 		if (d == null) {
-			Uri mUri = Uri.parse(imgUri);
-			String scheme = mUri.getScheme();
-			if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
-				// try {
-				// // Load drawable through Resources, to get the source density
-				// information
-				// ContentResolver.OpenResourceIdResult r =
-				// mContext.getContentResolver().getResourceId(mUri);
-				// d = r.r.getDrawable(r.id);
-				// } catch (Exception e) {
-				// Log.w("ImageView", "Unable to open content: " + mUri, e);
-				// }
-				Log.w("ImageView", "Unable to open content: " + mUri);
-			} else if (ContentResolver.SCHEME_CONTENT.equals(scheme) || ContentResolver.SCHEME_FILE.equals(scheme)) {
-				try {
-					d = Drawable.createFromStream(mContext.getContentResolver().openInputStream(mUri), null);
-				} catch (Exception e) {
-					Log.w("ImageView", "Unable to open content: " + mUri, e);
-				}
-			} else {
-				d = Drawable.createFromPath(mUri.toString());
-			}
+			d = decodeUri(mContext, imgUri, 0, 0);
 
-			if (LOGD)
+			if (LOGD && d != null)
 				Log.d(TAG, "image URI decoded (width = " + d.getMinimumWidth() + " / weight = " + d.getMinimumHeight()
 						+ ")");
-			mCacheForImageByUri.put(imgUri, new SoftReference<Drawable>(d));
+			put(widgetId, imgUri, d);
+		}
+		return d;
+	}
 
-			// store image key usage
-			ArrayList<String> list = mWidgetCacheUsageByUri.get(widgetId);
-			if (list == null)
-				list = new ArrayList<String>();
-			list.add(imgUri);
-			mWidgetCacheUsageByUri.put(widgetId, list);
+	/**
+	 * Shows the image of an URI in a view. A cached image is set right away,
+	 * otherwise the view is cleared until the image is decoded, see
+	 * {@link #loadImageFromUri(Context, int, String, View, Target)}.
+	 */
+	public void loadImageFromUri(Context context, int widgetId, String imgUri, ImageView view) {
+		if (!mCache.containsKey(imgUri))
+			view.setImageDrawable(null);
+		loadImageFromUri(context, widgetId, imgUri, view, SET_IMAGE_DRAWABLE);
+	}
 
+	/**
+	 * Hands the image of an URI to a target for a view. A cached image is
+	 * handed right away, otherwise the image is decoded on a background
+	 * thread, at the size of the view, and handed when done unless the view
+	 * was bound to another image meanwhile. A view waits for one image at a
+	 * time.
+	 */
+	public void loadImageFromUri(Context context, int widgetId, String imgUri, View view, Target target) {
+		final Drawable d = get(widgetId, imgUri);
+		if (d != null) {
+			mPendingViews.remove(view);
+			target.onImageLoaded(view, d);
+			return;
 		}
-		return d;
+
+		mPendingViews.put(view, new Pending(imgUri, target));
+		if (mPendingUris.containsKey(imgUri))
+			return;
+		mPendingUris.put(imgUri, widgetId);
+
+		getDecodeHandler().post(new DecodeTask(context, imgUri, getTargetWidth(view), getTargetHeight(view)));
 	}
 
-	public Drawable getImageFromId(Context ctx, int widgetId, int imgId) {
-		Drawable drawable = null;
-		if (mCacheForImageById.containsKey(imgId) && mCacheForImageById.get(imgId) != null) {
-			SoftReference<Drawable> ref = mCacheForImageById.get(imgId);
-			if (ref != null) {
-				drawable = ref.get();
-			} else {
-				if (LOGD)
-					Log.d(TAG, "image ID missing !!!!!!!!!!");
-			}
+	/**
+	 * Stops waiting for a decode to show in a view, used when the view gets
+	 * bound to something else than an URI.
+	 */
+	public void cancel(View view) {
+		mPendingViews.remove(view);
+	}
+
+	/**
+	 * Tells whether an URI is a content URI served by a provider of the
+	 * package. Any other URI would be opened with the permissions of the
+	 * launcher, reaching its own files.
+	 */
+	public boolean isProvidedBy(Context context, Uri uri, String packageName) {
+		final String authority = uri.getAuthority();
+		if (packageName == null || authority == null || !ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()))
+			return false;
+
+		String owner = mAuthorityPackages.get(authority);
+		if (owner == null) {
+			final ProviderInfo info = context.getPackageManager().resolveContentProvider(authority, 0);
+			if (info == null)
+				return false;
+			owner = info.packageName;
+			mAuthorityPackages.put(authority, owner);
 		}
+		return owner.equals(packageName);
+	}
+
+	public Drawable getImageFromId(Context ctx, int widgetId, int imgId) {
+		Drawable drawable = get(widgetId, imgId);
 
 		if (LOGD)
 			if (drawable != null)
@@ -108,76 +207,235 @@ public class ListViewImageManager {
 			drawable = Drawable.createFromResourceStream(ctx.getResources(), null, ctx.getResources().openRawResource(
 					imgId), ctx.getResources().getResourceName(imgId));
 
-			mCacheForImageById.put(imgId, new SoftReference<Drawable>(drawable));
-
-			// store image key usage
-			ArrayList<Integer> list = mWidgetCacheUsageById.get(widgetId);
-			if (list == null)
-				list = new ArrayList<Integer>();
-			list.add(imgId);
-			mWidgetCacheUsageById.put(widgetId, list);
-
+			put(widgetId, imgId, drawable);
 		}
 		return drawable;
 	}
 
 	public void unbindDrawables() {
-
-		for (Entry<Integer, SoftReference<Drawable>> drawableEntry : mCacheForImageById.entrySet()) {
-			if ((drawableEntry != null) && (drawableEntry.getValue() != null)
-					&& (drawableEntry.getValue().get() != null))
-				drawableEntry.getValue().get().setCallback(null);
-		}
-
-		for (Entry<String, SoftReference<Drawable>> drawableEntry : mCacheForImageByUri.entrySet()) {
-			if ((drawableEntry != null) && (drawableEntry.getValue() != null)
-					&& (drawableEntry.getValue().get() != null))
-				drawableEntry.getValue().get().setCallback(null);
+		for (CacheEntry entry : mCache.values()) {
+			entry.drawable.setCallback(null);
 		}
 	}
 
 	public void clearCache() {
-		mCacheForImageById.clear();
-		mCacheForImageByUri.clear();
+		if (LOGD)
+			Log.d(TAG, "clearCache hits=" + mHits + " misses=" + mMisses + " size=" + mSize + " budget=" + mBudget);
+		mCache.clear();
+		mWidgetKeys.clear();
+		mAuthorityPackages.clear();
+		mSize = 0;
 	}
 
+	/**
+	 * Forgets the images a widget used, the ones no other widget uses are
+	 * dropped.
+	 */
 	public String clearCacheForWidget(Context ctx, int widgetId) {
-		Drawable drawable = null;
-		ArrayList<String> listByUri = mWidgetCacheUsageByUri.get(widgetId);
-		if (listByUri != null) {
-			for (String imgUri : listByUri) {
-				if (mCacheForImageByUri.containsKey(imgUri) && mCacheForImageByUri.get(imgUri) != null) {
-					SoftReference<Drawable> ref = mCacheForImageByUri.get(imgUri);
-					if (ref != null) {
-						drawable = ref.get();
-						if (drawable != null)
-							drawable.setCallback(null);
-					}
-					mCacheForImageByUri.remove(imgUri);
-					Log.d(TAG, "image URI removed from cache : " + imgUri);
+		final HashSet<Object> keys = mWidgetKeys.remove(widgetId);
+		if (keys != null) {
+			for (Object key : keys) {
+				final CacheEntry entry = mCache.get(key);
+				if (entry == null)
+					continue;
+				entry.widgets.remove(widgetId);
+				if (entry.widgets.isEmpty()) {
+					entry.drawable.setCallback(null);
+					mCache.remove(key);
+					mSize -= entry.size;
+					if (LOGD)
+						Log.d(TAG, "image removed from cache : " + key);
 				}
 			}
 		}
-		mWidgetCacheUsageByUri.remove(widgetId);
-
-		ArrayList<Integer> listById = mWidgetCacheUsageById.get(widgetId);
-		if (listById != null) {
-			for (Integer imgId : listById) {
-				if (mCacheForImageById.containsKey(imgId) && mCacheForImageById.get(imgId) != null) {
-					SoftReference<Drawable> ref = mCacheForImageById.get(imgId);
-					if (ref != null) {
-						drawable = ref.get();
-						if (drawable != null)
-							drawable.setCallback(null);
-					}
-					mCacheForImageById.remove(imgId);
-					Log.d(TAG, "image ID removed from cache : " + imgId);
-				}
+
+		return null;
+	}
+
+	private Drawable get(int widgetId, Object key) {
+		final CacheEntry entry = mCache.get(key);
+		if (entry == null) {
+			mMisses++;
+			return null;
+		}
+		mHits++;
+		addUsage(widgetId, key, entry);
+		return entry.drawable;
+	}
+
+	private void put(int widgetId, Object key, Drawable d) {
+		// nothing would ever drop it with the cache of a widget
+		if (d == null || widgetId == AppWidgetManager.INVALID_APPWIDGET_ID)
+			return;
+		final CacheEntry entry = new CacheEntry(d);
+		if (entry.size > mBudget)
+			return;
+		final CacheEntry previous = mCache.put(key, entry);
+		if (previous != null) {
+			mSize -= previous.size;
+			entry.widgets.addAll(previous.widgets);
+		}
+		mSize += entry.size;
+		addUsage(widgetId, key, entry);
+		trim();
+	}
+
+	private void addUsage(int widgetId, Object key, CacheEntry entry) {
+		if (widgetId == AppWidgetManager.INVALID_APPWIDGET_ID || !entry.widgets.add(widgetId))
+			return;
+		HashSet<Object> keys = mWidgetKeys.get(widgetId);
+		if (keys == null) {
+			keys = new HashSet<Object>();
+			mWidgetKeys.put(widgetId, keys);
+		}
+		keys.add(key);
+	}
+
+	/**
+	 * Drops the least recently used images until the cache fits in its
+	 * budget. Views still showing them keep their drawable.
+	 */
+	private void trim() {
+		final Iterator<Map.Entry<Object, CacheEntry>> it = mCache.entrySet().iterator();
+		while (mSize > mBudget && it.hasNext()) {
+			final Map.Entry<Object, CacheEntry> eldest = it.next();
+			final CacheEntry entry = eldest.getValue();
+			it.remove();
+			mSize -= entry.size;
+			for (Integer widgetId : entry.widgets) {
+				final HashSet<Object> keys = mWidgetKeys.get(widgetId);
+				if (keys != null)
+					keys.remove(eldest.getKey());
 			}
+			if (LOGD)
+				Log.d(TAG, "image evicted from cache : " + eldest.getKey());
+		}
+	}
+
+	private Handler getDecodeHandler() {
+		if (mDecodeHandler == null) {
+			final HandlerThread thread = new HandlerThread(TAG, Process.THREAD_PRIORITY_BACKGROUND);
+			thread.start();
+			mDecodeHandler = new Handler(thread.getLooper());
 		}
-		mWidgetCacheUsageById.remove(widgetId);
+		return mDecodeHandler;
+	}
+
+	private class DecodeTask implements Runnable {
+		private final Context mContext;
+		private final String mUri;
+		private final int mWidth;
+		private final int mHeight;
 
+		DecodeTask(Context context, String uri, int width, int height) {
+			mContext = context;
+			mUri = uri;
+			mWidth = width;
+			mHeight = height;
+		}
+
+		public void run() {
+			Drawable d = null;
+			try {
+				d = decodeUri(mContext, mUri, mWidth, mHeight);
+			} catch (OutOfMemoryError e) {
+				Log.w(TAG, "Out of memory decoding " + mUri);
+			}
+			final Drawable result = d;
+			mHandler.post(new Runnable() {
+				public void run() {
+					onDecoded(mUri, result);
+				}
+			});
+		}
+	}
+
+	private void onDecoded(String imgUri, Drawable d) {
+		final Integer widgetId = mPendingUris.remove(imgUri);
+		if (d != null && widgetId != null)
+			put(widgetId, imgUri, d);
+
+		final ArrayList<View> views = new ArrayList<View>();
+		for (Map.Entry<View, Pending> pending : mPendingViews.entrySet()) {
+			if (imgUri.equals(pending.getValue().uri))
+				views.add(pending.getKey());
+		}
+		for (View view : views) {
+			mPendingViews.remove(view).target.onImageLoaded(view, d);
+		}
+	}
+
+	/**
+	 * Decodes the image of an URI, subsampled to the smallest power of two
+	 * still covering the specified size.
+	 *
+	 * @param width
+	 *            Width to decode at, or zero or less to decode at full size.
+	 * @param height
+	 *            Height to decode at, or zero or less to decode at full size.
+	 */
+	private static Drawable decodeUri(Context context, String imgUri, int width, int height) {
+		final Uri uri = Uri.parse(imgUri);
+		final String scheme = uri.getScheme();
+		if (ContentResolver.SCHEME_ANDROID_RESOURCE.equals(scheme)) {
+			Log.w("ImageView", "Unable to open content: " + uri);
+			return null;
+		}
+
+		final boolean stream = ContentResolver.SCHEME_CONTENT.equals(scheme) || ContentResolver.SCHEME_FILE.equals(scheme);
+		try {
+			final BitmapFactory.Options options = new BitmapFactory.Options();
+			if (width > 0 && height > 0) {
+				options.inJustDecodeBounds = true;
+				decode(context, uri, stream, options);
+				options.inJustDecodeBounds = false;
+				int sampleSize = 1;
+				while (options.outWidth / (sampleSize * 2) >= width && options.outHeight / (sampleSize * 2) >= height)
+					sampleSize *= 2;
+				options.inSampleSize = sampleSize;
+			}
+			final Bitmap bitmap = decode(context, uri, stream, options);
+			if (bitmap != null)
+				return new BitmapDrawable(context.getResources(), bitmap);
+		} catch (Exception e) {
+			Log.w("ImageView", "Unable to open content: " + uri, e);
+		}
 		return null;
 	}
 
-}
\ No newline at end of file
+	private static Bitmap decode(Context context, Uri uri, boolean stream, BitmapFactory.Options options)
+			throws Exception {
+		if (!stream)
+			return BitmapFactory.decodeFile(uri.toString(), options);
+		final InputStream in = context.getContentResolver().openInputStream(uri);
+		try {
+			return BitmapFactory.decodeStream(in, null, options);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Width to decode an image shown in a view at, from its layout when it
+	 * wasn't measured yet.
+	 */
+	private static int getTargetWidth(View view) {
+		final ViewGroup.LayoutParams lp = view.getLayoutParams();
+		return view.getWidth() <= 0 && lp != null ? lp.width : view.getWidth();
+	}
+
+	private static int getTargetHeight(View view) {
+		final ViewGroup.LayoutParams lp = view.getLayoutParams();
+		return view.getHeight() <= 0 && lp != null ? lp.height : view.getHeight();
+	}
+
+	private static int getSize(Drawable d) {
+		if (d instanceof BitmapDrawable) {
+			final Bitmap bitmap = ((BitmapDrawable) d).getBitmap();
+			if (bitmap != null)
+				return bitmap.getRowBytes() * bitmap.getHeight();
+		}
+		return Math.max(d.getIntrinsicWidth(), 1) * Math.max(d.getIntrinsicHeight(), 1) * 4;
+	}
+
+}
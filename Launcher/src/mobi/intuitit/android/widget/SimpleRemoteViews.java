@@ -17,24 +17,26 @@
 package mobi.intuitit.android.widget;
 
 import android.app.PendingIntent;
+import android.appwidget.AppWidgetManager;
 import android.content.Context;
 import android.content.Intent;
 import android.graphics.Bitmap;
 import android.graphics.PorterDuff;
 import android.graphics.Rect;
+import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Parcel;
 import android.os.Parcelable;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.View.OnClickListener;
 import android.widget.ImageView;
 
-import java.lang.reflect.Method;
 import java.util.ArrayList;
 
 
@@ -46,6 +48,8 @@ import java.util.ArrayList;
 */
 public class SimpleRemoteViews implements Parcelable {
 
+   private static final String LOG_TAG = "SimpleRemoteViews";
+
    /**
     * The resource ID of the layout file. (Added to the parcel)
     */
@@ -56,6 +60,18 @@ public class SimpleRemoteViews implements Parcelable {
     * inflated
     */
    protected ArrayList<Action> mActions;
+
+   /**
+    * The widget showing the views, bitmaps referenced by URI are cached for
+    * it. (Not added to the parcel)
+    */
+   private int mOwnerWidgetId = AppWidgetManager.INVALID_APPWIDGET_ID;
+
+   /**
+    * Package of the widget provider, the only one whose content providers
+    * bitmaps may be referenced from. (Not added to the parcel)
+    */
+   private String mOwnerPackage;
    
 
    /**
@@ -298,6 +314,8 @@ public class SimpleRemoteViews implements Parcelable {
        static final int URI = 11;
        static final int BITMAP = 12;
        static final int BUNDLE = 13;
+       // Bitmap read from a content URI, only the URI is parceled
+       static final int BITMAP_URI = 14;
 
        int viewId;
        String methodName;
@@ -363,6 +381,9 @@ public class SimpleRemoteViews implements Parcelable {
                case BUNDLE:
                    this.value = in.readBundle();
                    break;
+               case BITMAP_URI:
+                   this.value = Uri.CREATOR.createFromParcel(in);
+                   break;
                default:
                    break;
            }
@@ -421,6 +442,9 @@ public class SimpleRemoteViews implements Parcelable {
                case BUNDLE:
                    out.writeBundle((Bundle) this.value);
                    break;
+               case BITMAP_URI:
+                   ((Uri)this.value).writeToParcel(out, flags);
+                   break;
                default:
                    break;
            }
@@ -452,6 +476,7 @@ public class SimpleRemoteViews implements Parcelable {
                case URI:
                    return Uri.class;
                case BITMAP:
+               case BITMAP_URI:
                    return Bitmap.class;
                case BUNDLE:
                    return Bundle.class;
@@ -474,17 +499,23 @@ public class SimpleRemoteViews implements Parcelable {
            }
 
            Class klass = view.getClass();
-           Method method;
-           try {
-               method = klass.getMethod(this.methodName, getParameterType());
-           }
-           catch (NoSuchMethodException ex) {
+           final ViewSetters.Setter setter = ViewSetters.get(klass, this.methodName, this.type, param);
+           if (setter == null) {
                throw new ActionException("view: " + klass.getName() + " doesn't have method: "
                        + this.methodName + "(" + param.getName() + ")");
            }
 
+           Object value = getValue(root.getContext());
+           if (this.type == BITMAP_URI && value instanceof Uri) {
+               applyBitmapUri(root.getContext(), view, setter, (Uri) value);
+               return;
+           } else if (view instanceof ImageView && this.methodName.startsWith("setImage")) {
+               // a decode still pending for a recycled view must not replace this image
+               ListViewImageManager.getInstance().cancel((ImageView) view);
+           }
+
            try {
-        	   method.invoke(view, getValue(root.getContext()));
+        	   setter.invoke(view, value);
            }
            catch (Exception ex) {
                throw new ActionException(ex);
@@ -494,6 +525,39 @@ public class SimpleRemoteViews implements Parcelable {
        protected Object getValue(Context context) {
     	   return this.value;
        }
+
+       /**
+        * Hands the bitmap of an URI to the setter once decoded in the
+        * background, at the size of the view. Only content URIs of the widget
+        * provider are opened.
+        */
+       private void applyBitmapUri(Context context, View view, final ViewSetters.Setter setter,
+               Uri uri) {
+           final ListViewImageManager images = ListViewImageManager.getInstance();
+           if (!images.isProvidedBy(context, uri, mOwnerPackage)) {
+               Log.w(LOG_TAG, "Bitmap URI not provided by " + mOwnerPackage + ": " + uri);
+               images.cancel(view);
+               return;
+           }
+
+           if (view instanceof ImageView && "setImageBitmap".equals(this.methodName)) {
+               images.loadImageFromUri(context, mOwnerWidgetId, uri.toString(), (ImageView) view);
+               return;
+           }
+           images.loadImageFromUri(context, mOwnerWidgetId, uri.toString(), view,
+                   new ListViewImageManager.Target() {
+               public void onImageLoaded(View view, Drawable d) {
+                   if (!(d instanceof BitmapDrawable)) {
+                       return;
+                   }
+                   try {
+                       setter.invoke(view, ((BitmapDrawable) d).getBitmap());
+                   } catch (Exception e) {
+                       Log.w(LOG_TAG, "Could not set bitmap " + methodName, e);
+                   }
+               }
+           });
+       }
    }
 
    /**
@@ -547,6 +611,17 @@ public class SimpleRemoteViews implements Parcelable {
        return mLayoutId;
    }
 
+   /**
+    * Sets the widget showing the views. Bitmaps referenced by URI are cached
+    * for it and dropped with the cache of the widget, they aren't cached when
+    * no widget is set. They are only read from the content providers of the
+    * widget provider package, and not at all when it is null.
+    */
+   public void setOwner(int appWidgetId, String packageName) {
+       mOwnerWidgetId = appWidgetId;
+       mOwnerPackage = packageName;
+   }
+
    /**
     * Add an action to be executed on the remote side when apply is called.
     * 
@@ -852,6 +927,22 @@ public class SimpleRemoteViews implements Parcelable {
        addAction(new ReflectionAction(viewId, methodName, ReflectionAction.BUNDLE, value));
    }
 
+   /**
+    * Call a method taking one Bitmap on a view in the layout for this RemoteViews,
+    * with the bitmap read from a content URI.
+    * <p class="note">Only the URI is flattened into the parcel. The launcher decodes
+    * the bitmap in the background, at the size of the view, and caches it. The URI
+    * must belong to a content provider of the widget provider package, other URIs
+    * are ignored.</p>
+    *
+    * @param viewId The id of the view whose bitmap should change
+    * @param methodName The name of the method to call.
+    * @param value The URI of the bitmap to pass to the method.
+    */
+   public void setBitmapUri(int viewId, String methodName, Uri value) {
+       addAction(new ReflectionAction(viewId, methodName, ReflectionAction.BITMAP_URI, value));
+   }
+
    public void setViewWidth(int viewId, int value) {
 	   addAction(new SetLayoutSize(viewId, SetLayoutSize.WIDTH, value));
    }
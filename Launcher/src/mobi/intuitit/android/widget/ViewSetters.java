@@ -0,0 +1,244 @@
+package mobi.intuitit.android.widget;
+
+import java.lang.reflect.Method;
+import java.util.HashMap;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.util.Log;
+import android.view.View;
+import android.widget.ImageView;
+import android.widget.ProgressBar;
+import android.widget.TextView;
+
+/**
+ * Setters called by the reflection actions of {@link SimpleRemoteViews},
+ * resolved once per view class, method name and parameter type.
+ *
+ * Methods missing from a class are remembered too. Common setters of the
+ * framework views are called directly instead of through reflection, once
+ * reflection found them on the class.
+ *
+ * Must only be used from the UI thread.
+ */
+final class ViewSetters {
+    private static final String TAG = "ViewSetters";
+
+    // Calls the common setters directly instead of through reflection
+    private static final boolean DIRECT_SETTERS = true;
+
+    private static final int TYPE_COUNT = SimpleRemoteViews.ReflectionAction.BITMAP_URI + 1;
+
+    static abstract class Setter {
+        abstract void invoke(View view, Object value) throws Exception;
+    }
+
+    private static final class ReflectiveSetter extends Setter {
+        private final Method mMethod;
+
+        ReflectiveSetter(Method method) {
+            mMethod = method;
+        }
+
+        @Override
+        void invoke(View view, Object value) throws Exception {
+            sReflectiveCalls++;
+            mMethod.invoke(view, value);
+        }
+    }
+
+    /**
+     * Setter of a framework view class, called without reflection.
+     */
+    private static abstract class DirectSetter extends Setter {
+        final Class<?> viewClass;
+
+        DirectSetter(Class<?> viewClass) {
+            this.viewClass = viewClass;
+        }
+    }
+
+    // Cached for the methods a class doesn't have
+    private static final Setter NO_METHOD = new Setter() {
+        @Override
+        void invoke(View view, Object value) {
+        }
+    };
+
+    private static final HashMap<Class<?>, HashMap<String, Setter[]>> sCache =
+            new HashMap<Class<?>, HashMap<String, Setter[]>>();
+    private static final HashMap<String, DirectSetter[]> sDirectSetters =
+            new HashMap<String, DirectSetter[]>();
+
+    private static int sHits;
+    private static int sMisses;
+    private static int sReflectiveCalls;
+
+    static {
+        addDirect("setText", SimpleRemoteViews.ReflectionAction.CHAR_SEQUENCE, new DirectSetter(TextView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((TextView) view).setText((CharSequence) value);
+            }
+        });
+        addDirect("setTextColor", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(TextView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((TextView) view).setTextColor((Integer) value);
+            }
+        });
+        addDirect("setTextSize", SimpleRemoteViews.ReflectionAction.FLOAT, new DirectSetter(TextView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((TextView) view).setTextSize((Float) value);
+            }
+        });
+        addDirect("setVisibility", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(View.class) {
+            @Override
+            void invoke(View view, Object value) {
+                view.setVisibility((Integer) value);
+            }
+        });
+        addDirect("setEnabled", SimpleRemoteViews.ReflectionAction.BOOLEAN, new DirectSetter(View.class) {
+            @Override
+            void invoke(View view, Object value) {
+                view.setEnabled((Boolean) value);
+            }
+        });
+        addDirect("setBackgroundColor", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(View.class) {
+            @Override
+            void invoke(View view, Object value) {
+                view.setBackgroundColor((Integer) value);
+            }
+        });
+        addDirect("setBackgroundResource", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(View.class) {
+            @Override
+            void invoke(View view, Object value) {
+                view.setBackgroundResource((Integer) value);
+            }
+        });
+        final DirectSetter setImageBitmap = new DirectSetter(ImageView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ImageView) view).setImageBitmap((Bitmap) value);
+            }
+        };
+        addDirect("setImageBitmap", SimpleRemoteViews.ReflectionAction.BITMAP, setImageBitmap);
+        addDirect("setImageBitmap", SimpleRemoteViews.ReflectionAction.BITMAP_URI, setImageBitmap);
+        addDirect("setImageResource", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(ImageView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ImageView) view).setImageResource((Integer) value);
+            }
+        });
+        addDirect("setImageURI", SimpleRemoteViews.ReflectionAction.URI, new DirectSetter(ImageView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ImageView) view).setImageURI((Uri) value);
+            }
+        });
+        addDirect("setImageLevel", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(ImageView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ImageView) view).setImageLevel((Integer) value);
+            }
+        });
+        addDirect("setAlpha", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(ImageView.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ImageView) view).setAlpha((Integer) value);
+            }
+        });
+        addDirect("setProgress", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(ProgressBar.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ProgressBar) view).setProgress((Integer) value);
+            }
+        });
+        addDirect("setMax", SimpleRemoteViews.ReflectionAction.INT, new DirectSetter(ProgressBar.class) {
+            @Override
+            void invoke(View view, Object value) {
+                ((ProgressBar) view).setMax((Integer) value);
+            }
+        });
+    }
+
+    private ViewSetters() {
+    }
+
+    private static void addDirect(String methodName, int type, DirectSetter setter) {
+        DirectSetter[] setters = sDirectSetters.get(methodName);
+        if (setters == null) {
+            setters = new DirectSetter[TYPE_COUNT];
+            sDirectSetters.put(methodName, setters);
+        }
+        setters[type] = setter;
+    }
+
+    /**
+     * Returns the setter of a view class taking a parameter of the specified
+     * reflection type.
+     *
+     * @return The setter, or null if the class doesn't have it.
+     */
+    static Setter get(Class<?> viewClass, String methodName, int type, Class<?> paramType) {
+        HashMap<String, Setter[]> methods = sCache.get(viewClass);
+        if (methods == null) {
+            methods = new HashMap<String, Setter[]>();
+            sCache.put(viewClass, methods);
+        }
+        Setter[] setters = methods.get(methodName);
+        if (setters == null) {
+            setters = new Setter[TYPE_COUNT];
+            methods.put(methodName, setters);
+        }
+
+        Setter setter = setters[type];
+        if (setter != null) {
+            sHits++;
+            return setter != NO_METHOD ? setter : null;
+        }
+
+        sMisses++;
+        setter = resolve(viewClass, methodName, type, paramType);
+        setters[type] = setter != null ? setter : NO_METHOD;
+        return setter;
+    }
+
+    private static Setter resolve(Class<?> viewClass, String methodName, int type, Class<?> paramType) {
+        final Method method;
+        try {
+            method = viewClass.getMethod(methodName, paramType);
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+
+        if (DIRECT_SETTERS) {
+            final DirectSetter[] direct = sDirectSetters.get(methodName);
+            if (direct != null && direct[type] != null && direct[type].viewClass.isAssignableFrom(viewClass)) {
+                return direct[type];
+            }
+        }
+        return new ReflectiveSetter(method);
+    }
+
+    static int getHits() {
+        return sHits;
+    }
+
+    static int getMisses() {
+        return sMisses;
+    }
+
+    /**
+     * @return The number of setters called through reflection.
+     */
+    static int getReflectiveCalls() {
+        return sReflectiveCalls;
+    }
+
+    static void logStats() {
+        Log.d(TAG, "hits=" + sHits + " misses=" + sMisses + " reflectiveCalls=" + sReflectiveCalls
+                + " classes=" + sCache.size());
+    }
+}
@@ -2,6 +2,7 @@ package mobi.intuitit.android.widget;
 
 import android.database.ContentObserver;
 import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 /**
@@ -15,8 +16,25 @@ public class WidgetContentObserver extends ContentObserver {
 
 	private static final boolean LOGD = true;
 
+	// Changes notified within this delay are refreshed once, a burst of
+	// changes requeries the provider at most twice a second
+	private static final long REFRESH_INTERVAL = 500;
+
 	WidgetDataChangeListener widgetDataChangeListener;
 
+	private final Handler mRefreshHandler = new Handler(Looper.getMainLooper());
+	private boolean mRefreshPending;
+
+	private final Runnable mRefresh = new Runnable() {
+		public void run() {
+			synchronized (WidgetContentObserver.this) {
+				mRefreshPending = false;
+			}
+			if (widgetDataChangeListener != null)
+				widgetDataChangeListener.onChange();
+		}
+	};
+
 	public WidgetContentObserver(Handler handler, WidgetDataChangeListener dataChangeListener_p) {
 		super(handler);
 		widgetDataChangeListener = dataChangeListener_p;
@@ -25,9 +43,14 @@ public class WidgetContentObserver extends ContentObserver {
 	public void onChange(boolean selfChange) {
 
 		if (widgetDataChangeListener != null) {
+			synchronized (this) {
+				if (mRefreshPending)
+					return;
+				mRefreshPending = true;
+			}
 			if (LOGD)
 				Log.d(TAG, "onChange");
-			widgetDataChangeListener.onChange();
+			mRefreshHandler.postDelayed(mRefresh, REFRESH_INTERVAL);
 		} else {
 			if (LOGD)
 				Log.d(TAG, "onChange -> no listerner");
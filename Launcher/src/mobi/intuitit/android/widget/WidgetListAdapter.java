@@ -1,6 +1,7 @@
 package mobi.intuitit.android.widget;
 
-import java.util.ArrayList;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
 
 import mobi.intuitit.android.content.LauncherIntent;
 import android.appwidget.AppWidgetManager;
@@ -15,14 +16,18 @@ import android.graphics.Rect;
 import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.os.Handler;
+import android.provider.BaseColumns;
 import android.text.Html;
-import android.text.Spanned;
+import android.text.TextUtils;
 import android.util.Log;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.View.OnClickListener;
+import android.widget.AbsListView;
 import android.widget.ImageView;
+import android.widget.ListView;
 import android.widget.TextView;
 
 /**
@@ -40,6 +45,9 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 
 	private static final int NB_MAX_VIEWS_TYPES = 1;
 
+	// Rows kept materialized before and after the last bound one
+	private static final int ROWS_WINDOW = 32;
+
 	final LayoutInflater mInflater;
 	final int mItemLayoutId;
 	final int mAppWidgetId;
@@ -63,9 +71,33 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 		public RowElementsList(int size) {
 			singleRowElementsList = new RowElement[size];
 		}
+
+		boolean contentEquals(RowElementsList other) {
+			final RowElement[] elements = singleRowElementsList;
+			final RowElement[] others = other.singleRowElementsList;
+			for (int i = elements.length - 1; i >= 0; i--) {
+				final Object data = elements[i].data;
+				if (data == null ? others[i].data != null : !data.equals(others[i].data))
+					return false;
+				if (!TextUtils.equals(elements[i].tag, others[i].tag))
+					return false;
+			}
+			return true;
+		}
 	}
 
-	public ArrayList<RowElementsList> rowsElementsList = new ArrayList<RowElementsList>();
+	// Cursor of the provider, kept open while the list shows it
+	private Cursor mCursor;
+	private int mCount;
+	// Rows read from the cursor around the last bound one
+	private final SparseArray<RowElementsList> mRows = new SparseArray<RowElementsList>();
+	// List showing the adapter, used to refresh only the rows that changed
+	private WeakReference<AbsListView> mListView;
+	// Blobs aren't compared, rows showing them are always bound again
+	private boolean mHasBlobs;
+	// Changes notified while a query runs are folded into one more query
+	private boolean mQueryInFlight;
+	private boolean mRequeryPending;
 
 	class ItemMapping {
 		int type;
@@ -123,7 +155,12 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 	};
 
 	public void clearDataCache() {
-		rowsElementsList.clear();
+		mRows.clear();
+		mCount = 0;
+		if (mCursor != null) {
+			mCursor.close();
+			mCursor = null;
+		}
 		if (LOGD)
 			Log.d(LOG_TAG, "clearDataCache");
 	}
@@ -218,11 +255,19 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 			for (int i = size - 1; i >= 0; i--)
 				mItemMappings[i].defaultResource = defaultResources[i];
 
+		for (int i = size - 1; i >= 0; i--)
+			if (mItemMappings[i].type == LauncherIntent.Extra.Scroll.Types.IMAGEBLOB)
+				mHasBlobs = true;
 	}
 
 	private void generateDataCache() {
         if (mItemMappings == null)
             return;
+        if (mQueryInFlight) {
+            mRequeryPending = true;
+            return;
+        }
+        mQueryInFlight = true;
         android.util.Log.d("LAUNCHER","API v1 START QUERY");
         mAsyncQuery.startQuery(1, "cookie",
                 Uri.parse(mIntent.getStringExtra(LauncherIntent.Extra.Scroll.EXTRA_DATA_URI)) ,
@@ -253,7 +298,7 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 					holder.views[i] = child;
 				}
 
-				rowElement = rowsElementsList.get(itemPosition).singleRowElementsList[i];
+				rowElement = getRow(itemPosition).singleRowElementsList[i];
 
 				switch (itemMapping.type) {
 				case LauncherIntent.Extra.Scroll.Types.TEXTVIEW:
@@ -268,7 +313,7 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 					if (!(child instanceof TextView))
 						break;
 					if (rowElement.data != null)
-						((TextView) child).setText((Spanned) rowElement.data);
+						((TextView) child).setText(Html.fromHtml((String) rowElement.data));
 					else
 						((TextView) child).setText(itemMapping.defaultResource);
 					break;
@@ -276,8 +321,11 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 					if (!(child instanceof ImageView))
 						break;
 					iv = (ImageView) child;
-					if (rowElement.data != null) {
-						byte[] blob = (byte[]) rowElement.data;
+					// blobs are only read from the cursor while bound
+					byte[] blob = null;
+					if (mCursor != null && mCursor.moveToPosition(itemPosition))
+						blob = mCursor.getBlob(itemMapping.index);
+					if (blob != null) {
 						iv.setImageBitmap(BitmapFactory.decodeByteArray(blob, 0, blob.length));
 					} else if (itemMapping.defaultResource > 0)
 						iv.setImageResource(itemMapping.defaultResource);
@@ -289,16 +337,18 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 						break;
 					iv = (ImageView) child;
                    if ((rowElement.data != null) && (!rowElement.data.equals(""))) {
-                        Drawable d = mImageManager.getImageFromUri(context, mAppWidgetId,
-                                (String) rowElement.data);
-                        iv.setImageDrawable(d);
-                    } else
+                        mImageManager.loadImageFromUri(context, mAppWidgetId,
+                                (String) rowElement.data, iv);
+                    } else {
+                        mImageManager.cancel(iv);
                         iv.setImageDrawable(null);
+                    }
                     break;
                 case LauncherIntent.Extra.Scroll.Types.IMAGERESOURCE:
                     if (!(child instanceof ImageView))
                         break;
                     iv = (ImageView) child;
+                    mImageManager.cancel(iv);
                     if ((Integer) rowElement.data > 0) {
 
                         // assign new bitmap
@@ -383,6 +433,121 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 
 	}
 
+	void setListView(AbsListView lv) {
+		mListView = new WeakReference<AbsListView>(lv);
+	}
+
+	/**
+	 * Replaces the cursor by the result of a new query. When rows are keyed
+	 * by the action URI column or an id column, the list is refreshed
+	 * incrementally: if the row count and the keys of the visible rows are
+	 * the same, only the visible rows whose content changed are bound again,
+	 * otherwise the list stays on the row it showed first when that row is
+	 * found near its old position. Only those rows are read here, never the
+	 * whole cursor.
+	 */
+	private void swapCursor(Cursor cursor) {
+		final Cursor old = mCursor;
+		final AbsListView lv = mListView != null ? mListView.get() : null;
+		final int first = lv != null ? lv.getFirstVisiblePosition() : 0;
+		final int childCount = lv != null ? lv.getChildCount() : 0;
+		final String[] oldKeys = old != null && cursor != null ? readKeys(old, first, childCount) : null;
+		final String[] keys = oldKeys != null ? readKeys(cursor, first, childCount) : null;
+
+		if (keys == null || lv == null || lv.getAdapter() != this) {
+			clearDataCache();
+			if (cursor != null) {
+				mCursor = cursor;
+				mCount = cursor.getCount();
+			}
+			notifyDataSetInvalidated();
+			return;
+		}
+
+		final int count = cursor.getCount();
+		if (count == mCount && Arrays.equals(oldKeys, keys)) {
+			final RowElementsList[] visible = new RowElementsList[childCount];
+			for (int i = 0; i < childCount && first + i < mCount; i++)
+				visible[i] = getRow(first + i);
+			mRows.clear();
+			mCursor = cursor;
+			old.close();
+
+			for (int i = 0; i < childCount && first + i < mCount; i++) {
+				final RowElementsList row = getRow(first + i);
+				if (mHasBlobs || !row.contentEquals(visible[i]))
+					getView(first + i, lv.getChildAt(i), lv);
+			}
+			if (LOGD)
+				Log.d(LOG_TAG, "swapCursor: same rows, widgetId = " + mAppWidgetId);
+			return;
+		}
+
+		final String firstKey = oldKeys.length > 0 ? oldKeys[0] : null;
+		final View firstChild = lv.getChildAt(0);
+		final int top = firstChild != null ? firstChild.getTop() : 0;
+		final int oldCount = mCount;
+		mRows.clear();
+		mCursor = cursor;
+		mCount = count;
+		old.close();
+		notifyDataSetChanged();
+
+		if (firstKey != null && lv instanceof ListView) {
+			final int position = findKey(cursor, firstKey, first);
+			if (position >= 0 && position != first)
+				((ListView) lv).setSelectionFromTop(position, top);
+		}
+		if (LOGD)
+			Log.d(LOG_TAG, "swapCursor: " + oldCount + " -> " + count + " rows, widgetId = " + mAppWidgetId);
+	}
+
+	private int getKeyIndex(Cursor cursor) {
+		return mItemActionUriIndex >= 0 ? mItemActionUriIndex : cursor.getColumnIndex(BaseColumns._ID);
+	}
+
+	/**
+	 * @return The keys of the rows from start, at most length of them, or
+	 *         null if the rows have no key.
+	 */
+	private String[] readKeys(Cursor cursor, int start, int length) {
+		final int keyIndex = getKeyIndex(cursor);
+		if (keyIndex < 0)
+			return null;
+		try {
+			final int end = Math.min(start + length, cursor.getCount());
+			final String[] keys = new String[Math.max(end - start, 0)];
+			for (int i = 0; i < keys.length; i++) {
+				if (!cursor.moveToPosition(start + i))
+					return null;
+				keys[i] = cursor.getString(keyIndex);
+			}
+			return keys;
+		} catch (Exception e) {
+			return null;
+		}
+	}
+
+	/**
+	 * @return The position of the row with the key, looked for at most
+	 *         {@link #ROWS_WINDOW} rows away from around, or -1.
+	 */
+	private int findKey(Cursor cursor, String key, int around) {
+		final int keyIndex = getKeyIndex(cursor);
+		try {
+			for (int distance = 0; distance <= ROWS_WINDOW; distance++) {
+				if (cursor.moveToPosition(around - distance) && key.equals(cursor.getString(keyIndex)))
+					return around - distance;
+				if (distance > 0 && cursor.moveToPosition(around + distance)
+						&& key.equals(cursor.getString(keyIndex)))
+					return around + distance;
+			}
+		} catch (Exception e) {
+			// the list stays where it is
+		}
+		return -1;
+	}
+
 	@Override
 	public int getViewTypeCount() {
 		return NB_MAX_VIEWS_TYPES;
@@ -395,12 +560,82 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 
 	@Override
 	public int getCount() {
-		return rowsElementsList.size();
+		return mCount;
 	}
 
 	@Override
 	public Object getItem(int position) {
-		return rowsElementsList.get(position);
+		return getRow(position);
+	}
+
+	/**
+	 * Returns a row of the list, reading it from the cursor if it isn't
+	 * materialized. Rows too far from it are dropped, so only the ones
+	 * around the visible range are kept.
+	 */
+	RowElementsList getRow(int position) {
+		RowElementsList row = mRows.get(position);
+		if (row != null)
+			return row;
+
+		row = readRow(position);
+		if (mRows.size() > ROWS_WINDOW * 2) {
+			for (int i = mRows.size() - 1; i >= 0; i--) {
+				if (Math.abs(mRows.keyAt(i) - position) > ROWS_WINDOW)
+					mRows.delete(mRows.keyAt(i));
+			}
+		}
+		mRows.put(position, row);
+		return row;
+	}
+
+	/**
+	 * Reads the text, URIs, resources and tags of a row. HTML is kept as a
+	 * string and blobs are left in the cursor, both are only decoded when the
+	 * row is bound.
+	 */
+	private RowElementsList readRow(int position) {
+		final int size = mItemMappings.length;
+		final RowElementsList row = new RowElementsList(size);
+		final Cursor cursor = mCursor;
+		final boolean moved = cursor != null && cursor.moveToPosition(position);
+
+		ItemMapping itemMapping;
+		for (int i = size - 1; i >= 0; i--) {
+			final RowElement re = new RowElement();
+			row.singleRowElementsList[i] = re;
+			if (!moved)
+				continue;
+
+			itemMapping = mItemMappings[i];
+			try {
+				switch (itemMapping.type) {
+				case LauncherIntent.Extra.Scroll.Types.TEXTVIEW:
+				case LauncherIntent.Extra.Scroll.Types.TEXTVIEWHTML:
+				case LauncherIntent.Extra.Scroll.Types.IMAGEURI:
+					re.data = cursor.getString(itemMapping.index);
+					break;
+				case LauncherIntent.Extra.Scroll.Types.IMAGERESOURCE:
+					re.data = cursor.getInt(itemMapping.index);
+					break;
+				}
+
+				// Prepare tag
+				if (mItemChildrenClickable && itemMapping.clickable) {
+					if (mItemActionUriIndex >= 0)
+						re.tag = cursor.getString(mItemActionUriIndex);
+					else
+						re.tag = Integer.toString(position);
+				} else {
+					if (mItemActionUriIndex >= 0) {
+						re.tag = cursor.getString(mItemActionUriIndex);
+					}
+				}
+			} catch (Exception e) {
+				e.printStackTrace();
+			}
+		}
+		return row;
 	}
 
 	@Override
@@ -453,7 +688,7 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 	@Override
 	public void dropCache(Context context) {
 		mImageManager.clearCacheForWidget(context, mAppWidgetId);
-		rowsElementsList.clear();
+		clearDataCache();
 	}
 	/**
 	 * AsyncQueryHandler helper class to do async queries
@@ -471,70 +706,13 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
         protected void onQueryComplete(int token, Object cookie, Cursor cursor) {
             super.onQueryComplete(token, cookie, cursor);
             android.util.Log.d("LAUNCHER", "API v1 QUERY COMPLETE");
-            rowsElementsList.clear();
-            final int size = mItemMappings.length;
-
-            while ((cursor != null) && (cursor.moveToNext())) {
-
-                RowElementsList singleRowElem = new RowElementsList(size);
-
-                ItemMapping itemMapping;
-                try {
-                    // bind children views
-                    for (int i = size - 1; i >= 0; i--) {
-
-                        RowElement re = new RowElement();
-
-                        itemMapping = mItemMappings[i];
-
-                        switch (itemMapping.type) {
-                        case LauncherIntent.Extra.Scroll.Types.TEXTVIEW:
-                            re.data = cursor.getString(itemMapping.index);
-                            break;
-                        case LauncherIntent.Extra.Scroll.Types.TEXTVIEWHTML:
-                            re.data = Html.fromHtml(cursor
-                                    .getString(itemMapping.index));
-                            break;
-                        case LauncherIntent.Extra.Scroll.Types.IMAGEBLOB:
-                            byte[] localData = cursor
-                                    .getBlob(itemMapping.index);
-                            re.data = localData;
-                            break;
-                        case LauncherIntent.Extra.Scroll.Types.IMAGEURI:
-                            re.data = cursor.getString(itemMapping.index);
-                            break;
-                        case LauncherIntent.Extra.Scroll.Types.IMAGERESOURCE:
-                            re.data = cursor.getInt(itemMapping.index);
-                            break;
-                        }
-
-                        // Prepare tag
-                        if (mItemChildrenClickable && itemMapping.clickable) {
-                            if (mItemActionUriIndex >= 0)
-                                re.tag = cursor.getString(mItemActionUriIndex);
-                            else
-                                re.tag = Integer.toString(cursor.getPosition());
-                        } else {
-                            if (mItemActionUriIndex >= 0) {
-                                re.tag = cursor.getString(mItemActionUriIndex);
-                            }
-                        }
-
-                        singleRowElem.singleRowElementsList[i] = re;
-
-                    }
-
-                    rowsElementsList.add(singleRowElem);
-
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
+            // rows are read from the cursor as the list shows them
+            mQueryInFlight = false;
+            swapCursor(cursor);
+            if (mRequeryPending) {
+                mRequeryPending = false;
+                generateDataCache();
             }
-
-            if (cursor != null)
-                cursor.close();
-            System.gc();
-            notifyDataSetInvalidated();
         }
     }
 }
@@ -546,4 +724,4 @@ public class WidgetListAdapter extends ScrollableBaseAdapter {
 // if ((lastDrawableImageRes != null) &&
 // (!lastDrawableImageRes.getBitmap().isRecycled()))
 // lastDrawableImageRes.getBitmap().recycle();
-// }
\ No newline at end of file
+// }
\ No newline at end of file
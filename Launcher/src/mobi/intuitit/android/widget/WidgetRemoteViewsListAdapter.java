@@ -24,6 +24,7 @@ public class WidgetRemoteViewsListAdapter extends ScrollableBaseAdapter {
     private Intent mIntent;
     private final MyQueryHandler mAsyncQuery;
     ComponentName mAppWidgetProvider;
+    private final int mAppWidgetId;
 
     /**
      *
@@ -44,7 +45,9 @@ public class WidgetRemoteViewsListAdapter extends ScrollableBaseAdapter {
         mAppWidgetProvider = provider;
         mIntent = intent;
 
+        mAppWidgetId = appWidgetId;
         mRemoteViews = (BoundRemoteViews)intent.getParcelableExtra(LauncherIntent.Extra.Scroll.EXTRA_ITEM_LAYOUT_REMOTEVIEWS);
+        mRemoteViews.setOwner(appWidgetId, provider.getPackageName());
         mAsyncQuery=new MyQueryHandler(mContext.getContentResolver());
         mHandler.post(mQueryDataRunnable);
     }
@@ -56,6 +59,7 @@ public class WidgetRemoteViewsListAdapter extends ScrollableBaseAdapter {
     		}
     		mIntent = intent;
     		mRemoteViews = (BoundRemoteViews)intent.getParcelableExtra(LauncherIntent.Extra.Scroll.EXTRA_ITEM_LAYOUT_REMOTEVIEWS);
+    		mRemoteViews.setOwner(mAppWidgetId, mAppWidgetProvider.getPackageName());
             mHandler.post(mQueryDataRunnable);
     	}
     }
@@ -133,9 +137,14 @@ public class WidgetRemoteViewsListAdapter extends ScrollableBaseAdapter {
                 Cursor cursor) {
             super.onQueryComplete(token, cookie, cursor);
             android.util.Log.d("LAUNCHER","API v2 QUERY COMPLETE");
-            mRemoteViews.setBindingCursor(cursor, mContext);
+            if (cursor == null)
+                return;
+            final boolean updated = mRemoteViews.updateBindingCursor(cursor, mContext);
             cursor.close();
-            notifyDataSetInvalidated();
+            if (updated)
+                notifyDataSetChanged();
+            else
+                notifyDataSetInvalidated();
         }
     }
 }
@@ -367,6 +367,8 @@ public abstract class WidgetSpace extends ViewGroup {
             item.lv = null;
         }
         ListViewImageManager.getInstance().unbindDrawables();
+        if (LOGD)
+            ViewSetters.logStats();
 
         if (CLEAR_DATA_CACHE) {
             ListViewImageManager.getInstance().clearCache();
@@ -506,6 +508,7 @@ public abstract class WidgetSpace extends ViewGroup {
                     dummyView = null;
                     if (intent.hasExtra(LauncherIntent.Extra.Scroll.EXTRA_LISTVIEW_REMOTEVIEWS)) {
                         SimpleRemoteViews rvs = (SimpleRemoteViews)intent.getParcelableExtra(LauncherIntent.Extra.Scroll.EXTRA_LISTVIEW_REMOTEVIEWS);
+                        rvs.setOwner(appWidgetId, widgetView.getAppWidgetInfo().provider.getPackageName());
                         dummyView = rvs.apply(remoteContext, null);
                         if (dummyView instanceof AbsListView) {
                             lv = (AbsListView) dummyView;
@@ -586,6 +589,8 @@ public abstract class WidgetSpace extends ViewGroup {
                     !((WidgetListAdapter)listViewInfos.lvAdapter).mItemChildrenClickable)
                     lv.setOnItemClickListener(new WidgetItemListener(appWidgetProvider,
                             appWidgetId, dummyViewId));
+                if (listViewInfos.lvAdapter instanceof WidgetListAdapter)
+                    ((WidgetListAdapter) listViewInfos.lvAdapter).setListView(lv);
                 lv.setFocusableInTouchMode(false);
                 lv.setOnScrollListener(this);
 
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Sorts the drawer by title, as the loader does once all the applications
+ * are bound.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class ApplicationInfoComparatorBenchmark {
+    private static final String[] WORDS = {
+        "Alarm", "Browser", "Calculator", "Calendar", "Camera", "Clock", "Contacts",
+        "Dialer", "Email", "Gallery", "Maps", "Market", "Messaging", "Music", "News",
+        "Notes", "Settings", "Talk", "Voice", "Weather", "Éclair", "émoji", "Über",
+    };
+
+    @Param({ "500", "1000" })
+    public int count;
+
+    private final ApplicationsAdapter.ApplicationInfoComparator mComparator =
+            new ApplicationsAdapter.ApplicationInfoComparator();
+    private final ArrayList<ApplicationInfo> mApps = new ArrayList<ApplicationInfo>();
+    private ArrayList<ApplicationInfo> mSorted;
+
+    @Setup
+    public void setUp() {
+        final Random random = new Random(42);
+        for (int i = 0; i < count; i++) {
+            final ApplicationInfo info = new ApplicationInfo();
+            info.title = WORDS[random.nextInt(WORDS.length)] + " "
+                    + WORDS[random.nextInt(WORDS.length)].toLowerCase() + " " + i;
+            mApps.add(info);
+        }
+        mSorted = new ArrayList<ApplicationInfo>(count);
+    }
+
+    @Benchmark
+    public ArrayList<ApplicationInfo> sort() {
+        final ArrayList<ApplicationInfo> sorted = mSorted;
+        sorted.clear();
+        sorted.addAll(mApps);
+        Collections.sort(sorted, mComparator);
+        return sorted;
+    }
+}
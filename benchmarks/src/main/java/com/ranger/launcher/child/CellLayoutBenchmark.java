@@ -0,0 +1,116 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.Context;
+
+/**
+ * Searches desktop grids of several sizes and fill levels for vacant cells,
+ * the work done on every long press and drop.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class CellLayoutBenchmark {
+    @Param({ "4x4", "5x5", "6x6", "7x7" })
+    public String grid;
+
+    @Param({ "0.25", "0.5", "0.75" })
+    public float fill;
+
+    private int mCountX;
+    private int mCountY;
+    private boolean[][] mOccupied;
+    private CellLayout mLayout;
+    private CellOccupancy mOccupancy;
+    private final int[] mCellXY = new int[2];
+
+    @Setup
+    public void setUp() {
+        final int separator = grid.indexOf('x');
+        mCountX = Integer.parseInt(grid.substring(0, separator));
+        mCountY = Integer.parseInt(grid.substring(separator + 1));
+
+        final Random random = new Random(42);
+        mOccupied = new boolean[mCountX][mCountY];
+        mOccupancy = new CellOccupancy();
+        mOccupancy.setSize(mCountX, mCountY);
+        for (int x = 0; x < mCountX; x++) {
+            for (int y = 0; y < mCountY; y++) {
+                if (random.nextFloat() < fill) {
+                    mOccupied[x][y] = true;
+                    mOccupancy.add(x, y, 1, 1);
+                }
+            }
+        }
+
+        mLayout = new CellLayout(new Context());
+    }
+
+    @Benchmark
+    public boolean findAllVacantCellsFromOccupied() {
+        final CellLayout.CellInfo info =
+                mLayout.findAllVacantCellsFromOccupied(mOccupied, mCountX, mCountY);
+        // hands the vacant cells back to their pool, as the drop does
+        return info.findCellForSpan(mCellXY, 1, 1);
+    }
+
+    @Benchmark
+    public boolean findVacantCell() {
+        return CellLayout.findVacantCell(mCellXY, 2, 2, mCountX, mCountY, mOccupied);
+    }
+
+    @Benchmark
+    public int occupancyIsVacant() {
+        int vacant = 0;
+        for (int y = 0; y < mCountY - 1; y++) {
+            for (int x = 0; x < mCountX - 1; x++) {
+                if (mOccupancy.isVacant(x, y, 2, 2)) {
+                    vacant++;
+                }
+            }
+        }
+        return vacant;
+    }
+
+    @Benchmark
+    public boolean occupancyMove() {
+        // moving an item invalidates the corner sums of the next query
+        mOccupancy.add(0, 0, 2, 1);
+        final boolean vacant = mOccupancy.isVacant(mCountX - 2, mCountY - 2, 2, 2);
+        mOccupancy.remove(0, 0, 2, 1);
+        return vacant;
+    }
+}
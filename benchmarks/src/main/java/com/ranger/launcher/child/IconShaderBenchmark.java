@@ -0,0 +1,147 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.content.res.XmlResourceParser;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Runs a compiled icon shader over synthetic ARGB icons, either straight on
+ * the pixel array or through {@link IconShader#processIcon} on a mutable
+ * thumbnail as the loader does.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class IconShaderBenchmark {
+    // target, mode, input of each exec tag
+    private static final String[][] SIMPLE = {
+        { "OA", "M", "0.8" },
+        { "OR", "W", "II" },
+    };
+
+    // uses the averages, which need the per pixel state of the later stages
+    private static final String[][] STAGED = {
+        { "BA", "W", "IA" },
+        { "BR", "W", "IH" },
+        { "BG", "D", "BH" },
+        { "OA", "M", "BA" },
+        { "OR", "M", "BG" },
+        { "OG", "A", "IG" },
+        { "OB", "S", "0.1" },
+    };
+
+    @Param({ "48", "72", "96" })
+    public int size;
+
+    @Param({ "simple", "staged" })
+    public String program;
+
+    private IconShader.CompiledIconShader mShader;
+    private int[] mSource;
+    private Bitmap mBitmap;
+    private Drawable mIcon;
+
+    @Setup
+    public void setUp() {
+        mShader = IconShader.parseXml(new ExecParser("simple".equals(program) ? SIMPLE : STAGED));
+
+        final Random random = new Random(42);
+        mSource = new int[size * size];
+        for (int i = 0; i < mSource.length; i++) {
+            // mostly opaque with a transparent border, like a real icon
+            final int x = i % size;
+            final int y = i / size;
+            final boolean border = x < 2 || y < 2 || x >= size - 2 || y >= size - 2;
+            mSource[i] = (border ? 0 : 0xff000000) | (random.nextInt() & 0xffffff);
+        }
+
+        mBitmap = Bitmap.createBitmap(size, size, Bitmap.Config.ARGB_8888);
+        mIcon = new FastBitmapDrawable(mBitmap);
+    }
+
+    @Benchmark
+    public int[] execute() {
+        final int length = mSource.length;
+        final int[] pixels = mShader.ensureCapacity(length);
+        System.arraycopy(mSource, 0, pixels, 0, length);
+        mShader.execute(pixels, length);
+        return pixels;
+    }
+
+    @Benchmark
+    public Drawable processIcon() {
+        // the icon is shaded in place, start over from the original pixels
+        mBitmap.setPixels(mSource, 0, size, 0, 0, size, size);
+        return IconShader.processIcon(mIcon, mShader);
+    }
+
+    /**
+     * Feeds a flat list of exec tags to {@link IconShader#parseXml}.
+     */
+    private static final class ExecParser implements XmlResourceParser {
+        private final ArrayList<String[]> mTags = new ArrayList<String[]>();
+        private int mIndex;
+
+        ExecParser(String[][] tags) {
+            for (String[] tag : tags) {
+                mTags.add(tag);
+            }
+        }
+
+        public int getEventType() {
+            return mIndex < mTags.size() ? START_TAG : END_DOCUMENT;
+        }
+
+        public int next() {
+            mIndex++;
+            return getEventType();
+        }
+
+        public String getName() {
+            return "exec";
+        }
+
+        public int getAttributeCount() {
+            return 3;
+        }
+
+        public String getAttributeValue(int index) {
+            return mTags.get(mIndex)[index];
+        }
+    }
+}
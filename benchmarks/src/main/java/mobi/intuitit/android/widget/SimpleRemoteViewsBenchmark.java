@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mobi.intuitit.android.widget;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Parcel;
+import android.view.View;
+
+/**
+ * Round-trips the remote views of a scrollable widget row through a parcel,
+ * as each row crosses from the widget provider to the launcher.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class SimpleRemoteViewsBenchmark {
+    private static final int LAYOUT = 0x7f030001;
+    private static final int TITLE = 0x7f0a0001;
+    private static final int SUMMARY = 0x7f0a0002;
+    private static final int DATE = 0x7f0a0003;
+    private static final int ICON = 0x7f0a0004;
+    private static final int UNREAD = 0x7f0a0005;
+
+    /** Edge of the bitmap set inline on the row, 0 for none. */
+    @Param({ "0", "48" })
+    public int bitmap;
+
+    private SimpleRemoteViews mViews;
+    private Parcel mParcel;
+
+    @Setup
+    public void setUp() {
+        mViews = new SimpleRemoteViews(LAYOUT);
+        mViews.setTextViewText(TITLE, "Re: Saturday at the park");
+        mViews.setTextViewText(SUMMARY, "Sounds good, we will bring the kites and something to eat");
+        mViews.setTextViewText(DATE, "10:42");
+        mViews.setTextColor(TITLE, 0xffffffff);
+        mViews.setViewVisibility(UNREAD, View.VISIBLE);
+        mViews.setBitmapUri(ICON, "setImageURI",
+                Uri.parse("content://com.example.mail/contact/photo/42"));
+        if (bitmap > 0) {
+            final Bitmap b = Bitmap.createBitmap(bitmap, bitmap, Bitmap.Config.ARGB_8888);
+            b.eraseColor(0xff336699);
+            mViews.setImageViewBitmap(ICON, b);
+        }
+        mParcel = Parcel.obtain();
+    }
+
+    @TearDown
+    public void tearDown() {
+        mParcel.recycle();
+    }
+
+    @Benchmark
+    public SimpleRemoteViews roundTrip() {
+        final Parcel parcel = mParcel;
+        parcel.setDataPosition(0);
+        mViews.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        return SimpleRemoteViews.CREATOR.createFromParcel(parcel);
+    }
+}
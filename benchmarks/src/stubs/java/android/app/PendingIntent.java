@@ -0,0 +1,51 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.app;
+
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public final class PendingIntent implements Parcelable {
+    public static class CanceledException extends Exception {
+        private static final long serialVersionUID = 1L;
+    }
+
+    public interface OnFinished {
+    }
+
+    public static PendingIntent readPendingIntentOrNullFromParcel(Parcel in) {
+        return in.readInt() != 0 ? new PendingIntent() : null;
+    }
+
+    public void send(Context context, int code, Intent intent, OnFinished onFinished,
+            Handler handler) throws CanceledException {
+    }
+
+    public int describeContents() {
+        return 0;
+    }
+
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeInt(1);
+    }
+}
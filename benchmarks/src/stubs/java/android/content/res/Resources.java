@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.content.res;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public class Resources {
+    public int getDimensionPixelSize(int id) {
+        return 0;
+    }
+
+    public int getIdentifier(String name, String defType, String defPackage) {
+        return 0;
+    }
+
+    public int getColor(int id) {
+        return 0;
+    }
+
+    public AssetManager getAssets() {
+        return null;
+    }
+}
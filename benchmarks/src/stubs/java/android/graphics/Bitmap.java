@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.graphics;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public final class Bitmap implements Parcelable {
+    public enum Config {
+        ALPHA_8, RGB_565, ARGB_4444, ARGB_8888
+    }
+
+    private final int mWidth;
+    private final int mHeight;
+    private final Config mConfig;
+    private final boolean mMutable;
+    private final int[] mPixels;
+
+    private Bitmap(int width, int height, Config config, boolean mutable) {
+        mWidth = width;
+        mHeight = height;
+        mConfig = config;
+        mMutable = mutable;
+        mPixels = new int[width * height];
+    }
+
+    public static Bitmap createBitmap(int width, int height, Config config) {
+        return new Bitmap(width, height, config, true);
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public Config getConfig() {
+        return mConfig;
+    }
+
+    public boolean isMutable() {
+        return mMutable;
+    }
+
+    public boolean hasAlpha() {
+        return mConfig != Config.RGB_565;
+    }
+
+    public void setDensity(int density) {
+    }
+
+    public void recycle() {
+    }
+
+    public void eraseColor(int c) {
+        java.util.Arrays.fill(mPixels, c);
+    }
+
+    public void getPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(mPixels, (y + row) * mWidth + x, pixels, offset + row * stride,
+                    width);
+        }
+    }
+
+    public void setPixels(int[] pixels, int offset, int stride, int x, int y, int width,
+            int height) {
+        for (int row = 0; row < height; row++) {
+            System.arraycopy(pixels, offset + row * stride, mPixels, (y + row) * mWidth + x,
+                    width);
+        }
+    }
+
+    public int describeContents() {
+        return 0;
+    }
+
+    public void writeToParcel(Parcel p, int flags) {
+        p.writeInt(mMutable ? 1 : 0);
+        p.writeInt(mConfig.ordinal());
+        p.writeInt(mWidth);
+        p.writeInt(mHeight);
+        final int[] pixels = mPixels;
+        for (int i = 0; i < pixels.length; i++) {
+            p.writeInt(pixels[i]);
+        }
+    }
+
+    public static final Parcelable.Creator<Bitmap> CREATOR = new Parcelable.Creator<Bitmap>() {
+        public Bitmap createFromParcel(Parcel p) {
+            final boolean mutable = p.readInt() != 0;
+            final Config config = Config.values()[p.readInt()];
+            final int width = p.readInt();
+            final int height = p.readInt();
+            final Bitmap bitmap = new Bitmap(width, height, config, mutable);
+            final int[] pixels = bitmap.mPixels;
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = p.readInt();
+            }
+            return bitmap;
+        }
+
+        public Bitmap[] newArray(int size) {
+            return new Bitmap[size];
+        }
+    };
+}
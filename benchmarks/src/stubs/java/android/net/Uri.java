@@ -0,0 +1,65 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.net;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public final class Uri implements Parcelable {
+    private final String mString;
+
+    private Uri(String string) {
+        mString = string;
+    }
+
+    public static Uri parse(String uriString) {
+        return new Uri(uriString);
+    }
+
+    public String getScheme() {
+        final int colon = mString.indexOf(':');
+        return colon < 0 ? null : mString.substring(0, colon);
+    }
+
+    @Override
+    public String toString() {
+        return mString;
+    }
+
+    public int describeContents() {
+        return 0;
+    }
+
+    public void writeToParcel(Parcel out, int flags) {
+        out.writeInt(1);
+        out.writeString(mString);
+    }
+
+    public static final Parcelable.Creator<Uri> CREATOR = new Parcelable.Creator<Uri>() {
+        public Uri createFromParcel(Parcel in) {
+            in.readInt();
+            return new Uri(in.readString());
+        }
+
+        public Uri[] newArray(int size) {
+            return new Uri[size];
+        }
+    };
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.os;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public final class Parcel {
+    private byte[] mData = new byte[256];
+    private int mSize;
+    private int mPosition;
+
+    private Parcel() {
+    }
+
+    public static Parcel obtain() {
+        return new Parcel();
+    }
+
+    public void recycle() {
+        mSize = 0;
+        mPosition = 0;
+    }
+
+    public int dataSize() {
+        return mSize;
+    }
+
+    public int dataPosition() {
+        return mPosition;
+    }
+
+    public void setDataPosition(int pos) {
+        mPosition = pos;
+    }
+
+    public byte[] marshall() {
+        final byte[] data = new byte[mSize];
+        System.arraycopy(mData, 0, data, 0, mSize);
+        return data;
+    }
+
+    public void unmarshall(byte[] data, int offset, int length) {
+        ensureCapacity(length);
+        System.arraycopy(data, offset, mData, 0, length);
+        mSize = length;
+        mPosition = 0;
+    }
+
+    public void writeByte(byte val) {
+        writeInt(val);
+    }
+
+    public byte readByte() {
+        return (byte) readInt();
+    }
+
+    public void writeInt(int val) {
+        ensureCapacity(mPosition + 4);
+        final byte[] data = mData;
+        data[mPosition++] = (byte) val;
+        data[mPosition++] = (byte) (val >> 8);
+        data[mPosition++] = (byte) (val >> 16);
+        data[mPosition++] = (byte) (val >> 24);
+        if (mPosition > mSize) {
+            mSize = mPosition;
+        }
+    }
+
+    public int readInt() {
+        if (mPosition + 4 > mSize) {
+            return 0;
+        }
+        final byte[] data = mData;
+        final int val = (data[mPosition] & 0xFF) | (data[mPosition + 1] & 0xFF) << 8
+                | (data[mPosition + 2] & 0xFF) << 16 | (data[mPosition + 3] & 0xFF) << 24;
+        mPosition += 4;
+        return val;
+    }
+
+    public void writeLong(long val) {
+        writeInt((int) val);
+        writeInt((int) (val >>> 32));
+    }
+
+    public long readLong() {
+        final long low = readInt() & 0xFFFFFFFFL;
+        return low | ((long) readInt() << 32);
+    }
+
+    public void writeFloat(float val) {
+        writeInt(Float.floatToRawIntBits(val));
+    }
+
+    public float readFloat() {
+        return Float.intBitsToFloat(readInt());
+    }
+
+    public void writeDouble(double val) {
+        writeLong(Double.doubleToRawLongBits(val));
+    }
+
+    public double readDouble() {
+        return Double.longBitsToDouble(readLong());
+    }
+
+    /**
+     * Written as UTF-16 like the platform does, padded to 4 bytes.
+     */
+    public void writeString(String val) {
+        if (val == null) {
+            writeInt(-1);
+            return;
+        }
+        final int length = val.length();
+        writeInt(length);
+        for (int i = 0; i < length; i += 2) {
+            final int high = i + 1 < length ? val.charAt(i + 1) : 0;
+            writeInt(val.charAt(i) | high << 16);
+        }
+    }
+
+    public String readString() {
+        final int length = readInt();
+        if (length < 0) {
+            return null;
+        }
+        final char[] chars = new char[length];
+        for (int i = 0; i < length; i += 2) {
+            final int pair = readInt();
+            chars[i] = (char) pair;
+            if (i + 1 < length) {
+                chars[i + 1] = (char) (pair >>> 16);
+            }
+        }
+        return new String(chars);
+    }
+
+    public void writeBundle(Bundle val) {
+        writeInt(val != null ? 0 : -1);
+    }
+
+    public Bundle readBundle() {
+        return readInt() < 0 ? null : new Bundle();
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mData.length) {
+            final byte[] data = new byte[Math.max(capacity, mData.length * 2)];
+            System.arraycopy(mData, 0, data, 0, mSize);
+            mData = data;
+        }
+    }
+}
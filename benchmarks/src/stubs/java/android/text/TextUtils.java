@@ -0,0 +1,46 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.text;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public class TextUtils {
+    public static final Parcelable.Creator<CharSequence> CHAR_SEQUENCE_CREATOR =
+            new Parcelable.Creator<CharSequence>() {
+        public CharSequence createFromParcel(Parcel p) {
+            p.readInt();
+            return p.readString();
+        }
+
+        public CharSequence[] newArray(int size) {
+            return new CharSequence[size];
+        }
+    };
+
+    public static void writeToParcel(CharSequence cs, Parcel p, int parcelableFlags) {
+        p.writeInt(1);
+        p.writeString(cs != null ? cs.toString() : null);
+    }
+
+    public static boolean equals(CharSequence a, CharSequence b) {
+        return a == b || (a != null && b != null && a.toString().equals(b.toString()));
+    }
+}
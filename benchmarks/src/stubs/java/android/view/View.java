@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import android.content.Context;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.graphics.drawable.Drawable;
+import android.os.IBinder;
+import android.util.AttributeSet;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public class View {
+    public static final int VISIBLE = 0;
+    public static final int INVISIBLE = 4;
+    public static final int GONE = 8;
+    public static final int DRAWING_CACHE_QUALITY_LOW = 0x00080000;
+    public static final int DRAWING_CACHE_QUALITY_AUTO = 0x00000000;
+
+    public interface OnClickListener {
+        void onClick(View v);
+    }
+
+    public static class MeasureSpec {
+        public static final int UNSPECIFIED = 0;
+        public static final int EXACTLY = 1 << 30;
+        public static final int AT_MOST = 2 << 30;
+        private static final int MODE_MASK = 3 << 30;
+
+        public static int makeMeasureSpec(int size, int mode) {
+            return size + mode;
+        }
+
+        public static int getMode(int measureSpec) {
+            return measureSpec & MODE_MASK;
+        }
+
+        public static int getSize(int measureSpec) {
+            return measureSpec & ~MODE_MASK;
+        }
+    }
+
+    protected int mScrollX;
+    protected int mScrollY;
+
+    private final Context mContext;
+    private ViewParent mParent;
+    private ViewGroup.LayoutParams mLayoutParams;
+    private Object mTag;
+    private int mId = -1;
+    private int mVisibility = VISIBLE;
+    private int mLeft;
+    private int mTop;
+    private int mRight;
+    private int mBottom;
+
+    public View(Context context) {
+        mContext = context;
+    }
+
+    public View(Context context, AttributeSet attrs) {
+        this(context);
+    }
+
+    public View(Context context, AttributeSet attrs, int defStyle) {
+        this(context);
+    }
+
+    public final Context getContext() {
+        return mContext;
+    }
+
+    public Resources getResources() {
+        return mContext.getResources();
+    }
+
+    public final ViewParent getParent() {
+        return mParent;
+    }
+
+    void assignParent(ViewParent parent) {
+        mParent = parent;
+    }
+
+    public ViewGroup.LayoutParams getLayoutParams() {
+        return mLayoutParams;
+    }
+
+    public void setLayoutParams(ViewGroup.LayoutParams params) {
+        mLayoutParams = params;
+    }
+
+    public Object getTag() {
+        return mTag;
+    }
+
+    public void setTag(Object tag) {
+        mTag = tag;
+    }
+
+    public int getId() {
+        return mId;
+    }
+
+    public void setId(int id) {
+        mId = id;
+    }
+
+    public final View findViewById(int id) {
+        return findViewTraversal(id);
+    }
+
+    View findViewTraversal(int id) {
+        return id == mId ? this : null;
+    }
+
+    public int getVisibility() {
+        return mVisibility;
+    }
+
+    public void setVisibility(int visibility) {
+        mVisibility = visibility;
+    }
+
+    public void setEnabled(boolean enabled) {
+    }
+
+    public final int getLeft() {
+        return mLeft;
+    }
+
+    public final int getTop() {
+        return mTop;
+    }
+
+    public final int getRight() {
+        return mRight;
+    }
+
+    public final int getBottom() {
+        return mBottom;
+    }
+
+    public final int getWidth() {
+        return mRight - mLeft;
+    }
+
+    public final int getHeight() {
+        return mBottom - mTop;
+    }
+
+    public final void layout(int l, int t, int r, int b) {
+        mLeft = l;
+        mTop = t;
+        mRight = r;
+        mBottom = b;
+    }
+
+    public final void measure(int widthMeasureSpec, int heightMeasureSpec) {
+        onMeasure(widthMeasureSpec, heightMeasureSpec);
+    }
+
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+    }
+
+    protected final void setMeasuredDimension(int measuredWidth, int measuredHeight) {
+    }
+
+    protected void dispatchDraw(Canvas canvas) {
+    }
+
+    protected void onAttachedToWindow() {
+    }
+
+    public void cancelLongPress() {
+    }
+
+    public void getDrawingRect(Rect outRect) {
+        outRect.set(mScrollX, mScrollY, mScrollX + getWidth(), mScrollY + getHeight());
+    }
+
+    public void getHitRect(Rect outRect) {
+        outRect.set(mLeft, mTop, mRight, mBottom);
+    }
+
+    public boolean requestRectangleOnScreen(Rect rectangle) {
+        return false;
+    }
+
+    public void getLocationOnScreen(int[] location) {
+        location[0] = mLeft;
+        location[1] = mTop;
+    }
+
+    public IBinder getWindowToken() {
+        return null;
+    }
+
+    public Object getAnimation() {
+        return null;
+    }
+
+    public Drawable getBackground() {
+        return null;
+    }
+
+    public void setBackgroundColor(int color) {
+    }
+
+    public void setBackgroundResource(int resid) {
+    }
+
+    public void setBackgroundDrawable(Drawable d) {
+    }
+
+    public void setOnClickListener(OnClickListener l) {
+    }
+
+    public void setDrawingCacheQuality(int quality) {
+    }
+
+    public void setDrawingCacheEnabled(boolean enabled) {
+    }
+
+    public void buildDrawingCache() {
+    }
+
+    public void buildDrawingCache(boolean autoScale) {
+    }
+
+    public void destroyDrawingCache() {
+    }
+
+    public void requestLayout() {
+    }
+
+    public void invalidate() {
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.view;
+
+import java.util.ArrayList;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public abstract class ViewGroup extends View implements ViewParent {
+    public static class LayoutParams {
+        public static final int FILL_PARENT = -1;
+        public static final int MATCH_PARENT = -1;
+        public static final int WRAP_CONTENT = -2;
+
+        public int width;
+        public int height;
+
+        public LayoutParams(Context c, AttributeSet attrs) {
+        }
+
+        public LayoutParams(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+
+        public LayoutParams(LayoutParams source) {
+            this.width = source.width;
+            this.height = source.height;
+        }
+    }
+
+    public static class MarginLayoutParams extends LayoutParams {
+        public int leftMargin;
+        public int topMargin;
+        public int rightMargin;
+        public int bottomMargin;
+
+        public MarginLayoutParams(Context c, AttributeSet attrs) {
+            super(c, attrs);
+        }
+
+        public MarginLayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public MarginLayoutParams(LayoutParams source) {
+            super(source);
+        }
+    }
+
+    public interface OnHierarchyChangeListener {
+        void onChildViewAdded(View parent, View child);
+
+        void onChildViewRemoved(View parent, View child);
+    }
+
+    private final ArrayList<View> mChildren = new ArrayList<View>();
+    private OnHierarchyChangeListener mOnHierarchyChangeListener;
+
+    public ViewGroup(Context context) {
+        super(context);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs) {
+        super(context, attrs);
+    }
+
+    public ViewGroup(Context context, AttributeSet attrs, int defStyle) {
+        super(context, attrs, defStyle);
+    }
+
+    public int getChildCount() {
+        return mChildren.size();
+    }
+
+    public View getChildAt(int index) {
+        return mChildren.get(index);
+    }
+
+    public int indexOfChild(View child) {
+        return mChildren.indexOf(child);
+    }
+
+    public void addView(View child) {
+        addView(child, -1, child.getLayoutParams());
+    }
+
+    public void addView(View child, int index, LayoutParams params) {
+        child.setLayoutParams(checkLayoutParams(params) ? params : generateLayoutParams(params));
+        child.assignParent(this);
+        mChildren.add(index < 0 ? mChildren.size() : index, child);
+        if (mOnHierarchyChangeListener != null) {
+            mOnHierarchyChangeListener.onChildViewAdded(this, child);
+        }
+    }
+
+    public void removeView(View child) {
+        if (mChildren.remove(child)) {
+            child.assignParent(null);
+            if (mOnHierarchyChangeListener != null) {
+                mOnHierarchyChangeListener.onChildViewRemoved(this, child);
+            }
+        }
+    }
+
+    @Override
+    View findViewTraversal(int id) {
+        if (id == getId()) {
+            return this;
+        }
+        for (int i = 0; i < mChildren.size(); i++) {
+            final View v = mChildren.get(i).findViewTraversal(id);
+            if (v != null) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    public void setOnHierarchyChangeListener(OnHierarchyChangeListener listener) {
+        mOnHierarchyChangeListener = listener;
+    }
+
+    public void requestChildFocus(View child, View focused) {
+    }
+
+    public boolean onInterceptTouchEvent(MotionEvent ev) {
+        return false;
+    }
+
+    public void setAlwaysDrawnWithCacheEnabled(boolean always) {
+    }
+
+    protected void setChildrenDrawingCacheEnabled(boolean enabled) {
+    }
+
+    protected void setChildrenDrawnWithCacheEnabled(boolean enabled) {
+    }
+
+    public LayoutParams generateLayoutParams(AttributeSet attrs) {
+        return new LayoutParams(getContext(), attrs);
+    }
+
+    protected LayoutParams generateLayoutParams(LayoutParams p) {
+        return p;
+    }
+
+    protected boolean checkLayoutParams(LayoutParams p) {
+        return p != null;
+    }
+
+    protected abstract void onLayout(boolean changed, int l, int t, int r, int b);
+}
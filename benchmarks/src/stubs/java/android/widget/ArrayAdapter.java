@@ -0,0 +1,74 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+import java.util.List;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public class ArrayAdapter<T> {
+    private final Context mContext;
+    private final List<T> mObjects;
+
+    public ArrayAdapter(Context context, int textViewResourceId, List<T> objects) {
+        mContext = context;
+        mObjects = objects;
+    }
+
+    public Context getContext() {
+        return mContext;
+    }
+
+    public int getCount() {
+        return mObjects.size();
+    }
+
+    public T getItem(int position) {
+        return mObjects.get(position);
+    }
+
+    public void add(T object) {
+        mObjects.add(object);
+    }
+
+    public void remove(T object) {
+        mObjects.remove(object);
+    }
+
+    public void clear() {
+        mObjects.clear();
+    }
+
+    public void setNotifyOnChange(boolean notifyOnChange) {
+    }
+
+    public void notifyDataSetChanged() {
+    }
+
+    public Filter getFilter() {
+        return null;
+    }
+
+    public View getView(int position, View convertView, ViewGroup parent) {
+        return null;
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package android.widget;
+
+/**
+ * Stand-in for the framework class, with only what the benchmarked sources use.
+ */
+public abstract class Filter {
+    protected static class FilterResults {
+        public FilterResults() {
+        }
+
+        public Object values;
+        public int count;
+    }
+
+    public final void filter(CharSequence constraint) {
+        publishResults(constraint, performFiltering(constraint));
+    }
+
+    protected abstract FilterResults performFiltering(CharSequence constraint);
+
+    protected abstract void publishResults(CharSequence constraint, FilterResults results);
+}
@@ -0,0 +1,47 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import android.content.Context;
+
+/**
+ * Stand-in for the launcher class, with only what the benchmarked sources use.
+ */
+public final class AlmostNexusSettingsHelper {
+    public static final int CACHE_LOW = 1;
+    public static final int CACHE_AUTO = 2;
+    public static final int CACHE_DISABLED = 3;
+
+    static final class Snapshot {
+        int desktopRows = 4;
+        int desktopColumns = 4;
+        int screenCache = CACHE_LOW;
+        boolean autosizeIcons;
+        boolean desktopIndicator;
+        int desktopIndicatorType;
+    }
+
+    private static final Snapshot sSnapshot = new Snapshot();
+
+    static Snapshot getSnapshot(Context context) {
+        return sSnapshot;
+    }
+
+    public static String getThemePackageName(Context context, String defaultTheme) {
+        return defaultTheme;
+    }
+}
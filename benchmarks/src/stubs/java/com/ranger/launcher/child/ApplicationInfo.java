@@ -0,0 +1,31 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+import android.content.Intent;
+import android.graphics.drawable.Drawable;
+
+/**
+ * Stand-in for the launcher class, with only what the benchmarked sources use.
+ */
+public class ApplicationInfo {
+    public int counter;
+    public CharSequence title;
+    public Intent intent;
+    public Drawable icon;
+    boolean filtered;
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.ranger.launcher.child;
+
+/**
+ * Stand-in for the launcher class, with only what the benchmarked sources use.
+ */
+public final class R {
+    public static final class dimen {
+        public static final int cell_width = 0x7f080000;
+        public static final int cell_height = 0x7f080001;
+        public static final int desktop_paginator_padding = 0x7f080002;
+    }
+
+    public static final class layout {
+        public static final int application_boxed = 0x7f030000;
+    }
+
+    public static final class styleable {
+        public static final int[] CellLayout = { 0x7f010000, 0x7f010001, 0x7f010002,
+                0x7f010003, 0x7f010004, 0x7f010005 };
+        public static final int CellLayout_cellWidth = 0;
+        public static final int CellLayout_cellHeight = 1;
+        public static final int CellLayout_longAxisStartPadding = 2;
+        public static final int CellLayout_longAxisEndPadding = 3;
+        public static final int CellLayout_shortAxisStartPadding = 4;
+        public static final int CellLayout_shortAxisEndPadding = 5;
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright (C) 2008 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package mobi.intuitit.android.widget;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.view.View;
+import android.widget.ImageView;
+
+/**
+ * Stand-in for the launcher class, with only what the benchmarked sources use.
+ */
+public class ListViewImageManager {
+    public interface Target {
+        void onImageLoaded(View view, Drawable d);
+    }
+
+    private static final ListViewImageManager sInstance = new ListViewImageManager();
+
+    public static ListViewImageManager getInstance() {
+        return sInstance;
+    }
+
+    public void loadImageFromUri(Context context, int widgetId, String imgUri, ImageView view) {
+    }
+
+    public void loadImageFromUri(Context context, int widgetId, String imgUri, View view,
+            Target target) {
+    }
+
+    public void cancel(View view) {
+    }
+
+    public boolean isProvidedBy(Context context, Uri uri, String packageName) {
+        return false;
+    }
+}